@@ -0,0 +1,124 @@
+package sixmensmorris.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sixmensmorris.AI;
+import sixmensmorris.BoardTopology;
+import sixmensmorris.BoardView;
+
+/**
+ * Benchmarks the moves chosen by the AI at a fixed depth over a corpus of positions: nextPlace on positions of the placing
+ * phase, nextMove on positions of the moving phase and nextRemove on positions where the AI has just formed a mill.
+ *
+ * The AIs are built once per position, so the transposition table of an AI is warm after the first time its position comes
+ * round; the results are the cost of a search that can reuse an earlier one, as between the turns of a game.
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AIBenchmark {
+
+	@Param({"2"})
+	public int N;
+
+	@Param({"2", "4"})
+	public int depth;
+
+	@Param({"64"})
+	public int positions;
+
+	private AI[] placing, moving, removing;
+	private int nextPlacing, nextMoving, nextRemoving;
+
+	@Setup(Level.Trial)
+	public void setUp(){
+		PositionCorpus corpus = new PositionCorpus(BoardTopology.get(N), positions * 4, PositionCorpus.SEED);
+		int places = 0, moves = 0;
+		AI[] placingAIs = new AI[corpus.size()], movingAIs = new AI[corpus.size()];
+		for(int p = 0; p < corpus.size(); p++){
+			int colour = corpus.colour(p);
+			AI ai = newAI(corpus.pieces(p), colour, corpus.inHand(p, 1), corpus.inHand(p, 2));
+			if(corpus.inHand(p, colour) > 0){
+				placingAIs[places++] = ai;
+			} else{
+				movingAIs[moves++] = ai;
+			}
+		}
+		placing = copy(placingAIs, places);
+		moving = copy(movingAIs, moves);
+		removing = new AI[positions];
+		for(int p = 0; p < removing.length; p++){
+			removing[p] = newAI(corpus.removalPieces(p), corpus.removalColour(p),
+					corpus.removalInHand(p, 1), corpus.removalInHand(p, 2));
+		}
+	}
+
+	/**
+	 * Builds an AI that plays a given colour in a position.
+	 * @param pieces	The states of the points
+	 * @param colour	The colour of the AI
+	 * @param blue		The number of blue pieces left to place
+	 * @param red		The number of red pieces left to place
+	 * @return			The AI
+	 */
+	private AI newAI(int[] pieces, int colour, int blue, int red){
+		AI ai = new AI(new BoardView(N, pieces), colour, 3 - colour);
+		ai.updateUnplayedPieces(blue, red);
+		ai.setSearchDepth(depth);
+		ai.setHashSize(1);
+		return ai;
+	}
+
+	/**
+	 * Returns the first AIs of an array, at most as many as the number of positions asked for.
+	 * @param ais	The AIs
+	 * @param count	The number of AIs in the array
+	 * @return		The AIs to benchmark
+	 */
+	private AI[] copy(AI[] ais, int count){
+		AI[] copy = new AI[Math.max(1, Math.min(count, positions))];
+		System.arraycopy(ais, 0, copy, 0, Math.min(count, copy.length));
+		return copy;
+	}
+
+	@Benchmark
+	public int nextPlace(){
+		AI ai = placing[nextPlacing];
+		nextPlacing = nextPlacing + 1 == placing.length ? 0 : nextPlacing + 1;
+		return ai.nextPlace();
+	}
+
+	@Benchmark
+	public int[] nextMove(){
+		AI ai = moving[nextMoving];
+		nextMoving = nextMoving + 1 == moving.length ? 0 : nextMoving + 1;
+		return ai.nextMove();
+	}
+
+	@Benchmark
+	public int nextRemove(){
+		AI ai = removing[nextRemoving];
+		nextRemoving = nextRemoving + 1 == removing.length ? 0 : nextRemoving + 1;
+		return ai.nextRemove();
+	}
+
+}
@@ -0,0 +1,95 @@
+package sixmensmorris.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sixmensmorris.Board;
+import sixmensmorris.BoardTopology;
+
+/**
+ * Benchmarks the rule checks of Board over a corpus of positions: millExists, isInMill, onlyMillsLeft and checkWinner.
+ *
+ * Each operation runs once on every point (or every colour) of the next position of the corpus, so a result is the time for a
+ * whole position. Run with -prof gc to see the bytes allocated per operation.
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+	@Param({"2", "3"})
+	public int N;
+
+	@Param({"256"})
+	public int positions;
+
+	private Board[] boards;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp(){
+		PositionCorpus corpus = new PositionCorpus(BoardTopology.get(N), positions, PositionCorpus.SEED);
+		boards = new Board[corpus.size()];
+		for(int p = 0; p < boards.length; p++){
+			boards[p] = corpus.board(p);
+		}
+	}
+
+	/**
+	 * Returns the next board of the corpus, going round when the end is reached.
+	 * @return	The board
+	 */
+	private Board nextBoard(){
+		Board board = boards[next];
+		next = next + 1 == boards.length ? 0 : next + 1;
+		return board;
+	}
+
+	@Benchmark
+	public void millExists(Blackhole blackhole){
+		Board board = nextBoard();
+		for(int i = 0; i < board.getBoardState().length; i++){
+			blackhole.consume(board.millExists(i));
+		}
+	}
+
+	@Benchmark
+	public void isInMill(Blackhole blackhole){
+		Board board = nextBoard();
+		for(int i = 0; i < board.getBoardState().length; i++){
+			blackhole.consume(board.isInMill(i));
+		}
+	}
+
+	@Benchmark
+	public void onlyMillsLeft(Blackhole blackhole){
+		Board board = nextBoard();
+		blackhole.consume(board.onlyMillsLeft(1));
+		blackhole.consume(board.onlyMillsLeft(2));
+	}
+
+	@Benchmark
+	public int checkWinner(){
+		return nextBoard().checkWinner();
+	}
+
+}
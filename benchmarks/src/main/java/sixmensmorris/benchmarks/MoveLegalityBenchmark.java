@@ -0,0 +1,126 @@
+package sixmensmorris.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sixmensmorris.Board;
+import sixmensmorris.BoardTopology;
+import sixmensmorris.GameEngine;
+import sixmensmorris.Move;
+import sixmensmorris.MoveGenerator;
+
+/**
+ * Benchmarks deciding whether a move is legal, over a corpus of positions and a mix of legal and illegal candidate moves.
+ *
+ * engineIsLegal asks GameEngine.isLegal, the check the mouse handlers of BoardController make before playing a move, with an
+ * engine for every position of the corpus. isLegal checks a whole packed move with MoveGenerator, and generate writes every
+ * legal move of the position.
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveLegalityBenchmark {
+
+	private static final int CANDIDATES = 16;	//Candidate moves per position
+
+	@Param({"2", "3"})
+	public int N;
+
+	@Param({"256"})
+	public int positions;
+
+	private Board[] boards;
+	private GameEngine[] engines;
+	private int[] colours;
+	private int[][] candidates;
+	private int[] moves;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp(){
+		BoardTopology topology = BoardTopology.get(N);
+		PositionCorpus corpus = new PositionCorpus(topology, positions, PositionCorpus.SEED);
+		boards = new Board[corpus.size()];
+		engines = new GameEngine[corpus.size()];
+		colours = new int[corpus.size()];
+		candidates = new int[corpus.size()][CANDIDATES];
+		moves = new int[MoveGenerator.maxMoves(topology)];
+
+		Random random = new Random(PositionCorpus.SEED);
+		int points = topology.getPoints();
+		for(int p = 0; p < boards.length; p++){
+			boards[p] = corpus.board(p);
+			colours[p] = corpus.colour(p);
+			int blueInHand = corpus.inHand(p, 1), redInHand = corpus.inHand(p, 2);
+			engines[p] = new GameEngine(corpus.board(p), colours[p] - 1,
+					blueInHand > 0 || redInHand > 0 ? GameEngine.PLACING : GameEngine.PLAYING, false, blueInHand, redInHand);
+			int legal = MoveGenerator.generate(boards[p], colours[p], moves, 0);
+			for(int c = 0; c < CANDIDATES; c++){
+				if(c % 2 == 0 && legal > 0){
+					candidates[p][c] = moves[random.nextInt(legal)];
+				} else{
+					int to = random.nextInt(points);
+					int move = corpus.inHand(p, colours[p]) > 0 ? Move.place(to) : Move.slide(random.nextInt(points), to);
+					candidates[p][c] = random.nextBoolean() ? Move.withRemove(move, random.nextInt(points)) : move;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the next position of the corpus, going round when the end is reached.
+	 * @return	The index
+	 */
+	private int nextPosition(){
+		int p = next;
+		next = next + 1 == boards.length ? 0 : next + 1;
+		return p;
+	}
+
+	@Benchmark
+	public int isLegal(){
+		int p = nextPosition();
+		int legal = 0;
+		for(int move : candidates[p]){
+			legal += MoveGenerator.isLegal(boards[p], colours[p], move) ? 1 : 0;
+		}
+		return legal;
+	}
+
+	@Benchmark
+	public int engineIsLegal(){
+		int p = nextPosition();
+		GameEngine engine = engines[p];
+		int legal = 0;
+		for(int move : candidates[p]){
+			legal += engine.isLegal(move) ? 1 : 0;
+		}
+		return legal;
+	}
+
+	@Benchmark
+	public int generate(){
+		int p = nextPosition();
+		return MoveGenerator.generate(boards[p], colours[p], moves, 0);
+	}
+
+}
@@ -0,0 +1,167 @@
+package sixmensmorris.benchmarks;
+
+import java.util.Random;
+
+import sixmensmorris.Board;
+import sixmensmorris.BoardTopology;
+import sixmensmorris.Move;
+import sixmensmorris.MoveGenerator;
+
+/**
+ * A fixed set of positions for the benchmarks, reached by playing random legal moves from the start position.
+ *
+ * The games are played with a seeded random generator, so every run of a benchmark sees the same positions. Positions are taken
+ * from both the placing and the moving phase. Positions where the colour to move has just formed a mill and must still choose a
+ * piece to remove are kept separately, for the benchmarks of removals.
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public final class PositionCorpus {
+
+	public static final long SEED = 20160430L;
+
+	private final BoardTopology topology;
+	private final int[][] pieces;			//pieces[p]: the state of every point of position p
+	private final int[][] inHand;			//inHand[p]: {0, blue, red} pieces left to place in position p
+	private final int[] colour;				//colour[p]: the colour to move in position p
+	private final int[][] removals;			//Positions where the colour to move must remove a piece
+	private final int[][] removalInHand;
+	private final int[] removalColour;
+
+	/**
+	 * Builds a corpus by playing random games.
+	 * @param topology	The shape and rules of the board
+	 * @param size		The number of positions of each kind to collect
+	 * @param seed		The seed of the random games
+	 */
+	public PositionCorpus(BoardTopology topology, int size, long seed){
+		this.topology = topology;
+		this.pieces = new int[size][];
+		this.inHand = new int[size][];
+		this.colour = new int[size];
+		this.removals = new int[size][];
+		this.removalInHand = new int[size][];
+		this.removalColour = new int[size];
+
+		Random random = new Random(seed);
+		int[] moves = new int[MoveGenerator.maxMoves(topology)];
+		int positions = 0, removalPositions = 0;
+		while(positions < size || removalPositions < size){
+			Board board = new Board(topology);
+			board.setInHand(topology.getVariant(), topology.getVariant());
+			int turn = 1;
+			for(int ply = 0; ply < 200; ply++){
+				if(board.getInHand(turn) == 0 && board.getPieceCount(turn) < 3){
+					break;
+				}
+				int count = MoveGenerator.generate(board, turn, moves, 0);
+				if(count == 0){
+					break;
+				}
+				if(positions < size && random.nextInt(4) == 0){
+					pieces[positions] = board.getBoardState().clone();
+					inHand[positions] = new int[] {0, board.getInHand(1), board.getInHand(2)};
+					colour[positions++] = turn;
+				}
+				int move = moves[random.nextInt(count)];
+				if(Move.isRemove(move) && removalPositions < size){
+					//Play the move without its removal, which is left to the colour to choose
+					int withoutRemove = Move.from(move) == Move.NO_POINT ? Move.place(Move.to(move))
+							: Move.slide(Move.from(move), Move.to(move));
+					board.makeMove(withoutRemove, turn);
+					removals[removalPositions] = board.getBoardState().clone();
+					removalInHand[removalPositions] = new int[] {0, board.getInHand(1), board.getInHand(2)};
+					removalColour[removalPositions++] = turn;
+					board.unmakeMove(withoutRemove, turn);
+				}
+				board.makeMove(move, turn);
+				turn = 3 - turn;
+			}
+		}
+	}
+
+	/**
+	 * Returns the topology of the positions.
+	 * @return	The shape and rules of the board
+	 */
+	public BoardTopology getTopology(){
+		return this.topology;
+	}
+
+	/**
+	 * Returns the number of positions of each kind.
+	 * @return	The size of the corpus
+	 */
+	public int size(){
+		return this.pieces.length;
+	}
+
+	/**
+	 * Returns a new board set up as a position of the corpus.
+	 * @param p	The index of the position
+	 * @return	The board, with the pieces left to place
+	 */
+	public Board board(int p){
+		Board board = new Board(topology, pieces[p].clone());
+		board.setInHand(inHand[p][1], inHand[p][2]);
+		return board;
+	}
+
+	/**
+	 * Returns the states of the points of a position.
+	 * @param p	The index of the position
+	 * @return	A copy of the states
+	 */
+	public int[] pieces(int p){
+		return pieces[p].clone();
+	}
+
+	/**
+	 * Returns the number of pieces a colour still has to place in a position.
+	 * @param p			The index of the position
+	 * @param colour	The colour (1 = blue, 2 = red)
+	 * @return			The number of pieces
+	 */
+	public int inHand(int p, int colour){
+		return inHand[p][colour];
+	}
+
+	/**
+	 * Returns the colour to move in a position.
+	 * @param p	The index of the position
+	 * @return	1 for blue, 2 for red
+	 */
+	public int colour(int p){
+		return colour[p];
+	}
+
+	/**
+	 * Returns the states of the points of a position where the colour to move must remove a piece.
+	 * @param p	The index of the position
+	 * @return	A copy of the states
+	 */
+	public int[] removalPieces(int p){
+		return removals[p].clone();
+	}
+
+	/**
+	 * Returns the number of pieces a colour still has to place in a removal position.
+	 * @param p			The index of the position
+	 * @param colour	The colour (1 = blue, 2 = red)
+	 * @return			The number of pieces
+	 */
+	public int removalInHand(int p, int colour){
+		return removalInHand[p][colour];
+	}
+
+	/**
+	 * Returns the colour that must remove a piece in a removal position.
+	 * @param p	The index of the position
+	 * @return	1 for blue, 2 for red
+	 */
+	public int removalColour(int p){
+		return removalColour[p];
+	}
+
+}
@@ -0,0 +1,77 @@
+package sixmensmorris.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sixmensmorris.BoardTopology;
+import sixmensmorris.BoardView;
+
+/**
+ * Benchmarks drawing the board: BoardView.paintComponent into an off-screen image the size of the default window, over a corpus
+ * of positions. Runs headless, so no display is needed.
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+	private static final int SIZE = 500;	//Default width and height of the window of BoardController
+
+	@Param({"2", "3"})
+	public int N;
+
+	@Param({"64"})
+	public int positions;
+
+	private BoardView[] views;
+	private BufferedImage image;
+	private Graphics2D graphics;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp(){
+		PositionCorpus corpus = new PositionCorpus(BoardTopology.get(N), positions, PositionCorpus.SEED);
+		views = new BoardView[corpus.size()];
+		for(int p = 0; p < views.length; p++){
+			views[p] = new BoardView(N, corpus.pieces(p));
+			views[p].setSize(SIZE, SIZE);
+		}
+		image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		graphics = image.createGraphics();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage paint(){
+		BoardView view = views[next];
+		next = next + 1 == views.length ? 0 : next + 1;
+		view.paintComponent(graphics);
+		return image;
+	}
+
+}
@@ -1,16 +1,18 @@
 package sixmensmorris;
 
-import java.util.ArrayList;
 import java.util.Random;
 
 /**
- * This is the AI class for games with a computer/
- * The AI is implemented in a very basic way.
- * First, for placing stage, the AI will try to place pieces 
- * on the center parts of each line to be advantageous
- * Second, for the moving stage, the AI will move the first piece
- * available at a random available direction
- * Third, for removing pieces, the AI will remove the first available pieces
+ * This is the AI class for games with a computer.
+ * The AI looks ahead with an alpha-beta search (see Search) to a configurable depth,
+ * or as deep as it can within a time budget per move.
+ * A turn is searched as one compound move: placing or moving a piece, together with the
+ * piece to remove if that forms a mill. The board controller asks for the parts of the move
+ * one at a time, so the removal found with the move is kept until nextRemove is called.
+ * The search can use several threads (see ParallelSearch); by default it uses one.
+ * Once no pieces are left to place, a position in the tablebase (see Tablebase), if the AI
+ * has one, is played from it without searching. While placing, a position in the opening
+ * book (see OpeningBook), if the AI has one, is played from the book.
  *
  * @author Zichen Jiang
  * @version 1
@@ -21,6 +23,14 @@ public class AI {
 	private BoardView boardView;
 	private int PLAYER_COLOR;
 	private int AI_COLOR;
+	private int blueInHand, redInHand;	// pieces each player still has to place
+	private ParallelSearch search;
+	private int plannedRemove = Move.NO_POINT;	// removal found together with the last move
+	private Tablebase tablebase;	// exact moves for the moving phase, or null
+	private OpeningBook book;	// moves for the placing phase, or null
+	private final Random random = new Random();	// chooses among the moves of the book
+	
+	private static final int DEFAULT_DEPTH = 4;
 	
 	/** Construct the AI class.
 	 * 
@@ -33,6 +43,8 @@ public class AI {
 		this.boardView = board;
 		PLAYER_COLOR = player;
 		AI_COLOR = ai;
+		this.search = new ParallelSearch(board.getTopology(), new TranspositionTable(Search.DEFAULT_HASH_MB), 1);
+		this.search.setDepth(DEFAULT_DEPTH);
 	}
 	
 	/**
@@ -45,151 +57,181 @@ public class AI {
 	}
 	
 	/**
-	 * Try to find the next available position to place a piece.
-	 * Will try the middle points first, then the corner ones.
+	 * gives AI the number of pieces each player still has to place
 	 * 
-	 * @return the position on the board to place the piece
+	 * @param blue number of unplayed blue pieces
+	 * @param red number of unplayed red pieces
 	 */
-	public int nextPlace() {
-		int[] board = boardView.getBoardStates();
-		
-		for (int i=0; i<board.length; i+=2) {
-			if (board[i] == 0) {
-				return i;
+	public void updateUnplayedPieces(int blue, int red) {
+		this.blueInHand = blue;
+		this.redInHand = red;
+	}
+	
+	/**
+	 * Sets how many moves ahead the AI looks.
+	 * 
+	 * @param depth number of moves of either player to search
+	 */
+	public void setSearchDepth(int depth) {
+		this.search.setDepth(depth);
+	}
+	
+	/**
+	 * Gives the AI a fixed amount of time per move. The AI searches deeper and deeper
+	 * until the time runs out, and plays the best move of the deepest completed search.
+	 * 
+	 * @param millis time per move in milliseconds, or 0 to search to the fixed depth instead
+	 */
+	public void setTimeBudget(long millis) {
+		this.search.setTimeBudget(millis);
+		this.search.setDepth(millis > 0 ? Search.MAX_PLY - 1 : DEFAULT_DEPTH);
+	}
+	
+	/**
+	 * Sets how much memory the AI uses to remember positions it has searched.
+	 * 
+	 * @param megabytes size of the transposition table in megabytes
+	 */
+	public void setHashSize(int megabytes) {
+		ParallelSearch resized = new ParallelSearch(this.boardView.getTopology(), new TranspositionTable(megabytes),
+				this.search.getThreads());
+		resized.setDepth(this.search.getDepth());
+		resized.setTimeBudget(this.search.getTimeBudget());
+		this.search.shutdown();
+		this.search = resized;
+	}
+	
+	/**
+	 * Sets how many threads the AI searches with. The threads share one transposition table.
+	 * 
+	 * @param threads number of threads, for example Runtime.getRuntime().availableProcessors()
+	 */
+	public void setThreads(int threads) {
+		this.search.setThreads(threads);
+	}
+	
+	/**
+	 * Gives the AI a tablebase to play the moving phase from.
+	 * 
+	 * @param tablebase the tablebase, or null to always search
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+	
+	/**
+	 * Gives the AI an opening book to play the placing phase from.
+	 * 
+	 * @param book the opening book, or null to always search
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		this.book = book;
+	}
+	
+	/**
+	 * Returns the transposition table of the AI, whose counters show how well it is sized.
+	 * 
+	 * @return the transposition table
+	 */
+	public TranspositionTable getTable() {
+		return this.search.getTable();
+	}
+	
+	/**
+	 * Searches the current position for the AI's best move.
+	 * 
+	 * @param mustRemove whether the AI has formed a mill and only has to remove a piece
+	 * @return the packed move, or Move.NONE if there is none
+	 */
+	private int think(boolean mustRemove) {
+		if (tablebase != null && !mustRemove && blueInHand == 0 && redInHand == 0) {
+			int move = tablebase.bestMove(this.boardView.getBoard(), AI_COLOR);
+			if (move != Move.NONE) {
+				return move;
 			}
 		}
-		
-		for (int i=1; i<board.length; i+=2) {
-			if (board[i] == 0) {
-				return i;
+		if (book != null && !mustRemove && (blueInHand > 0 || redInHand > 0)) {
+			int move = book.probe(this.boardView.getBoard(), AI_COLOR, random);
+			if (move != Move.NONE) {
+				return move;
 			}
 		}
-
-		return -1;
+		return this.search.search(this.boardView.getBoard(), blueInHand, redInHand, AI_COLOR, mustRemove);
 	}
 	
 	/**
-	 * Find the next available piece from the player to remove.
-	 * If only mill exist, remove a piece from the mill.
-	 * Otherwise remove first piece encountered.
+	 * Find the best position to place a piece.
+	 * 
+	 * @return the position on the board to place the piece
+	 */
+	public int nextPlace() {
+		int move = think(false);
+		if (move == Move.NONE) {
+			return -1;
+		}
+		plannedRemove = Move.removed(move);
+		return Move.to(move);
+	}
+	
+	/**
+	 * Find the player's piece to remove after the AI formed a mill.
+	 * Uses the removal found together with the last move if it is still legal,
+	 * otherwise searches for the best removal.
 	 * 
 	 * @return the position of the piece to remove
 	 */
 	public int nextRemove() {
 		int[] board = this.boardView.getBoardStates();
-
-		if (this.boardView.existsOnlyMills(1)) {
-			for (int i=0; i<board.length; i++) {
-				if (board[i] == PLAYER_COLOR) {
-//					System.out.println("moving: "+ i);
-					return i;
-				}
-			}
-		}else {
-			for (int i=0; i<board.length; i++) {
-				if (board[i] == PLAYER_COLOR && !this.boardView.millExists(i)) {
-//					System.out.println("moving: "+ i);
-					return i;
-				}
-			}
+		int planned = plannedRemove;
+		plannedRemove = Move.NO_POINT;
+		
+		if (planned != Move.NO_POINT && board[planned] == PLAYER_COLOR
+				&& (!this.boardView.millExists(planned) || this.boardView.existsOnlyMills(PLAYER_COLOR))) {
+			return planned;
 		}
-
-		return -1;
+		
+		int move = think(true);
+		return move == Move.NONE ? -1 : Move.removed(move);
+	}
+	
+	/**
+	 * Find the player's piece to remove if placing or moving a piece forms a mill.
+	 * Uses the removal found together with the move if it is still legal after it,
+	 * otherwise searches for the best removal. The board is not changed, so this can
+	 * be called while the move is still to be played, away from the event thread.
+	 * 
+	 * @param from position the piece moves from, or -1 if it is placed
+	 * @param to position the piece is placed or moved to
+	 * @return the position of the piece to remove, or -1 if the move forms no mill
+	 */
+	public int nextRemove(int from, int to) {
+		int planned = plannedRemove;
+		plannedRemove = Move.NO_POINT;
+		Board board = new Board(this.boardView.getTopology(), this.boardView.getBoardStates().clone());
+		board.setInHand(blueInHand, redInHand);
+		int move = from < 0 ? Move.place(to) : Move.slide(from, to);
+		if (!MoveGenerator.formsMill(board, Move.from(move), to, AI_COLOR)) {
+			return -1;
+		}
+		board.makeMove(move, AI_COLOR);
+		if (planned != Move.NO_POINT && MoveGenerator.isLegal(board, AI_COLOR, Move.remove(planned))) {
+			return planned;
+		}
+		int removal = this.search.search(board, board.getInHand(1), board.getInHand(2), AI_COLOR, true);
+		return removal == Move.NONE ? -1 : Move.removed(removal);
 	}
 	
 	/**
-	 * Try to find a piece available to move, and calculate where to move it.
-	 * Will go through each piece and move the first available one at a random direction.
+	 * Find the best piece to move, and where to move it.
 	 * 
 	 * @return [a,b] - a: which piece to move; b: where to put it
 	 */
 	public int[] nextMove() {
-		int[] board = this.boardView.getBoardStates();
-		int prev, next; // prev and next are the ones on the same line/layer
-		int out, in;	// up and down are the ones on the outter/lower layer
-		int[] result = new int[] {-1,-1};
-		
-		for (int i=0; i<board.length; i++) {
-			// get the position for the neighbor pieces for RED pieces
-			if (board[i] == AI_COLOR) {
-				// if it's even, need to check three directions
-				if (i%2 == 0) {
-					// if it's the top center one, need special case for left position
-					if (i%8 == 0) { 
-						prev = i+7;
-						next = i+1;
-					}else {
-						prev = i-1;
-						next = i+1;
-					}
-					
-					out = i - 8 >= 0 ? i-8 : -1;
-					in = i + 8 < board.length ? i + 8 : -1;
-					
-					int[] pos = new int[] {prev, next, out, in};
-					ArrayList<Integer> validPos = new ArrayList<Integer>();
-					
-					for (int j=0; j<pos.length; j++){
-						if (pos[j] > -1) { // if the position is valid, check if position is empty
-							if (board[pos[j]] == 0) {
-								validPos.add(pos[j]);
-							}
-						}
-					}
-					
-					if (validPos.isEmpty()) {
-						continue;
-					}
-					
-					Random random = new Random();
-					int target = random.nextInt(validPos.size());
-					result[0] = i;
-					result[1] = validPos.get(target);
-					return result;					
-					
-				}else { // odd number, check two directions
-					// if it's the top left one, need specia case for right position
-					if ((i+1)%8 == 0) { 
-						prev = i-1;
-						next = i-7;
-					}else {
-						prev = i-1;
-						next = i+1;
-					}
-//					System.out.println(prev + " ===== " + i + " ==== " + next);
-					
-					// if neither neighbour is empty, skip to the next piece
-					if (board[prev]!=0 && board[next]!=0) {
-						continue;
-					}
-
-					// if either of the neighbour ones is empty, place at the empty one
-					else if (board[prev]!=0 ^ board[next]!=0) { 
-						int place = board[prev] == 0 ? prev : next;
-						result[0] = i;
-						result[1] = place;
-//						System.out.println("moving: "+ result[0] + "to: " + result[1]);
-						return result;
-					}
-
-					// if both of the neighbours are empty, place at random
-					else {
-						Random random = new Random();
-						int place = random.nextInt(2) == 1 ? prev : next;
-						result[0] = i;
-						result[1] = place;
-//						System.out.println("moving: "+ result[0] + "to: " + result[1]);
-						return result;
-					}
-				}
-				
-				
-				
-				
-			}	
-
+		int move = think(false);
+		if (move == Move.NONE) {
+			return new int[] {-1,-1};
 		}
-		
-		return result;
+		plannedRemove = Move.removed(move);
+		return new int[] {Move.from(move), Move.to(move)};
 	}
 }
@@ -3,50 +3,126 @@ package sixmensmorris;
 import java.util.Arrays;
 
 /**
- * This is an abstract representation of the game board. 
+ * This is an abstract representation of the game board.
  * It keeps the state of each piece in a 1 dimensional array in order to reduce run time and space.
- * 
+ *
  * Note that by using modular arithmetic, we can represent the the Board as a 1 dimensional array. Pieces are adjacent to pieces
  * that are beside it in the array, and 8 spots ahead or behind it. This fact can be used in order to determine which pieces to check
  * to determine a victory condition in the future, as well as where a certain piece can move in the gameplay state.
- * 
+ *
+ * Behind the array the board also keeps one bitboard per colour, with bit i of the bitboard set if point i holds a piece of
+ * that colour. A single long holds 8 layers, so boards of up to 8 layers use one word per colour and larger boards use several.
+ * Adjacency and mill lines come from the shared BoardTopology, whose mill masks turn mill, count and emptiness checks into a
+ * few AND and bit count operations.
+ *
+ * The piece counts, the number of pieces standing in a mill and the mobility of each colour are updated incrementally every time a
+ * point changes, so checkWinner, onlyMillsLeft and canSlide answer in constant time. The same goes for the 64 bit Zobrist hash
+ * of the position.
+ *
+ * The board also knows how many pieces each colour still has to place, so a move packed by Move can be played with makeMove
+ * and taken back with unmakeMove without looking anywhere else. The legal moves themselves come from MoveGenerator.
+ *
+ * Positions are recorded at the end of every turn into a ring buffer of hashes. A small table counts how often each hash is in the
+ * buffer, so a repeated position is found without comparing boards.
+ *
  * @author Kelvin Lin, Jeremy Klotz
  * @version 1
+ * @see BoardTopology
+ * @see MoveGenerator
  */
 public class Board {
 
-	private int N;								//Total number of pieces on the board
-	private final int NUM_PIECES_PER_LAYER = 8;
+	private BoardTopology topology;
 	private int[] pieces;
-	private int[][] piecesHistory;
-	private int counter, repeats;
-	
-	/**	 
+	private int repeats;
+
+	private static final int HISTORY_SIZE = 256;		//Number of recorded positions kept, must be a power of 2
+	private static final int HISTORY_FILTER_SIZE = 1024;	//Number of counters used to find repeats, must be a power of 2
+	private long hash;							//Zobrist hash of the pieces on the board
+	private long[] history;						//Ring buffer of the last recorded position keys
+	private int historyLength;					//Number of positions recorded so far
+	private int[] historyFilter;				//Number of keys in the history for each value of (key & (HISTORY_FILTER_SIZE - 1))
+
+	private int words;							//Number of longs needed per bitboard
+	private long[][] bits;						//bits[state]: one bit per point in that state (0 = empty, 1 = blue, 2 = red)
+	private long[][] inMill;					//inMill[colour]: the pieces of that colour that are part of a mill
+	private int[] count;						//count[state]: number of points in that state
+	private int[] millCount;					//millCount[colour]: number of pieces of that colour that are part of a mill
+	private int[] mobility;						//mobility[colour]: number of (piece, empty neighbour) pairs of that colour
+	private int[] inHand;						//inHand[colour]: number of pieces that colour still has to place
+
+	/**
 	 * Constructs an array representation of the board.
 	 * @param N Number of squares needed for the board.
 	 * @param N determines if 6, 9, 12 Men's Morris is being played, and allows for easy change.
 	 */
 	public Board(int N){
-		this.counter = 0;
-		this.repeats = 0;
-		this.piecesHistory = new int[8][];
-		this.N = N;
-		pieces = new int[N * NUM_PIECES_PER_LAYER];
+		this(BoardTopology.get(N));
 	}
-	
+
 	/**
 	 * Constructs an array representation of the board given a preset state.
 	 * @param N Number of squares
 	 * @param pieces is a pre-determined number of pieces (this also allows for simple change in game logic)
 	 */
 	public Board(int N, int[] pieces){
-		this.N = N;
-		this.counter = 0;
+		this(BoardTopology.get(N), pieces);
+	}
+
+	/**
+	 * Constructs an empty board with a given topology.
+	 * @param topology	The shape and rules of the board
+	 */
+	public Board(BoardTopology topology){
+		this(topology, new int[topology.getPoints()]);
+	}
+
+	/**
+	 * Constructs a board with a given topology and a preset state.
+	 * @param topology	The shape and rules of the board
+	 * @param pieces	The state of each point
+	 */
+	public Board(BoardTopology topology, int[] pieces){
+		this.topology = topology;
 		this.repeats = 0;
-		this.piecesHistory = new int[8][];
+		this.history = new long[HISTORY_SIZE];
+		this.historyFilter = new int[HISTORY_FILTER_SIZE];
 		this.pieces = pieces;
+		this.words = topology.getWords();
+		this.bits = new long[3][words];
+		this.inMill = new long[3][words];
+		this.count = new int[3];
+		this.millCount = new int[3];
+		this.mobility = new int[3];
+		this.inHand = new int[3];
+		syncBitboards();
 	}
-	
+
+	/**
+	 * Rebuilds the bitboards and the incremental counters from the pieces array.
+	 */
+	private void syncBitboards(){
+		for(int state = 0; state < 3; state++){
+			Arrays.fill(bits[state], 0L);
+			Arrays.fill(inMill[state], 0L);
+		}
+		Arrays.fill(count, 0);
+		Arrays.fill(millCount, 0);
+		Arrays.fill(mobility, 0);
+		this.hash = 0;
+		for(int i = 0; i < pieces.length; i++){
+			bits[pieces[i]][i >>> 6] |= 1L << i;
+			count[pieces[i]]++;
+			hash ^= topology.getZobristKey(i, pieces[i]);
+		}
+		for(int i = 0; i < pieces.length; i++){
+			if(pieces[i] != 0){
+				mobility[pieces[i]] += countNeighbours(i, 0);
+				updateMill(i);
+			}
+		}
+	}
+
 	/**
 	 * Initializes the pieces array.
 	 * @param pieces is an integer array of positions to place pieces
@@ -54,89 +130,240 @@ public class Board {
 	 */
 	public void setPieces(int[] pieces){
 		this.pieces = pieces;
+		syncBitboards();
+		clearHistory();
 	}
-	
+
 	/**
 	 * Returns the number of squares on the board.
 	 * @return number of squares of the board
 	 */
 	public int getN(){
-		return this.N;
+		return this.topology.getN();
+	}
+
+	/**
+	 * Returns the topology of the board.
+	 * @return	The shape and rules of the board
+	 */
+	public BoardTopology getTopology(){
+		return this.topology;
 	}
-	
+
 	/**
-	 * Returns the number of repeats
+	 * Returns the number of repeats, which is how many times the last recorded position was recorded before.
 	 * @return	The number of repeats
 	 */
 	public int getRepeats(){
 		return this.repeats;
 	}
-	
+
+	/**
+	 * Returns the Zobrist hash of the pieces on the board.
+	 * Equal positions have equal hashes, and the hash is kept up to date by every change to the board.
+	 * @return	The hash of the position
+	 */
+	public long getHash(){
+		return this.hash;
+	}
+
 	/**
 	 * Set the state of a piece on the board
 	 * @param number will help us declare what state the board is in (0 = not started, 1 = play mode , 2 = debug mode)
 	 * @param state will be the value we get as a result of calling this method
 	 */
 	public void setPieceState(int number, int state){
-		this.pieces[number] = state;
-		this.piecesHistory[counter%8] = this.pieces;
-		
-		// check repeat
-		if(counter%8 == 7){
-			if(historyIsEqual(Arrays.copyOfRange(this.piecesHistory, 0, 4), Arrays.copyOfRange(this.piecesHistory, 4, 8))){
-				this.repeats++;
-			} else{
-				this.repeats = 0;
-			}
+		setPoint(number, state);
+	}
+
+	/**
+	 * Sets the number of pieces each colour still has to place.
+	 * @param blue	The number of unplayed blue pieces
+	 * @param red	The number of unplayed red pieces
+	 */
+	public void setInHand(int blue, int red){
+		this.inHand[1] = blue;
+		this.inHand[2] = red;
+	}
+
+	/**
+	 * Returns the number of pieces a colour still has to place.
+	 * @param colour	The colour (1 = blue, 2 = red)
+	 * @return			The number of unplayed pieces of that colour
+	 */
+	public int getInHand(int colour){
+		return this.inHand[colour];
+	}
+
+	/**
+	 * Plays a move in place: the piece is placed from the hand or moved, and the removed piece, if any, is taken off.
+	 * The move is not checked; it should come from MoveGenerator.
+	 * @param move		The packed move
+	 * @param colour	The colour that moves (1 = blue, 2 = red)
+	 */
+	public void makeMove(int move, int colour){
+		int from = Move.from(move), to = Move.to(move), removed = Move.removed(move);
+		if(from != Move.NO_POINT){
+			setPoint(from, 0);
+		} else if(to != Move.NO_POINT){
+			inHand[colour]--;
+		}
+		if(to != Move.NO_POINT){
+			setPoint(to, colour);
+		}
+		if(removed != Move.NO_POINT){
+			setPoint(removed, 0);
+		}
+	}
+
+	/**
+	 * Takes back a move played with makeMove, restoring the board exactly as it was.
+	 * @param move		The packed move
+	 * @param colour	The colour that moved (1 = blue, 2 = red)
+	 */
+	public void unmakeMove(int move, int colour){
+		int from = Move.from(move), to = Move.to(move), removed = Move.removed(move);
+		if(removed != Move.NO_POINT){
+			setPoint(removed, 3 - colour);
+		}
+		if(to != Move.NO_POINT){
+			setPoint(to, 0);
+		}
+		if(from != Move.NO_POINT){
+			setPoint(from, colour);
+		} else if(to != Move.NO_POINT){
+			inHand[colour]++;
 		}
-		counter++;
 	}
-	
+
 	/**
-	 * Checks 2 history arrays to see if they are equal
-	 * @param history1	The first history array
-	 * @param history2	The second history array
-	 * @return			Whether both arrays are equal
+	 * Records the current position at the end of a turn, and updates the number of repeats.
+	 * @param colourToMove	The colour that moves next (1 = blue, 2 = red), which is part of the position
+	 * @return				The number of times this position was recorded before
 	 */
-	private boolean historyIsEqual(int[][] history1, int[][] history2){
-		if(history1.length != history2.length){
-			return false;
+	public int recordPosition(int colourToMove){
+		long key = colourToMove == 2 ? hash ^ topology.getSideKey() : hash;
+		int slot = historyLength & (HISTORY_SIZE - 1);
+		if(historyLength >= HISTORY_SIZE){
+			historyFilter[(int) history[slot] & (HISTORY_FILTER_SIZE - 1)]--;
 		}
-		for(int i = 0; i < history1.length; i++){
-			if(!boardIsEqual(history1[i], history2[i])){
-				return false;
+		history[slot] = key;
+		historyLength++;
+
+		int filterCount = ++historyFilter[(int) key & (HISTORY_FILTER_SIZE - 1)];
+		this.repeats = 0;
+		if(filterCount > 1){ //Another key with the same low bits is in the history, so look for it
+			for(int i = 0; i < Math.min(historyLength, HISTORY_SIZE); i++){
+				if(history[i] == key && i != slot){
+					this.repeats++;
+				}
 			}
 		}
-		return true;
+		return this.repeats;
 	}
-	
+
 	/**
-	 * Checks 2 boards to see if they are equal
-	 * @param board1	The first board
-	 * @param board2	The second board
-	 * @return			Whether the boards are equal
+	 * Forgets every recorded position.
 	 */
-	private boolean boardIsEqual(int[] board1, int[] board2){
-		if(board1.length != board2.length){
-			return false;
+	public void clearHistory(){
+		Arrays.fill(historyFilter, 0);
+		this.historyLength = 0;
+		this.repeats = 0;
+	}
+
+	/**
+	 * Changes the state of a point and updates the bitboards, counts, mills and mobility around it.
+	 * Only the point, its neighbours and the points on its mill lines are looked at, so this takes constant time.
+	 * @param number	The point to change
+	 * @param state		The new state of the point (0 = empty, 1 = blue, 2 = red)
+	 */
+	private void setPoint(int number, int state){
+		int old = this.pieces[number];
+		if(old == state){
+			return;
+		}
+		// take away what the point contributed to the mobility before the change...
+		if(old == 0){
+			mobility[1] -= countNeighbours(number, 1);
+			mobility[2] -= countNeighbours(number, 2);
 		} else{
-			for(int i = 0; i < board1.length; i++){
-				if(board1[i] != board2[i]){
-					return false;
+			mobility[old] -= countNeighbours(number, 0);
+		}
+
+		long bit = 1L << number;
+		int word = number >>> 6;
+		hash ^= topology.getZobristKey(number, old) ^ topology.getZobristKey(number, state);
+		bits[old][word] &= ~bit;
+		bits[state][word] |= bit;
+		count[old]--;
+		count[state]++;
+		this.pieces[number] = state;
+
+		// ...and add what it contributes now
+		if(state == 0){
+			mobility[1] += countNeighbours(number, 1);
+			mobility[2] += countNeighbours(number, 2);
+		} else{
+			mobility[state] += countNeighbours(number, 0);
+		}
+
+		// only the mills through this point can have been made or broken
+		int[] pointLines = topology.getPointLines();
+		updateMill(number);
+		for(int k = topology.getPointLineStart(number); k < topology.getPointLineStart(number + 1); k++){
+			int line = pointLines[k];
+			for(int j = 0; j < 3; j++){
+				int point = topology.getLinePoint(line, j);
+				if(point != number){
+					updateMill(point);
 				}
 			}
 		}
-		return true;
 	}
-	
+
+	/**
+	 * Returns the number of neighbours of a point that are in a given state.
+	 * @param number	The point
+	 * @param state		The state to count
+	 * @return			The number of neighbours in that state
+	 */
+	private int countNeighbours(int number, int state){
+		long[] stateBits = bits[state];
+		int neighbours = 0;
+		for(int w = 0; w < words; w++){
+			neighbours += Long.bitCount(topology.getNeighbourMask(number, w) & stateBits[w]);
+		}
+		return neighbours;
+	}
+
+	/**
+	 * Recomputes whether the piece on a point is part of a mill, and updates the mill counts.
+	 * @param number	The point
+	 */
+	private void updateMill(int number){
+		long bit = 1L << number;
+		int word = number >>> 6;
+		for(int colour = 1; colour <= 2; colour++){
+			if((inMill[colour][word] & bit) != 0){
+				inMill[colour][word] &= ~bit;
+				millCount[colour]--;
+			}
+		}
+		int colour = this.pieces[number];
+		if(colour != 0 && isInMill(number)){
+			inMill[colour][word] |= bit;
+			millCount[colour]++;
+		}
+	}
+
 	/**
 	 * Return the current state of the board
-	 * @return the current state of the board 
+	 * @return the current state of the board
 	 */
 	public int[] getBoardState(){
 		return this.pieces;
 	}
-	
+
 	/**
 	 * Return the current state of the piece (black, red or blue)
 	 * @param number is an index that will help determine the piece state
@@ -145,80 +372,145 @@ public class Board {
 	public int getPieceState(int number){
 		return this.pieces[number];
 	}
-	
+
+	/**
+	 * Returns the number of longs used by each bitboard.
+	 * @return	The number of words per bitboard
+	 */
+	public int getWords(){
+		return this.words;
+	}
+
+	/**
+	 * Returns one word of the bitboard of a given state.
+	 * For state 0 the bits of the empty points are returned.
+	 * @param state	The state of the points (0 = empty, 1 = blue, 2 = red)
+	 * @param word	The index of the word
+	 * @return		A long with bit i set if point (64 * word + i) is in the given state
+	 */
+	public long getBits(int state, int word){
+		return bits[state][word];
+	}
+
+	/**
+	 * Returns one word of the bitboard of the pieces of a colour that are part of a mill.
+	 * @param colour	The colour (1 = blue, 2 = red)
+	 * @param word		The index of the word
+	 * @return			A long with bit i set if point (64 * word + i) holds a piece of that colour in a mill
+	 */
+	public long getMillBits(int colour, int word){
+		return inMill[colour][word];
+	}
+
+	/**
+	 * Returns whether a point is empty.
+	 * @param number	The point to check
+	 * @return			Whether the point holds no piece
+	 */
+	public boolean isEmpty(int number){
+		return this.pieces[number] == 0;
+	}
+
+	/**
+	 * Returns the number of pieces of a given colour on the board.
+	 * @param colour	The colour to count
+	 * @return			The number of pieces of that colour
+	 */
+	public int getPieceCount(int colour){
+		return this.count[colour];
+	}
+
+	/**
+	 * Returns the number of pieces of a given colour that are part of a mill.
+	 * @param colour	The colour to count (1 = blue, 2 = red)
+	 * @return			The number of pieces of that colour in a mill
+	 */
+	public int getMillCount(int colour){
+		return this.millCount[colour];
+	}
+
+	/**
+	 * Returns the mobility of a colour, which is the number of ways a piece of that colour can slide to an adjacent empty point.
+	 * @param colour	The colour to check (1 = blue, 2 = red)
+	 * @return			The number of (piece, empty neighbour) pairs
+	 */
+	public int getMobility(int colour){
+		return this.mobility[colour];
+	}
+
+	/**
+	 * This method checks to see if the piece at a given index i is part of a mill, without allocating.
+	 * @param i	The index to search
+	 * @return	Whether the piece at i is part of a mill
+	 */
+	public boolean isInMill(int i){
+		long[] stateBits = bits[this.pieces[i]];
+		int[] pointLines = topology.getPointLines();
+		for(int k = topology.getPointLineStart(i); k < topology.getPointLineStart(i + 1); k++){
+			if(topology.lineComplete(pointLines[k], stateBits)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether a piece of a given colour has an empty point to slide to.
+	 * @param colour	The colour to check
+	 * @return			Whether at least one piece of that colour can move to an adjacent point
+	 */
+	public boolean canSlide(int colour){
+		return this.mobility[colour] > 0;
+	}
+
 	/**
 	 * This method checks to see if a mill exists at a given index i
 	 * @param i	The index to search
 	 * @return	An integer array representing the location of the mill if it exists. Returns {-1, -1, -1} otherwise.
 	 */
 	public int[] millExists(int i){
-		int[] mill = new int[3];
-		int currentState = this.pieces[i];
-		if(i % 2 == 0){ //Check even position
-			if( (pieces[(i+1)%8 + ((i > 7)?8:0)] == currentState) && ((i%8 == 0)?(pieces[7 + ((i > 7)?8:0)] == currentState):(pieces[(i-1)%8 + ((i > 7)?8:0)] == currentState)) ){
-				mill[0] = i;
-				mill[1] = i+1;
-				mill[2] = (i%8 == 0)?(7+ ((i > 7)?8:0) ):(i-1);
-			} else{ //No mills exist
-				mill[0] = -1;
-				mill[1] = -1;
-				mill[2] = -1;
-			}
-		} else{ //Odd position
-			if(pieces[(i+1)%8 + ((i > 7)?8:0)] == currentState && pieces[(i+2)%8 + ((i > 7)?8:0)] == currentState){
-				mill[0] = i;
-				mill[1] = i+1;
-				mill[2] = i+2;
-			} else if((pieces[(i-1)%8 + ((i > 7)?8:0)] == currentState) && ((i%8 == 1)?(pieces[7 + ((i > 7)?8:0)] == currentState):(pieces[(i-2)%8 + ((i > 7)?8:0)] == currentState))){
-				mill[0] = i;
-				mill[1] = i-1;
-				mill[2] = (i%8 == 1)? (7+ ((i > 7)?8:0)):(i-2);
-			} else{ //No mill found
-				mill[0] = -1;
-				mill[1] = -1;
-				mill[2] = -1;
+		long[] stateBits = bits[this.pieces[i]];
+		int[] pointLines = topology.getPointLines();
+		for(int k = topology.getPointLineStart(i); k < topology.getPointLineStart(i + 1); k++){
+			int line = pointLines[k];
+			if(topology.lineComplete(line, stateBits)){
+				//The mill is reported starting from i, followed by the rest of the line
+				int[] mill = {i, -1, -1};
+				for(int j = 0, m = 1; j < 3; j++){
+					int point = topology.getLinePoint(line, j);
+					if(point != i){
+						mill[m++] = point;
+					}
+				}
+				return mill;
 			}
 		}
-		return mill;
+		return new int[] {-1, -1, -1};
 	}
-	
+
 	/**
 	 * This method checks to see if there are only mills left for a given colour.
 	 * @param colour	The colour to check
 	 * @return			Whether there are only mills left
 	 */
 	public boolean onlyMillsLeft(int colour){
-		boolean onlyMillsLeft = true;
-		for(int i = 0; i < pieces.length; i++){
-			if(pieces[i] == colour){
-				int[] mill = millExists(i);
-				onlyMillsLeft = onlyMillsLeft && (mill[0] != -1);
-			}
-		}
-		return onlyMillsLeft;
+		return this.millCount[colour] == this.count[colour];
 	}
-	
+
 	/**
 	 * This method checks to see if there is a winner
 	 * @return	1 if blue is the winner, 2 if red is the winner, 0 otherwise
 	 */
 	public int checkWinner(){
 		int winner = 0;
-		int blueCount = 0, redCount = 0;
-		for(int i = 0; i < pieces.length; i++){
-			 if(pieces[i] == 1){
-				 blueCount++;
-			 } else if(pieces[i] == 2){
-				 redCount++;
-			 }
-		}
-		
+		int blueCount = count[1], redCount = count[2];
+
 		if(blueCount == 2){ //Red wins
 			winner = 2;
 		} else if(redCount == 2){ //Blue wins
 			winner = 1;
-		} 
+		}
 		return winner;
 	}
-	
+
 }
@@ -6,40 +6,46 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
 import javax.swing.Box;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
 /**
  * This is a controller for the board class. 
  * It acts as an intermediary between the Board model (Board.java), and the Board view (BoardView.java).
+ * The rules of the game are kept in a GameEngine, which plays on the same board as the view: the controller turns clicks into
+ * moves, passes them to the engine, and shows the state the engine reports.
  * @author Kelvin Lin , Zichen Jiang, Jeremy Klotz
  * @version 1
  */
 public class BoardController extends JFrame {
 	private JFrame jFrame;
 	private BoardView boardView;
-	private int turn; // 0 = blue, 1 = red
-	private Player blue, red;
+	private GameEngine engine; // the rules, the turn (0 = blue, 1 = red) and the pieces left to place
 	private boolean ExistsAI;
 	private AI AI;
+	private boolean AIThinking = false; // whether the AI is searching for a move in the background
+	private final int AI_TIME_BUDGET = 500; // milliseconds the AI may think per move
+	private Tablebase tablebase; // exact values of the moving phase, or null if there is no tablebase file
+	private OpeningBook book; // moves for the placing phase, or null if there is no book file
+	private boolean fromStart = true; // whether the game was played from the empty board, so its moves can be archived
+	private boolean archived = false; // whether the finished game was added to the game archive
+	private static GameArchive archive; // where finished games are kept, or null to keep none (see Game)
 
-	private int state = 0; // 0 = place pieces, 1 = play game, 2 = blue wins, 3 = red wins, 4 = draw
+	// engine.status(): 0 = place pieces, 1 = play game, 2 = blue wins, 3 = red wins, 4 = draw
 	private String[] stateStrings = {"Placing Pieces", "Game in Progress", "Blue Wins", "Red Wins", "Game Drawn"};
 
 	
 	private final int NUMBER_OF_PIECES = 6;	// this can change to 9 if we are going to do 9 Men's Morris instead
-	private final int BLUE_STATE = 1;
-	private final int RED_STATE = 2;
 	
 	private int AI_TURN;
 	private int AI_COLOUR;
@@ -50,17 +56,12 @@ public class BoardController extends JFrame {
 	private final int DEFAULT_SCREEN_WIDTH = 500; // default width and height of screen (will scale if stretch/compress window)
 	private final int DEFAULT_SCREEN_HEIGHT = 500;
 
-	private int selectedColour = 0;	//Used to facilitate movement of pieces
-	private int selectedPiece = -1; //Used to facilitate movement of pieces
+	private int selectedPiece = -1; //Used to facilitate movement of pieces, the piece picked up to move
 	private JLabel blueLabel, blueCount, redLabel, redCount, title; // some labels to properly update the view
 	
-	private boolean removePiece = false; //Whether a piece can be removed from the board
-	
 	private JButton saveGame; //Save game button
 	private JButton makeAIMove; // make AI move button
 	
-	private int maxNumberOfRepeats = 12; //Maximum number of repetitions
-	
 	/**
 	 * Constructs the screen needed to play the game, and adds all EventListeners needed to obtain input from the user.
 	 * @param N is the number of squares
@@ -68,11 +69,13 @@ public class BoardController extends JFrame {
 	public BoardController(int N) {
 		//Instantiate Random Turns
 		Random random = new Random();
-		turn = random.nextInt(2);
+		int turn = random.nextInt(2);
 
 		// Instantiate Models
-		blue = new Player(BLUE_STATE, NUMBER_OF_PIECES);
-		red = new Player(RED_STATE, NUMBER_OF_PIECES);
+		boardView = new BoardView(N); // call BoardView to display graphics
+		engine = new GameEngine(boardView.getBoard(), turn, GameEngine.PLACING, false, NUMBER_OF_PIECES, NUMBER_OF_PIECES);
+		tablebase = Tablebase.getDefault(boardView.getTopology());
+		book = OpeningBook.getDefault(boardView.getTopology());
 
 		// Instantiate Views
 		jFrame = new JFrame("Six Men's Morris");
@@ -87,7 +90,7 @@ public class BoardController extends JFrame {
 																				 // in case it is stretched/compressed
 		
 		//Create title JLabel and add it to the top of the screen
-		title = new JLabel(stateStrings[state]);
+		title = new JLabel(stateStrings[engine.status()]);
 		title.setFont(font);
 		updateTitleColour();
 		updateTitleText();
@@ -114,7 +117,7 @@ public class BoardController extends JFrame {
 		
 		blueLabel = new JLabel("Blue:"); // use scalable font for all labels relevant to the blue player										 
 		blueLabel.setFont(font);
-		blueCount = new JLabel(String.valueOf(blue.getNumberOfUnplayedPieces())); // the label accesses the number of pieces left
+		blueCount = new JLabel(String.valueOf(engine.getInHand(1))); // the label accesses the number of pieces left
 																				  // and returns the integer value as a string for the label
 		blueCount.setFont(font);		// use scalable font
 		//create a sub box to be place in the window
@@ -123,13 +126,12 @@ public class BoardController extends JFrame {
 		blueVerticalBox.add(blueCount);
 		box.add(blueVerticalBox);
 
-		boardView = new BoardView(N); // call BoardView to display graphics
 		box.add(boardView);		      // add graphics to the original box
 		
 		// creating the same labels needed for player blue, but this time for player red
 		redLabel = new JLabel("Red:");
 		redLabel.setFont(font);
-		redCount = new JLabel(String.valueOf(red.getNumberOfUnplayedPieces()));
+		redCount = new JLabel(String.valueOf(engine.getInHand(2)));
 		redCount.setFont(font);
 		
 		redVerticalBox.add(redLabel);
@@ -174,10 +176,26 @@ public class BoardController extends JFrame {
 	 */
 	public BoardController(int N, int[] boardState, int turn, int state, boolean removePiece){
 		this(N, boardState);
-		this.turn = turn;
-		this.state = state;
-		this.removePiece = removePiece;
-		update(true);
+		this.engine = new GameEngine(boardView.getBoard(), turn, state, removePiece, engine.getInHand(1), engine.getInHand(2));
+		update();
+	}
+	
+	/**
+	 * BoardController constructor used for loading a SavedGame, with the AI if one was playing.
+	 * @param saved	The saved game
+	 */
+	public BoardController(SavedGame saved){
+		this(saved.N);
+		for(int i = 0; i < saved.points.length; i++){
+			boardView.setBoardState(i, saved.points[i]);
+		}
+		this.fromStart = false;
+		this.engine = new GameEngine(boardView.getBoard(), saved.turn, saved.state, saved.removePiece, saved.blueInHand,
+				saved.redInHand);
+		update();
+		if(saved.aiColour != 0){
+			initAI(saved.aiColour);
+		}
 	}
 	
 	/**
@@ -189,17 +207,21 @@ public class BoardController extends JFrame {
 	public BoardController(int N, int[] boardState) { 	
 		this(N);
 
+		int bluePlaced = 0, redPlaced = 0;
 		for(int i = 0; i < boardState.length; i++){
 			boardView.setBoardState(i, boardState[i]);
 			if(boardState[i] == 1){
-				blue.placePiece();
+				bluePlaced++;
 			} else if(boardState[i] == 2){
-				red.placePiece();
+				redPlaced++;
 			}
 			
 		}
 
-		boardView.checkWinner();
+		this.fromStart = false;
+		this.engine = new GameEngine(boardView.getBoard(), engine.getTurn(), GameEngine.PLACING, false,
+				NUMBER_OF_PIECES - bluePlaced, NUMBER_OF_PIECES - redPlaced);
+		update();
 	}
 	
 	/** 
@@ -236,6 +258,10 @@ public class BoardController extends JFrame {
 			PLAYER_COLOUR = (AI_COLOUR == 1) ? 2 : 1;
 		}
 		this.AI = new AI(this.boardView, AI_COLOUR, PLAYER_COLOUR);
+		this.AI.setTimeBudget(AI_TIME_BUDGET);
+		this.AI.setTablebase(tablebase);
+		this.AI.setOpeningBook(book);
+		this.updateAI();
 		
 //		System.out.println("AI colour:" + AI_COLOUR);
 //		System.out.println("AI_TURN: " + AI_TURN);
@@ -249,14 +275,9 @@ public class BoardController extends JFrame {
 	
 	
 	/**
-	 * Updates the display.
-	 * 
-	 * @param updateState will update the game state if true
+	 * Updates the display with the state of the game engine.
 	 */
-	private void update(boolean updateState){
-		if(updateState){
-			this.updateState();
-		}
+	private void update(){
 		if (ExistsAI) {
 			this.updateAI();
 		}
@@ -265,7 +286,45 @@ public class BoardController extends JFrame {
 		this.updateTitleText();
 		this.updateAIButton();
 		this.updateView();
-		
+		this.archiveIfOver();
+	}
+	
+	/**
+	 * Sets the archive games finished in the window are added to. It is shared by every window and stays open.
+	 * @param archive	The archive, or null to keep no games
+	 */
+	public static void setArchive(GameArchive archive) {
+		BoardController.archive = archive;
+	}
+	
+	/**
+	 * Adds the game to the game archive (see GameArchive), if there is one, once it is over, so it can be replayed move by move.
+	 * Only games played from the empty board are archived; a loaded game has no moves from before it was saved.
+	 * The game is written in the background, so the window does not wait for the file.
+	 */
+	private void archiveIfOver() {
+		final GameArchive target = archive;
+		if (target == null || !engine.isOver() || !fromStart || archived) {
+			return;
+		}
+		archived = true;
+		final GameEngine finished = engine;
+		new SwingWorker<Void, Void>() {
+			@Override
+			protected Void doInBackground() throws IOException {
+				target.append(finished);
+				return null;
+			}
+			
+			@Override
+			protected void done() {
+				try {
+					get();
+				} catch (InterruptedException | ExecutionException e1) {
+					new ErrorDialog(jFrame, "Archive Error.", "An error occured and your game was not archived.");
+				}
+			}
+		}.execute();
 	}
 	
 	/**
@@ -287,8 +346,8 @@ public class BoardController extends JFrame {
 	 * This method will update the labels of each player involved.
 	 */
 	private void updateLabels() {
-		blueCount.setText(String.valueOf(blue.getNumberOfUnplayedPieces()));
-		redCount.setText(String.valueOf(red.getNumberOfUnplayedPieces()));
+		blueCount.setText(String.valueOf(engine.getInHand(1)));
+		redCount.setText(String.valueOf(engine.getInHand(2)));
 		updateTitleColour();
 		updateTitleText();
 		this.updateAIButton();
@@ -306,39 +365,46 @@ public class BoardController extends JFrame {
 	 * This method updates the title JLabel's colour
 	 */
 	private void updateTitleColour(){
-		if(this.turn == 0){
+		if(engine.getTurn() == 0){
 			title.setForeground(Color.BLUE);
 		} else{
 			title.setForeground(Color.RED);
 		}
 	}
 	
-	/**
-	 * This method updates the game state
-	 * 
-	 */
-	private void updateState(){
-		if(state == 0 && red.getNumberOfUnplayedPieces() == 0 && blue.getNumberOfUnplayedPieces() == 0){
-			 this.state=1;
-		} else if(state == 1 && boardView.getRepeats() > maxNumberOfRepeats){
-			this.state = 4;
-		} else if(state == 1 && boardView.checkWinner() != 1){
-			this.state = boardView.checkWinner()==2?2:3;
-		}
-	}
-	
 	/**
 	 * This method updates the title state according to the class.
 	 * Also, if the state is not place pieces (state = 0), then it hides the blue and red piece counter labels.
+	 * If the position is in the tablebase, the title also tells who wins with best play, and in how many turns.
 	 */
 	private void updateTitleText(){
+		int state = engine.status();
 		if(state != 0){
 			this.blueCount.setVisible(false);
 			this.blueLabel.setVisible(false);
 			this.redLabel.setVisible(false);
 			this.redCount.setVisible(false);
 		}
-		title.setText(this.stateStrings[this.state] + ((state <= 1)?(this.turn%2==0)?" (Blue Move)":" (Red Move)":""));		
+		title.setText(this.stateStrings[state] + ((state <= 1)?(engine.getTurn()==0)?" (Blue Move)":" (Red Move)":"") + verdictText());		
+	}
+	
+	/**
+	 * Returns the tablebase verdict for the player to move, such as ", win in 7", or nothing if the position is not in the
+	 * tablebase or a piece has to be removed first.
+	 * @return	The text to add to the title
+	 */
+	private String verdictText(){
+		if(tablebase == null || engine.status() != GameEngine.PLAYING || engine.mustRemove()){
+			return "";
+		}
+		int value = tablebase.probe(engine.getBoard(), engine.getColour());
+		int turns = tablebase.distance(engine.getBoard(), engine.getColour());
+		switch(value){
+		case Tablebase.WIN:		return ", win in " + turns;
+		case Tablebase.LOSS:	return ", loss in " + turns;
+		case Tablebase.DRAW:	return ", drawn";
+		default:				return "";
+		}
 	}
 	
 	/**
@@ -347,7 +413,7 @@ public class BoardController extends JFrame {
 	 * 
 	 */
 	private void updateAIButton() {
-		if (ExistsAI && turn == AI_TURN) {
+		if (ExistsAI && engine.getTurn() == AI_TURN && !engine.isOver() && !AIThinking) {
 			makeAIMove.setEnabled(true);
 		}else{
 			makeAIMove.setEnabled(false);
@@ -359,6 +425,7 @@ public class BoardController extends JFrame {
 	 */
 	private void updateAI(){
 		this.AI.updateBoardView(this.boardView);
+		this.AI.updateUnplayedPieces(engine.getInHand(1), engine.getInHand(2));
 	}
 	
 	/**
@@ -366,136 +433,56 @@ public class BoardController extends JFrame {
 	 * @param i		Where to place the piece
 	 */
 	private void placePieceState(int i){
-		
-		switch(turn%2){
-		case 0:
-				if(removePiece){
-					removePiece(i);
-				} else if(boardView.pieceNotTaken(i) && blue.getNumberOfUnplayedPieces() > 0){
-					boardView.setBoardState(i, 1);
-					blue.placePiece();
-					if(boardView.millExists(i)){
-						removePiece = true;
-					} else{
-						turn++; //Incrementing and decrementing turn at every subsequent turn ensures that there will never be overflow.
-					}
-				}
-			break;
-		case 1:
-			if(removePiece){
-				removePiece(i);
-			} else if(boardView.pieceNotTaken(i) && boardView.pieceNotTaken(i)){
-				if(red.getNumberOfUnplayedPieces() > 0){
-					boardView.setBoardState(i, 2);
-					red.placePiece();
-					if(boardView.millExists(i)){
-						removePiece = true;
-					} else{
-						turn--;
-					}
-				}
-			}
-			break;
-		}
-		update(true);
-	}
-	
-
-	/**
-	 * This method checks all the pieces of a certain colour on the board, and returns <code>true</code> if there are no possible
-	 * moves to be played by the specified colour.
-	 * @param colour	The colour to check
-	 * @return			<code>true</code> if there are no possible moves, <code>false</code> otherwise.
-	 */
-	private boolean noPossibleMoves(int colour){
-		for(int i = 0; i < boardView.getBoardStates().length; i++){
-			if(boardView.getBoardState(i) == colour){
-				for(int j = 0; j < boardView.getBoardStates().length; j++){
-					if(j == i + 1 || j == i - 1 || j == i + 8 || j == i - 8 
-					|| (j ==7 && i == 0) || (j==8 && i ==15) || (j ==0 && i == 7) || (j==15 && i ==8)){
-						if(boardView.getBoardState(j) == 0){
-							return false;
-						}
-					}
-				}
-			}
+		if(engine.mustRemove()){
+			removePiece(i);
+		} else{
+			engine.apply(Move.place(i)); //Placing on a taken point does nothing
 		}
-		return true;
+		update();
 	}
 	
-
-	
 	/**
 	 * This method encapsulates the play game (state = 1) state.
+	 * The first click picks up a piece of the player to move, and the second click puts it down on an adjacent empty point,
+	 * or back where it was.
 	 * @param i		Where to move the piece
 	 */
 	private void movePiece(int i){
-
-		//Move piece if legal
-		if(noPossibleMoves(turn%2 + 1)){
-			this.state = turn%2 == 0 ? 3 : 2;
-		} else if(removePiece){
+		if(engine.mustRemove()){
 			removePiece(i);
-		} else if(turn%2 == 0 && boardView.getBoardState(i) == 1 && selectedColour == 0){ //Select blue piece
-			boardView.setBoardState(i, 0);
-			selectedPiece = i; 
-			selectedColour = 1;					
-		} else if(turn%2 == 1 && boardView.getBoardState(i) == 2 && selectedColour == 0){ //Select red piece
-			boardView.setBoardState(i, 0);
-			selectedPiece = i;
-			selectedColour = 2;
-		} else if(selectedColour != 0 && boardView.getBoardState(i) == 0){ //Move the piece
-			if(i == selectedPiece || i == selectedPiece + 1 || i == selectedPiece - 1 || i == selectedPiece + 8 || i == selectedPiece - 8 
-					|| (i ==7 && selectedPiece == 0) || (i==8 && selectedPiece ==15) || (i ==0 && selectedPiece == 7) || (i==15 && selectedPiece ==8)){
-				if(i != selectedPiece){ //If the piece is not placed back on the same square
-					boardView.setBoardState(i, selectedColour);
-					if(boardView.millExists(i)){
-						removePiece = true;
-					} else{
-						selectedColour = 0;
-						if(turn%2 == 0){
-							turn++;
-						} else{
-							turn--;
-						}
-						selectedPiece = -1;
-						
-						// the turn ends
-					}
-				} else{
-					boardView.setBoardState(i, selectedColour);
-					selectedPiece = -1;
-					selectedColour = 0;
-				}
+		} else if(selectedPiece < 0 && boardView.getBoardState(i) == engine.getColour()){ //Select a piece
+			selectPiece(i);
+		} else if(selectedPiece >= 0 && i == selectedPiece){ //Put the piece back on the same square
+			selectPiece(-1);
+		} else if(selectedPiece >= 0 && boardView.getBoardState(i) == 0){ //Move the piece
+			if(engine.apply(Move.slide(selectedPiece, i))){
+				selectPiece(-1);
 			} else{
 				new ErrorDialog(jFrame, "Invalid move", "Please select a valid move");
 			}
 		}
 	}
 	
+	/**
+	 * Picks up a piece to move, or puts it down. The view shows the picked up piece as an empty point.
+	 * @param i		The piece to pick up, or -1 to put it down
+	 */
+	private void selectPiece(int i){
+		selectedPiece = i;
+		boardView.setSelectedPiece(i);
+	}
+	
 	/**
 	 * This method allows the caller to remove a piece from the board
 	 * @param i		Which piece to remove
 	 */
 	private void removePiece(int i){
-		if(boardView.millExists(i) && !boardView.existsOnlyMills((turn+1)%2 +1)){
+		if(engine.apply(Move.remove(i))){
+			update();
+		} else if(boardView.getBoardState(i) == 3 - engine.getColour()){
 			new ErrorDialog(jFrame, "Invalid Move", "Please choose a piece not in a mill.");
-		} else if(boardView.getBoardState(i) == 0 || boardView.getBoardState(i) == turn+1){
-			new ErrorDialog(jFrame, "Invalid Move", "Please choose an opponent's piece to remove");
 		} else{
-			boardView.setBoardState(i, 0);
-			removePiece = false;
-			selectedColour = 0;
-			update(true);
-			if(turn%2 == 0){
-				turn++;
-			} else{
-				turn--;
-			}
-			selectedPiece = -1;
-			
-			// end of turn
-//			System.out.println("end of removePiece");
+			new ErrorDialog(jFrame, "Invalid Move", "Please choose an opponent's piece to remove");
 		}
 	}
 	
@@ -513,7 +500,7 @@ public class BoardController extends JFrame {
 		 */
 		public void mousePressed(MouseEvent e) {
 //			System.out.println(!(ExistsAI && turn == AI_TURN));
-			if (!(ExistsAI && turn == AI_TURN)) {
+			if (!(ExistsAI && engine.getTurn() == AI_TURN)) {
 				Point point = new Point(e.getPoint().getX(), e.getPoint().getY()); // get the coordinates of the click
 				Circle[] circles = boardView.getCircles(); // create an array that holds all circles from the board
 				// iterate through the circle array
@@ -521,13 +508,13 @@ public class BoardController extends JFrame {
 				// place a coloured circle based on the current state
 				for(int i = 0; i < circles.length; i++){   
 					if(circles[i].isMouseOver(point)){
-						if(state == 0){
+						if(engine.status() == GameEngine.PLACING){
 							placePieceState(i);
-						} else if(state == 1){
+						} else if(engine.status() == GameEngine.PLAYING){
 							movePiece(i);
 						}
 					}
-					update(boardView.getRepeats() > maxNumberOfRepeats);	
+					update();	
 				}
 			}
 		}
@@ -538,29 +525,12 @@ public class BoardController extends JFrame {
 	/**
 	 * This method processes the save game event.
 	 * 
-	 * It saves the state and turn into a text file called ./savedGame.txt. It then records the state of the board into the 
-	 * text file
+	 * It saves the state, the turn, the AI colour and the board into the binary file ./savedGame.dat (see SavedGame).
 	 * @param e	The MouseEvent
 	 */
 	private void saveGameMouseClicked(MouseEvent e){
 		try {
-			FileWriter fw = new FileWriter("./savedGame.txt", false);
-			BufferedWriter bw = new BufferedWriter(fw);
-			bw.write(String.valueOf(this.state));
-			bw.newLine();
-			bw.write(String.valueOf(this.turn));
-			bw.newLine();
-			bw.write(String.valueOf(this.removePiece));
-			bw.newLine();
-			bw.write(String.valueOf(this.ExistsAI));
-			bw.newLine();
-			bw.write(String.valueOf(this.ExistsAI ? this.AI_COLOUR : -1));
-			int[] board = this.boardView.getBoardStates();
-			for(int i = 0; i < board.length; i++){
-				bw.newLine();
-				bw.write(String.valueOf(board[i]));
-			}
-			bw.close();
+			SavedGame.of(engine, this.ExistsAI ? this.AI_COLOUR : 0).save(SavedGame.DEFAULT_FILE);
 			new ErrorDialog(jFrame, "Saved.", "Your game has been saved.");
 		} catch (IOException e1) {
 			new ErrorDialog(jFrame, "Save Error.", "An error occured and your game was not saved.");
@@ -568,55 +538,67 @@ public class BoardController extends JFrame {
 	}
 	
 	/** This method process the AI move event.
-	 * It will call different APIs from AI for different game state, 
-	 * and use the returned values (positions) to place a piece, 
-	 * move a piece, or remove a piece.
+	 * The AI searches in the background for up to AI_TIME_BUDGET milliseconds,
+	 * so the window stays responsive while it thinks. It will call different APIs
+	 * from AI for different game state, and use the returned values (positions)
+	 * to place a piece, move a piece, or remove a piece.
 	 * @param e The MouseEvent
 	 */
 	private void makeAIMoveMouseClicked(MouseEvent e) {
-		if (ExistsAI && turn == AI_TURN) {
-			switch(state){
-			case 0:
-				// if need to remove piece during placing stage
-				if (removePiece) {
-					int move = AI.nextRemove();
-//					System.out.println("removing: "+ move);
-					if (move > -1)
-						this.removePiece(move);
-						update(true);
-				} // if at the end of placing stage, red needs to move first
-				else if (state == 1) {
-					int[] move = AI.nextMove();
-					if (move[0] > -1 && move[1] > -1) {
-						movePiece(move[0]);
-						movePiece(move[1]);
+		if (ExistsAI && engine.getTurn() == AI_TURN && !engine.isOver() && !AIThinking) {
+			AIThinking = true;
+			this.updateAIButton();
+			final int thinkingState = engine.status();
+			final boolean remove = engine.mustRemove();
+			new SwingWorker<int[], Void>() {
+				@Override
+				protected int[] doInBackground() {
+					if (remove) {
+						return new int[] {-1, -1, AI.nextRemove()};
 					}
-				} // otherwise just place a piece
-				else {
-					int move = AI.nextPlace();
-					if (move > -1)
-						this.placePieceState(move);
+					int[] move = thinkingState == 0 ? new int[] {-1, AI.nextPlace()} : AI.nextMove();
+					// the piece to remove if the move forms a mill, found here so the window does not wait for it
+					int removed = move[1] > -1 ? AI.nextRemove(move[0], move[1]) : -1;
+					return new int[] {move[0], move[1], removed};
 				}
-				break;
-			case 1:
-				if (ExistsAI && turn == AI_TURN) {
-					int[] move = AI.nextMove();
-					if (move[0] > -1 && move[1] > -1) {
-						movePiece(move[0]);
-						movePiece(move[1]);
-						if (boardView.millExists(move[1])) {
-							removePiece(AI.nextRemove());
-						}
+				
+				@Override
+				protected void done() {
+					AIThinking = false;
+					try {
+						applyAIMove(get(), thinkingState, remove);
+					} catch (InterruptedException | ExecutionException e1) {
+						new ErrorDialog(jFrame, "AI Error.", "The AI could not find a move.");
 					}
-					// if AI achieves a mill, let it remove a piece
-					
+					update();
 				}
-				break;
-			default:
-//				System.out.println("Something went wrong...");
+			}.execute();
+		}
+	}
+	
+	/** This method plays the move found by the AI.
+	 * @param move			The positions returned by the AI: from, to, and the piece to remove, -1 for none
+	 * @param thinkingState	The game state the AI searched in
+	 * @param remove		Whether the AI was asked for a piece to remove
+	 */
+	private void applyAIMove(int[] move, int thinkingState, boolean remove) {
+		if (remove) {
+			if (move[2] > -1) {
+				engine.apply(Move.remove(move[2]));
 			}
-			update(boardView.getRepeats() > maxNumberOfRepeats);	
+			return;
+		} else if (thinkingState == 0) {
+			if (move[1] > -1) {
+				engine.apply(Move.place(move[1]));
+			}
+		} else if (move[0] > -1 && move[1] > -1) {
+			selectPiece(-1);
+			engine.apply(Move.slide(move[0], move[1]));
+		}
+		// if AI achieves a mill, let it remove a piece
+		if (engine.mustRemove() && engine.getTurn() == AI_TURN && move[2] > -1) {
+			engine.apply(Move.remove(move[2]));
 		}
 	}
 	
-}
\ No newline at end of file
+}
@@ -0,0 +1,397 @@
+package sixmensmorris;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes the shape of a board: which points are adjacent and which lines of three points form a mill.
+ *
+ * Points are numbered the same way as in Board. Point 8 * layer + k is the k'th point of a layer, going clockwise from
+ * the top middle point, so even points are the midpoints of the sides and odd points are the corners. Layer 0 is the
+ * outermost square.
+ *
+ * The tables are built once per number of layers and variant and are shared by every Board, the AI and the controllers.
+ * Neighbour lists and mill lines are flattened into primitive arrays, so every adjacency and mill lookup is a table read.
+ * The topology also holds the Zobrist keys used to hash positions. The keys are generated from a fixed seed, so a position has
+ * the same hash in every run.
+ *
+ * The variant is the number of pieces each player has:
+ * <ul>
+ * <li>6 Men's Morris: points on the same layer are connected, and the midpoints connect adjacent layers. Mills are only formed
+ * along the sides of a layer.</li>
+ * <li>9 Men's Morris: as above, but three consecutive midpoints along a line between layers also form a mill. Players may fly
+ * when they are down to three pieces.</li>
+ * <li>12 Men's Morris: as 9 Men's Morris, but the corners are also connected diagonally between layers, and the diagonals
+ * form mills as well.</li>
+ * </ul>
+ *
+ * A piece moves between layers only along a line of the board: the lines BoardView draws between the midpoints, and the corner
+ * diagonals of 12 Men's Morris. The controller used to compare point numbers instead (i +- 1, i +- 8), which also let a corner
+ * of 6 or 9 Men's Morris slide to the same corner of the next layer, and the last corner of a layer (point 8k + 7) slide to the
+ * top midpoint of the next layer (point 8k + 8). Neither move follows a line of the board, so neither is legal any more, and
+ * the reference counts of Perft are for the rules here.
+ *
+ * @author Kelvin Lin, Jeremy Klotz
+ * @version 1
+ */
+public final class BoardTopology {
+
+	public static final int SIX_MENS_MORRIS = 6;
+	public static final int NINE_MENS_MORRIS = 9;
+	public static final int TWELVE_MENS_MORRIS = 12;
+
+	public static final int NUM_POINTS_PER_LAYER = 8;
+
+	private static final long ZOBRIST_SEED = 0x4E4D4D6F72726973L;	//"NMMorris"
+
+	private static final ConcurrentHashMap<Integer, BoardTopology> CACHE = new ConcurrentHashMap<Integer, BoardTopology>();
+
+	private final int N;					//Number of layers
+	private final int variant;				//Number of pieces per player
+	private final int points;
+	private final int words;				//Number of longs needed per bitboard
+
+	private final int[] neighbourStart;		//Neighbours of point i are neighbours[neighbourStart[i] .. neighbourStart[i+1]-1]
+	private final int[] neighbours;
+	private final long[] neighbourMasks;	//Bitboard of the neighbours of point i, words longs per point
+
+	private final int lines;
+	private final int[] linePoints;			//Points of line l are linePoints[3l .. 3l+2]
+	private final int[] lineWord;			//A line touches at most two words: (lineWord, lineMask) and (lineWord2, lineMask2)
+	private final long[] lineMask;
+	private final int[] lineWord2;
+	private final long[] lineMask2;
+	private final int[] pointLineStart;		//Lines through point i are pointLines[pointLineStart[i] .. pointLineStart[i+1]-1]
+	private final int[] pointLines;
+
+	private final long[] zobristKeys;		//Key of point i in state s is zobristKeys[3i + s]; the keys of empty points are 0
+	private final long sideKey;				//Key added when red is to move
+
+	/**
+	 * Returns the topology for a number of layers and a variant, building it the first time it is needed.
+	 * @param N			The number of layers
+	 * @param variant	The number of pieces per player (6, 9 or 12)
+	 * @return			The shared topology
+	 */
+	public static BoardTopology get(int N, int variant){
+		Integer key = N * 16 + variant;
+		BoardTopology topology = CACHE.get(key);
+		if(topology == null){
+			topology = new BoardTopology(N, variant);
+			BoardTopology previous = CACHE.putIfAbsent(key, topology);
+			if(previous != null){
+				topology = previous;
+			}
+		}
+		return topology;
+	}
+
+	/**
+	 * Returns the 6 Men's Morris topology for a number of layers.
+	 * This is the rule set used by the game screens.
+	 * @param N	The number of layers
+	 * @return	The shared topology
+	 */
+	public static BoardTopology get(int N){
+		return get(N, SIX_MENS_MORRIS);
+	}
+
+	/**
+	 * Builds the tables for a number of layers and a variant.
+	 * @param N			The number of layers
+	 * @param variant	The number of pieces per player (6, 9 or 12)
+	 */
+	private BoardTopology(int N, int variant){
+		if(N < 1){
+			throw new IllegalArgumentException("A board needs at least one layer: " + N);
+		}
+		if(variant != SIX_MENS_MORRIS && variant != NINE_MENS_MORRIS && variant != TWELVE_MENS_MORRIS){
+			throw new IllegalArgumentException("Unknown variant: " + variant);
+		}
+		this.N = N;
+		this.variant = variant;
+		this.points = N * NUM_POINTS_PER_LAYER;
+		this.words = (points + 63) >>> 6;
+
+		boolean crossMills = variant != SIX_MENS_MORRIS;
+		boolean diagonals = variant == TWELVE_MENS_MORRIS;
+
+		// neighbours: the two points beside it on the same layer, and the same point on the layers above and below
+		// (midpoints only, unless the diagonals are connected too)
+		int[] degree = new int[points];
+		int[][] adjacent = new int[points][4];
+		for(int i = 0; i < points; i++){
+			int layer = i / NUM_POINTS_PER_LAYER, k = i % NUM_POINTS_PER_LAYER;
+			int first = layer * NUM_POINTS_PER_LAYER;
+			adjacent[i][degree[i]++] = first + (k + 1) % NUM_POINTS_PER_LAYER;
+			adjacent[i][degree[i]++] = first + (k + 7) % NUM_POINTS_PER_LAYER;
+			if(k % 2 == 0 || diagonals){
+				if(layer > 0){
+					adjacent[i][degree[i]++] = i - NUM_POINTS_PER_LAYER;
+				}
+				if(layer < N - 1){
+					adjacent[i][degree[i]++] = i + NUM_POINTS_PER_LAYER;
+				}
+			}
+		}
+		this.neighbourStart = new int[points + 1];
+		for(int i = 0; i < points; i++){
+			neighbourStart[i + 1] = neighbourStart[i] + degree[i];
+		}
+		this.neighbours = new int[neighbourStart[points]];
+		this.neighbourMasks = new long[points * words];
+		for(int i = 0; i < points; i++){
+			Arrays.sort(adjacent[i], 0, degree[i]);
+			for(int j = 0; j < degree[i]; j++){
+				int n = adjacent[i][j];
+				neighbours[neighbourStart[i] + j] = n;
+				neighbourMasks[i * words + (n >>> 6)] |= 1L << n;
+			}
+		}
+
+		// mill lines: the 4 sides of every layer, then three consecutive points along the lines between layers
+		int spokes = crossMills ? (diagonals ? 8 : 4) : 0;
+		int crossLines = N >= 3 ? spokes * (N - 2) : 0;
+		this.lines = N * 4 + crossLines;
+		this.linePoints = new int[lines * 3];
+		int line = 0;
+		for(int layer = 0; layer < N; layer++){
+			int first = layer * NUM_POINTS_PER_LAYER;
+			for(int side = 0; side < 4; side++){
+				linePoints[line * 3] = first + (side * 2 + 7) % NUM_POINTS_PER_LAYER;
+				linePoints[line * 3 + 1] = first + side * 2;
+				linePoints[line * 3 + 2] = first + side * 2 + 1;
+				line++;
+			}
+		}
+		for(int k = 0; k < NUM_POINTS_PER_LAYER && crossLines > 0; k += (diagonals ? 1 : 2)){
+			for(int layer = 0; layer + 2 < N; layer++){
+				int i = layer * NUM_POINTS_PER_LAYER + k;
+				linePoints[line * 3] = i;
+				linePoints[line * 3 + 1] = i + NUM_POINTS_PER_LAYER;
+				linePoints[line * 3 + 2] = i + 2 * NUM_POINTS_PER_LAYER;
+				line++;
+			}
+		}
+
+		this.lineWord = new int[lines];
+		this.lineMask = new long[lines];
+		this.lineWord2 = new int[lines];
+		this.lineMask2 = new long[lines];
+		int[] lineCount = new int[points];
+		for(int l = 0; l < lines; l++){
+			lineWord[l] = linePoints[l * 3] >>> 6;
+			lineWord2[l] = lineWord[l];
+			for(int j = 0; j < 3; j++){
+				int p = linePoints[l * 3 + j];
+				if((p >>> 6) == lineWord[l]){
+					lineMask[l] |= 1L << p;
+				} else{
+					lineWord2[l] = p >>> 6;
+					lineMask2[l] |= 1L << p;
+				}
+				lineCount[p]++;
+			}
+		}
+		this.pointLineStart = new int[points + 1];
+		for(int i = 0; i < points; i++){
+			pointLineStart[i + 1] = pointLineStart[i] + lineCount[i];
+		}
+		this.pointLines = new int[pointLineStart[points]];
+		int[] filled = new int[points];
+		for(int l = 0; l < lines; l++){
+			for(int j = 0; j < 3; j++){
+				int p = linePoints[l * 3 + j];
+				pointLines[pointLineStart[p] + filled[p]++] = l;
+			}
+		}
+
+		this.zobristKeys = new long[points * 3];
+		for(int i = 0; i < points; i++){
+			zobristKeys[i * 3 + 1] = zobrist(i * 3 + 1);
+			zobristKeys[i * 3 + 2] = zobrist(i * 3 + 2);
+		}
+		this.sideKey = zobrist(-1);
+	}
+
+	/**
+	 * Generates the n'th Zobrist key with the SplitMix64 generator, so keys do not depend on the order they are asked for.
+	 * @param n	The index of the key
+	 * @return	A random looking 64 bit key
+	 */
+	static long zobrist(long n){
+		long z = ZOBRIST_SEED + (n + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns the number of layers.
+	 * @return	The number of layers
+	 */
+	public int getN(){
+		return this.N;
+	}
+
+	/**
+	 * Returns the variant, which is the number of pieces each player starts with.
+	 * @return	6, 9 or 12
+	 */
+	public int getVariant(){
+		return this.variant;
+	}
+
+	/**
+	 * Returns whether a player with three pieces left may move a piece to any empty point.
+	 * @return	Whether flying is allowed
+	 */
+	public boolean canFly(){
+		return this.variant != SIX_MENS_MORRIS;
+	}
+
+	/**
+	 * Returns the number of points on the board.
+	 * @return	The number of points
+	 */
+	public int getPoints(){
+		return this.points;
+	}
+
+	/**
+	 * Returns the number of longs needed for a bitboard of this board.
+	 * @return	The number of words per bitboard
+	 */
+	public int getWords(){
+		return this.words;
+	}
+
+	/**
+	 * Returns the index in getNeighbours() of the first neighbour of a point.
+	 * The neighbours of point i are stored from getNeighbourStart(i) up to, but not including, getNeighbourStart(i + 1).
+	 * @param i	The point
+	 * @return	The index of its first neighbour
+	 */
+	public int getNeighbourStart(int i){
+		return this.neighbourStart[i];
+	}
+
+	/**
+	 * Returns the flattened neighbour lists of every point. The array must not be modified.
+	 * @return	The neighbour lists
+	 * @see getNeighbourStart
+	 */
+	public int[] getNeighbours(){
+		return this.neighbours;
+	}
+
+	/**
+	 * Returns one word of the bitboard of the neighbours of a point.
+	 * @param i		The point
+	 * @param word	The index of the word
+	 * @return		The neighbours of i that lie in that word
+	 */
+	public long getNeighbourMask(int i, int word){
+		return this.neighbourMasks[i * words + word];
+	}
+
+	/**
+	 * Returns whether two points are connected by a line.
+	 * @param i	The first point
+	 * @param j	The second point
+	 * @return	Whether a piece can slide from i to j
+	 */
+	public boolean isAdjacent(int i, int j){
+		return (neighbourMasks[i * words + (j >>> 6)] & (1L << j)) != 0;
+	}
+
+	/**
+	 * Returns the number of mill lines.
+	 * @return	The number of mill lines
+	 */
+	public int getLines(){
+		return this.lines;
+	}
+
+	/**
+	 * Returns one of the three points of a mill line.
+	 * @param line	The mill line
+	 * @param j		0, 1 or 2
+	 * @return		The point
+	 */
+	public int getLinePoint(int line, int j){
+		return this.linePoints[line * 3 + j];
+	}
+
+	/**
+	 * Returns the index in getPointLines() of the first mill line through a point.
+	 * The lines through point i are stored from getPointLineStart(i) up to, but not including, getPointLineStart(i + 1).
+	 * @param i	The point
+	 * @return	The index of its first line
+	 */
+	public int getPointLineStart(int i){
+		return this.pointLineStart[i];
+	}
+
+	/**
+	 * Returns the flattened lists of mill lines through every point. The array must not be modified.
+	 * @return	The mill lines of every point
+	 * @see getPointLineStart
+	 */
+	public int[] getPointLines(){
+		return this.pointLines;
+	}
+
+	/**
+	 * Returns the Zobrist key of a point in a given state.
+	 * @param i		The point
+	 * @param state	The state of the point (0 = empty, 1 = blue, 2 = red)
+	 * @return		The key, which is 0 for an empty point
+	 */
+	public long getZobristKey(int i, int state){
+		return this.zobristKeys[i * 3 + state];
+	}
+
+	/**
+	 * Returns the Zobrist key that is added to a position when red is to move.
+	 * @return	The side to move key
+	 */
+	public long getSideKey(){
+		return this.sideKey;
+	}
+
+	/**
+	 * Returns whether every point of a mill line is set in a bitboard.
+	 * @param line	The mill line
+	 * @param bits	The bitboard
+	 * @return		Whether the line is complete
+	 */
+	public boolean lineComplete(int line, long[] bits){
+		long mask = lineMask[line], mask2 = lineMask2[line];
+		return (bits[lineWord[line]] & mask) == mask && (bits[lineWord2[line]] & mask2) == mask2;
+	}
+
+	/**
+	 * Returns whether every point of a mill line is empty.
+	 * @param line	The mill line
+	 * @param blue	The bitboard of the blue pieces
+	 * @param red	The bitboard of the red pieces
+	 * @return		Whether no piece is on the line
+	 */
+	public boolean lineEmpty(int line, long[] blue, long[] red){
+		long mask = lineMask[line], mask2 = lineMask2[line];
+		int word = lineWord[line], word2 = lineWord2[line];
+		return ((blue[word] | red[word]) & mask) == 0 && ((blue[word2] | red[word2]) & mask2) == 0;
+	}
+
+	/**
+	 * Returns the bits of a mill line in one word of a bitboard.
+	 * @param line	The mill line
+	 * @param word	The index of the word
+	 * @return		The points of the line that lie in that word
+	 */
+	public long getLineMask(int line, int word){
+		return (lineWord[line] == word ? lineMask[line] : 0) | (lineWord2[line] == word ? lineMask2[line] : 0);
+	}
+
+}
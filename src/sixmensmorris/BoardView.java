@@ -14,6 +14,7 @@ public class BoardView extends Screen{
 	
 	private int N; // Number of squares
 	private int[] states; // array of integers that holds each state
+	private int selectedPiece = -1; // piece picked up by the player, drawn as an empty point
 	private final Color[] COLORS = { Color.BLACK, Color.BLUE, Color.RED }; // if a third colour was introduced, add it here
 
 	private final double RECTANGLE_WIDTH_SCALING = 0.19; 													//Rectangle width scaling
@@ -84,6 +85,22 @@ public class BoardView extends Screen{
 		return this.board.getPieceState(number);
 	}
 	
+	/**
+	 * Returns the board model drawn by this view.
+	 * @return	The board model
+	 */
+	public Board getBoard(){
+		return this.board;
+	}
+
+	/**
+	 * Returns the topology of the board, which gives the adjacency and mill lines of every point.
+	 * @return	The topology of the board
+	 */
+	public BoardTopology getTopology(){
+		return this.board.getTopology();
+	}
+	
 	/**
 	 * Return the array of all circles in the board
 	 * @return the array of all circles in the board
@@ -92,6 +109,14 @@ public class BoardView extends Screen{
 		return this.circles;
 	}
 	
+	/**
+	 * Sets the piece the player has picked up to move. It is drawn as an empty point until it is put down.
+	 * @param number	The point of the piece, or -1 if no piece is picked up
+	 */
+	public void setSelectedPiece(int number){
+		this.selectedPiece = number;
+	}
+	
 	/**
 	 * Set the states of the game.
 	 * @param states is the array of states (black, red, blue)
@@ -130,7 +155,7 @@ public class BoardView extends Screen{
 	 */
 	private void drawCircle(Graphics g, Circle circle, int state) {
 		Graphics2D g2d = (Graphics2D) g;
-		switch (this.states[state]) {
+		switch (state == this.selectedPiece ? 0 : this.states[state]) {
 		case 0:
 			g2d.setColor(COLORS[0]);
 			break;
@@ -271,8 +296,7 @@ public class BoardView extends Screen{
 	 * @return		Whether a mill exists at index i
 	 */
 	public boolean millExists(int i){
-		int[] mill = board.millExists(i);
-		return mill[0] != -1;
+		return board.isInMill(i);
 	}
 	
 	/**
@@ -300,6 +324,15 @@ public class BoardView extends Screen{
 		return board.getRepeats();
 	}
 	
+	/**
+	 * Records the position on the board model at the end of a turn
+	 * @param colourToMove	The colour that moves next
+	 * @return				The number of times this position occurred before
+	 */
+	public int recordPosition(int colourToMove){
+		return board.recordPosition(colourToMove);
+	}
+	
 	@Override
 	/**
 	 * Draw sections of the board only when they need to be.
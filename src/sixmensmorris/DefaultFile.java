@@ -0,0 +1,63 @@
+package sixmensmorris;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A data file in the working folder that is loaded the first time a game asks for it, such as the default tablebase or opening
+ * book. The file is read at most once: the result is kept even when the file is missing, cannot be read or was made for another
+ * board, so a new game never opens and maps the file again only to throw it away.
+ *
+ * @author Zichen Jiang
+ * @version 1
+ * @param <T>	What the file holds
+ */
+abstract class DefaultFile<T> {
+	private final Path file;
+	private boolean read;
+	private T value;			//What was loaded, or null if the file could not be loaded
+
+	/**
+	 * Constructs a default file that has not been read yet.
+	 * @param file	The file
+	 */
+	DefaultFile(Path file){
+		this.file = file;
+	}
+
+	/**
+	 * Reads the file.
+	 * @param file	The file
+	 * @return		What the file holds
+	 * @throws IOException if the file cannot be read
+	 */
+	abstract T load(Path file) throws IOException;
+
+	/**
+	 * Returns the board a loaded file is for.
+	 * @param value	What the file holds
+	 * @return		The shape and rules of the board
+	 */
+	abstract BoardTopology getTopology(T value);
+
+	/**
+	 * Returns what the file holds, loading it the first time.
+	 * @param topology	The shape and rules of the board it is wanted for
+	 * @return			What the file holds, or null if there is no file or it is for another topology
+	 */
+	synchronized T get(BoardTopology topology){
+		if(!read){
+			read = true;
+			if(Files.exists(file)){
+				try{
+					value = load(file);
+				} catch(IOException e){
+					System.err.println("Could not load " + file + ": " + e.getMessage());
+				}
+			}
+		}
+		return value != null && getTopology(value) == topology ? value : null;
+	}
+
+}
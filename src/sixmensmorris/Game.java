@@ -1,6 +1,13 @@
 package sixmensmorris;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
 /**
  * This class contains the main method, and all variables universal to the game.
+ *
+ * Usage: java sixmensmorris.Game [-archive file]
+ * With -archive, every game finished in the window is added to the GameArchive in the file.
  * @author Kelvin Lin
  *
  */
@@ -9,8 +16,17 @@ public class Game {
 	/**
 	 * The main method. This runs the program.
 	 * @param args	The command line arguments
+	 * @throws IOException if the archive cannot be opened
 	 */
-	public static void main(String[] args){
+	public static void main(String[] args) throws IOException{
+		for(int i = 0; i < args.length; i++){
+			switch(args[i]){
+			case "-archive":	BoardController.setArchive(new GameArchive(Paths.get(args[++i]))); break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
 		MenuController menuController = new MenuController();
 		menuController.setVisible(true);
 	}
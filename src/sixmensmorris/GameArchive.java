@@ -0,0 +1,321 @@
+package sixmensmorris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A file of finished games, each kept as the MoveJournal of a game played from the empty board, and read and written through
+ * memory mapping.
+ *
+ * Games are numbered from 0 in the order they are added, and the offset of every game is kept in memory, so finding a game is
+ * one array lookup. The moves of a game are returned as an IntBuffer on the mapped file, without copying them, and replay turns
+ * them back into a GameEngine at any point of the game.
+ *
+ * The file is made of segments of SEGMENT_SIZE bytes, each mapped on its own so that the archive can be larger than one mapping.
+ * Only as much of the last segment is mapped as the games need, doubling the mapping as it fills, so the file grows with the
+ * games instead of a whole segment at a time. It starts with a header (big-endian):
+ * <pre>
+ * int		MAGIC
+ * int		VERSION
+ * long		number of games
+ * long		end of the last game
+ * long		unused
+ * </pre>
+ * followed by the games:
+ * <pre>
+ * int		number of moves, or -1 to skip to the next segment
+ * int		bits 0-7 layers, bits 8-15 variant, bit 16 first turn (0 = blue), bits 17-19 status at the end
+ * int[]	the packed moves
+ * </pre>
+ * A game never crosses the end of a segment. The header is updated after the moves are written, so a game cut off by the process
+ * being killed is not counted. The mapped pages reach the disk in no set order, so after a power failure only the games added
+ * before the last flush or close are certain to be whole.
+ *
+ * Usage: java sixmensmorris.GameArchive file [id [plies]]
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public class GameArchive implements Closeable {
+
+	public static final int MAGIC = 0x4E4D4D41;			//"NMMA"
+	public static final int VERSION = 1;
+	public static final int SEGMENT_SIZE = 1 << 26;		//64 MB
+	public static final int MAX_MOVES = SEGMENT_SIZE / 4 - 16;
+
+	private static final int HEADER_SIZE = 32;
+	private static final int GAMES = 8, END = 16;		//Offsets of the fields of the header
+	private static final int SKIP = -1;
+
+	private final FileChannel channel;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private long[] offsets = new long[1024];			//offsets[id]: where the game starts in the file
+	private int games;
+	private long end;
+
+	/**
+	 * Opens an archive, creating it if the file does not exist.
+	 * @param file	The file
+	 * @throws IOException if the file cannot be opened or is not an archive
+	 */
+	public GameArchive(Path file) throws IOException{
+		this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		try{
+			MappedByteBuffer header = segment(0, HEADER_SIZE);
+			if(header.getInt(0) == 0){
+				header.putInt(0, MAGIC);
+				header.putInt(4, VERSION);
+				header.putLong(GAMES, 0);
+				header.putLong(END, HEADER_SIZE);
+			} else if(header.getInt(0) != MAGIC){
+				throw new IOException(file + " is not a game archive");
+			} else if(header.getInt(4) != VERSION){
+				throw new IOException("Unknown game archive version " + header.getInt(4));
+			}
+			index(header.getLong(GAMES), header.getLong(END));
+		} catch(IOException e){
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Finds where every game starts.
+	 * @param count	The number of games in the header
+	 * @param end	The end of the last game in the header
+	 * @throws IOException if the games do not match the header
+	 */
+	private void index(long count, long end) throws IOException{
+		if(end > channel.size()){
+			throw new IOException("Corrupt game archive: it ends before its last game");
+		}
+		long position = HEADER_SIZE;
+		while(games < count){
+			ByteBuffer segment = segment(position, 4);
+			int moves = segment.getInt((int) (position % SEGMENT_SIZE));
+			if(moves == SKIP){
+				position = (position / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+				continue;
+			} else if(moves < 0 || position + 8 + 4L * moves > end){
+				throw new IOException("Corrupt game archive at game " + games);
+			}
+			addOffset(position);
+			position += 8 + 4L * moves;
+		}
+		this.end = end;
+	}
+
+	/**
+	 * Adds the offset of a new game to the index.
+	 * @param position	Where the game starts
+	 */
+	private void addOffset(long position){
+		if(games == offsets.length){
+			offsets = Arrays.copyOf(offsets, 2 * games);
+		}
+		offsets[games++] = position;
+	}
+
+	/**
+	 * Returns the segment that holds a position in the file, mapped at least far enough for some bytes from the position. A
+	 * segment is mapped as far as the file goes, or further when more is needed, at least doubling what was mapped before.
+	 * Mapping past the end of the file makes the file larger. Buffers of an earlier, shorter mapping stay valid.
+	 * @param position	The position in the file
+	 * @param length	The number of bytes needed from the position, which must not cross the end of the segment
+	 * @return			The mapped segment
+	 * @throws IOException if the segment cannot be mapped
+	 */
+	private MappedByteBuffer segment(long position, int length) throws IOException{
+		int number = (int) (position / SEGMENT_SIZE);
+		long start = (long) number * SEGMENT_SIZE;
+		while(segments.size() <= number){
+			segments.add(null);
+		}
+		MappedByteBuffer segment = segments.get(number);
+		long needed = position + length - start;
+		if(segment == null || segment.capacity() < needed){
+			long mapped = segment == null ? 0 : segment.capacity();
+			long size = Math.min(SEGMENT_SIZE, Math.max(Math.max(needed, 2 * mapped), channel.size() - start));
+			segment = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+			segments.set(number, segment);
+		}
+		return segment;
+	}
+
+	/**
+	 * Returns the number of games.
+	 * @return	The number of games in the archive
+	 */
+	public synchronized int size(){
+		return games;
+	}
+
+	/**
+	 * Adds a game that was played from the empty board, with the status it ended with.
+	 * @param game	The game
+	 * @return		The id of the game in the archive
+	 * @throws IOException if the archive cannot be written
+	 */
+	public long append(GameEngine game) throws IOException{
+		return append(game.getBoard().getTopology(), game.getFirstTurn(), game.status(), game.getJournal());
+	}
+
+	/**
+	 * Adds a game.
+	 * @param topology	The shape and rules of the board
+	 * @param firstTurn	Which player moved first from the empty board (0 = blue, 1 = red)
+	 * @param status	The status of the game at the end, from 0 to 7, such as a GameEngine or SelfPlay status
+	 * @param journal	The moves
+	 * @return			The id of the game in the archive
+	 * @throws IOException if the archive cannot be written
+	 */
+	public synchronized long append(BoardTopology topology, int firstTurn, int status, MoveJournal journal) throws IOException{
+		int moves = journal.size();
+		if(moves > MAX_MOVES){
+			throw new IllegalArgumentException("Too many moves to archive: " + moves);
+		}
+		long size = 8 + 4L * moves;
+		if(end / SEGMENT_SIZE != (end + size - 1) / SEGMENT_SIZE){
+			segment(end, 4).putInt((int) (end % SEGMENT_SIZE), SKIP);
+			end = (end / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+		}
+		ByteBuffer segment = segment(end, (int) size).duplicate();
+		segment.position((int) (end % SEGMENT_SIZE));
+		segment.putInt(moves);
+		segment.putInt(topology.getN() | topology.getVariant() << 8 | firstTurn << 16 | status << 17);
+		journal.writeTo(segment.asIntBuffer());
+		addOffset(end);
+		end += size;
+		MappedByteBuffer header = segments.get(0);
+		header.putLong(END, end);
+		header.putLong(GAMES, games);
+		return games - 1;
+	}
+
+	/**
+	 * Returns the moves of a game, read straight from the mapped file.
+	 * @param id	The id of the game
+	 * @return		A read-only buffer with the packed moves
+	 */
+	public IntBuffer moves(long id){
+		ByteBuffer record = record(id);
+		record.limit(record.position() + 8 + 4 * record.getInt(record.position()));
+		record.position(record.position() + 8);
+		return record.slice().asIntBuffer();
+	}
+
+	/**
+	 * Returns the status a game ended with.
+	 * @param id	The id of the game
+	 * @return		The status given when the game was added
+	 */
+	public int status(long id){
+		return info(id) >>> 17 & 7;
+	}
+
+	/**
+	 * Replays a game from the empty board.
+	 * @param id	The id of the game
+	 * @param plies	The number of moves to replay, or more to replay the whole game
+	 * @return		The game after the moves
+	 * @throws IOException if a move of the game is not legal
+	 */
+	public GameEngine replay(long id, int plies) throws IOException{
+		int info = info(id);
+		BoardTopology topology = BoardTopology.get(info & 0xFF, info >>> 8 & 0xFF);
+		GameEngine game = new GameEngine(new Board(topology), info >>> 16 & 1, GameEngine.PLACING, false,
+				topology.getVariant(), topology.getVariant());
+		IntBuffer moves = moves(id);
+		for(int i = 0; i < plies && moves.hasRemaining(); i++){
+			int move = moves.get();
+			if(!game.apply(move)){
+				throw new IOException("Illegal move " + Move.toString(move) + " in game " + id);
+			}
+		}
+		return game;
+	}
+
+	/**
+	 * Returns the second int of the record of a game.
+	 * @param id	The id of the game
+	 * @return		The layers, variant, first turn and status
+	 */
+	private int info(long id){
+		ByteBuffer record = record(id);
+		return record.getInt(record.position() + 4);
+	}
+
+	/**
+	 * Returns a read-only buffer positioned at the record of a game.
+	 * @param id	The id of the game
+	 * @return		The buffer, on the whole segment
+	 */
+	private synchronized ByteBuffer record(long id){
+		if(id < 0 || id >= games){
+			throw new IndexOutOfBoundsException("No game " + id + " in an archive of " + games);
+		}
+		long offset = offsets[(int) id];
+		ByteBuffer record = segments.get((int) (offset / SEGMENT_SIZE)).asReadOnlyBuffer();
+		record.position((int) (offset % SEGMENT_SIZE));
+		return record;
+	}
+
+	/**
+	 * Writes the mapped segments to the disk.
+	 */
+	public synchronized void flush(){
+		for(MappedByteBuffer segment : segments){
+			if(segment != null){
+				segment.force();
+			}
+		}
+	}
+
+	/**
+	 * Writes the archive to the disk and closes the file. The segments stay mapped until they are garbage collected.
+	 */
+	@Override
+	public synchronized void close() throws IOException{
+		flush();
+		channel.close();
+	}
+
+	/**
+	 * Prints the number of games in an archive, or the moves of one game and the position after them.
+	 * @param args	The file, then optionally the id of a game and the number of moves to replay
+	 * @throws IOException if the archive cannot be read
+	 */
+	public static void main(String[] args) throws IOException{
+		if(args.length == 0){
+			System.err.println("Usage: java sixmensmorris.GameArchive file [id [plies]]");
+			return;
+		}
+		try(GameArchive archive = new GameArchive(Paths.get(args[0]))){
+			if(args.length == 1){
+				System.out.println(archive.size() + " games");
+				return;
+			}
+			long id = Long.parseLong(args[1]);
+			int plies = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+			GameEngine game = archive.replay(id, plies);
+			System.out.println(game.getJournal());
+			StringBuilder points = new StringBuilder();
+			for(int point : game.getBoard().getBoardState()){
+				points.append(point);
+			}
+			System.out.println("status " + game.status() + " (archived " + archive.status(id) + "), colour to move "
+					+ game.getColour() + ", points " + points);
+		}
+	}
+
+}
@@ -0,0 +1,273 @@
+package sixmensmorris;
+
+/**
+ * Plays a game by the rules, without any window: the moves of both players are applied to a Board, and the phase of the game
+ * (placing, playing, won or drawn) follows from them.
+ *
+ * Moves are packed ints (see Move). A whole turn can be applied at once, as generated by MoveGenerator, or in two steps as the
+ * user clicks it: first the move that forms a mill, then a removal-only move. Between the two steps mustRemove returns true and
+ * only removals are legal.
+ *
+ * The game state uses the same numbers as BoardController: 0 = placing pieces, 1 = game in progress, 2 = blue wins, 3 = red
+ * wins, 4 = drawn. At the end of every turn:
+ * <ul>
+ * <li>once neither player has pieces left to place, the placing phase ends;</li>
+ * <li>while playing, a player with fewer than three pieces, or with no legal move, loses;</li>
+ * <li>a position that occurs for the third time with the same player to move is a draw.</li>
+ * </ul>
+ *
+ * Every move applied is added to a MoveJournal, so a game can be replayed from the position it started from.
+ *
+ * @author Kelvin Lin, Jeremy Klotz
+ * @version 1
+ * @see MoveGenerator
+ */
+public class GameEngine {
+
+	public static final int PLACING = 0;		//Pieces are being placed
+	public static final int PLAYING = 1;		//Pieces are being moved
+	public static final int BLUE_WINS = 2;
+	public static final int RED_WINS = 3;
+	public static final int DRAW = 4;
+
+	private final Board board;
+	private int turn;						//0 = blue, 1 = red
+	private int state;
+	private boolean removePiece;			//Whether the player to move has formed a mill and must remove a piece
+	private int maxNumberOfRepeats = 1;		//Maximum number of repetitions, the game is drawn when a position occurs a third time
+	private int plies;						//Number of turns completed
+	private final int[] moves;				//Buffer for the legal moves of the position
+	private final int firstTurn;			//Which player moved first from the starting position
+	private final MoveJournal journal = new MoveJournal();
+
+	/**
+	 * Starts a new game on an empty board.
+	 * @param N			The number of layers
+	 * @param pieces	The number of pieces each player places
+	 * @param turn		Which player moves first (0 = blue, 1 = red)
+	 */
+	public GameEngine(int N, int pieces, int turn){
+		this(new Board(N), turn, PLACING, false, pieces, pieces);
+	}
+
+	/**
+	 * Continues a game from a given position. The board is used directly, so a view of the same board shows every move.
+	 * @param board			The board, which must hold the position
+	 * @param turn			Which player moves next (0 = blue, 1 = red)
+	 * @param state			The game state
+	 * @param removePiece	Whether the player to move has formed a mill and must remove a piece
+	 * @param blueInHand	The number of pieces blue still has to place
+	 * @param redInHand		The number of pieces red still has to place
+	 */
+	public GameEngine(Board board, int turn, int state, boolean removePiece, int blueInHand, int redInHand){
+		this.board = board;
+		this.turn = turn;
+		this.firstTurn = turn;
+		this.state = state;
+		this.removePiece = removePiece;
+		this.moves = new int[MoveGenerator.maxMoves(board.getTopology())];
+		board.setInHand(blueInHand, redInHand);
+		if(!removePiece && !isOver()){
+			updateState(); //A loaded position may already be won
+		}
+	}
+
+	/**
+	 * Returns the board the game is played on.
+	 * @return	The board
+	 */
+	public Board getBoard(){
+		return this.board;
+	}
+
+	/**
+	 * Returns the game state.
+	 * @return	PLACING, PLAYING, BLUE_WINS, RED_WINS or DRAW
+	 */
+	public int status(){
+		return this.state;
+	}
+
+	/**
+	 * Returns whether the game has ended.
+	 * @return	Whether one player has won or the game is drawn
+	 */
+	public boolean isOver(){
+		return this.state > PLAYING;
+	}
+
+	/**
+	 * Returns which player is to move.
+	 * @return	0 for blue, 1 for red
+	 */
+	public int getTurn(){
+		return this.turn;
+	}
+
+	/**
+	 * Returns the colour of the player to move.
+	 * @return	1 for blue, 2 for red
+	 */
+	public int getColour(){
+		return this.turn + 1;
+	}
+
+	/**
+	 * Returns whether the player to move has formed a mill and must now remove one of the opponent's pieces.
+	 * @return	Whether only removal moves are legal
+	 */
+	public boolean mustRemove(){
+		return this.removePiece;
+	}
+
+	/**
+	 * Returns the number of pieces a colour still has to place.
+	 * @param colour	The colour (1 = blue, 2 = red)
+	 * @return			The number of unplayed pieces
+	 */
+	public int getInHand(int colour){
+		return board.getInHand(colour);
+	}
+
+	/**
+	 * Returns the number of turns played so far.
+	 * @return	The number of completed turns
+	 */
+	public int getPlies(){
+		return this.plies;
+	}
+
+	/**
+	 * Returns which player moved first from the position the game started from.
+	 * @return	0 for blue, 1 for red
+	 */
+	public int getFirstTurn(){
+		return this.firstTurn;
+	}
+
+	/**
+	 * Returns the moves applied so far, in order, including the removals played as separate moves.
+	 * @return	The journal of the game, which grows as moves are applied
+	 */
+	public MoveJournal getJournal(){
+		return this.journal;
+	}
+
+	/**
+	 * Returns how many times the position after the last turn occurred before.
+	 * @return	The number of repeats
+	 */
+	public int getRepeats(){
+		return board.getRepeats();
+	}
+
+	/**
+	 * Writes the legal moves of the player to move into a buffer. These are whole turns, or removals if mustRemove is true.
+	 * @param buffer	The buffer, with room for MoveGenerator.maxMoves moves after the offset
+	 * @param offset	Where to write the first move
+	 * @return			The number of moves written, 0 if the game is over
+	 */
+	public int legalMoves(int[] buffer, int offset){
+		if(isOver()){
+			return 0;
+		}
+		if(removePiece){
+			return MoveGenerator.generateRemovals(board, getColour(), buffer, offset);
+		}
+		return MoveGenerator.generate(board, getColour(), buffer, offset);
+	}
+
+	/**
+	 * Returns the legal moves of the player to move.
+	 * @return	A new array with the packed moves
+	 * @see #legalMoves(int[], int)
+	 */
+	public int[] legalMoves(){
+		int count = legalMoves(moves, 0);
+		int[] legal = new int[count];
+		System.arraycopy(moves, 0, legal, 0, count);
+		return legal;
+	}
+
+	/**
+	 * Returns whether a move can be applied.
+	 * @param move	The packed move
+	 * @return		Whether apply would accept it
+	 * @see #apply
+	 */
+	public boolean isLegal(int move){
+		if(isOver() || move == Move.NONE){
+			return false;
+		}
+		int colour = getColour(), to = Move.to(move);
+		if(removePiece){
+			return to == Move.NO_POINT && MoveGenerator.isLegal(board, colour, move);
+		}
+		if(to == Move.NO_POINT || to >= board.getBoardState().length){
+			return false;
+		}
+		if(Move.removed(move) == Move.NO_POINT && MoveGenerator.formsMill(board, Move.from(move), to, colour)){
+			int count = MoveGenerator.generateRemovals(board, colour, moves, 0);
+			if(count > 0){ //The removal comes next, so check the move with any piece that may be removed
+				return MoveGenerator.isLegal(board, colour, Move.withRemove(move, Move.removed(moves[0])));
+			}
+		}
+		return MoveGenerator.isLegal(board, colour, move);
+	}
+
+	/**
+	 * Plays a move for the player to move. If the move forms a mill and does not say which piece to remove, the turn continues
+	 * and the next move must be a removal.
+	 * @param move	The packed move
+	 * @return		Whether the move was legal and was played
+	 */
+	public boolean apply(int move){
+		if(!isLegal(move)){
+			return false;
+		}
+		int colour = getColour();
+		board.makeMove(move, colour);
+		journal.append(move);
+		if(removePiece){
+			removePiece = false;
+		} else if(Move.removed(move) == Move.NO_POINT && board.isInMill(Move.to(move)) && board.getPieceCount(3 - colour) > 0){
+			removePiece = true;
+			return true;
+		}
+		endTurn();
+		return true;
+	}
+
+	/**
+	 * Ends the current turn: passes the turn to the other player, records the position so that repeated positions can be
+	 * detected, and updates the game state.
+	 */
+	private void endTurn(){
+		turn = 1 - turn;
+		plies++;
+		board.recordPosition(getColour());
+		updateState();
+	}
+
+	/**
+	 * Updates the game state after a turn.
+	 */
+	private void updateState(){
+		if(state == PLACING && board.getInHand(1) == 0 && board.getInHand(2) == 0){
+			state = PLAYING;
+		}
+		if(state != PLAYING){
+			return;
+		}
+		if(board.getPieceCount(1) < 3){
+			state = RED_WINS;
+		} else if(board.getPieceCount(2) < 3){
+			state = BLUE_WINS;
+		} else if(board.getRepeats() > maxNumberOfRepeats){
+			state = DRAW;
+		} else if(MoveGenerator.generate(board, getColour(), moves, 0) == 0){
+			state = turn == 0 ? RED_WINS : BLUE_WINS; //The player to move is blocked
+		}
+	}
+
+}
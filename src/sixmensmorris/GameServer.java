@@ -0,0 +1,636 @@
+package sixmensmorris;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many games at once over TCP, for players that connect from anywhere instead of sitting at the BoardController window.
+ *
+ * Every connection is served by two threads of its own: one reads commands, the other writes the lines queued for the client.
+ * On a Java runtime with virtual threads (Java 21 and later) these are virtual threads, so thousands of idle connections cost
+ * little; on older runtimes a pool of ordinary threads is used instead. The computer player of every game searches on one
+ * shared pool with a thread per core, each thread keeping its own Search. Lines are only queued while a game is locked, so a
+ * client that stops reading never holds up its game or the computer players; like a spectator, it is disconnected once
+ * OUTBOX_SIZE lines are waiting for it.
+ *
+ * The protocol is one line of text per message. Commands from a client:
+ * <ul>
+ * <li><code>NEW [AI colour]</code> starts a game and takes blue; with AI, the computer plays the given colour (1 = blue,
+ * 2 = red) and the client the other one.</li>
+ * <li><code>JOIN id</code> takes red in a game started by NEW without AI.</li>
+ * <li><code>WATCH id</code> watches a game without playing, see SpectatorChannel.</li>
+ * <li><code>MOVE move</code> plays a move written as in Move.toString, for example <code>p5</code>, <code>3-4</code>,
+ * <code>3-4x7</code> or, after a mill, <code>x7</code>.</li>
+ * <li><code>MOVES</code> asks for the legal moves, <code>STATE</code> for the state of the game, and <code>QUIT</code>
+ * closes the connection.</li>
+ * </ul>
+ * Replies from the server:
+ * <ul>
+ * <li><code>GAME id colour</code> after NEW or JOIN.</li>
+ * <li><code>MOVED colour move</code> to both players after every move.</li>
+ * <li><code>STATE status colour remove blueInHand redInHand points</code> after every move and on request. The status is the
+ * GameEngine status, colour is the colour to move, remove is 1 if it must remove a piece, and points has one digit per point
+ * (0 = empty, 1 = blue, 2 = red).</li>
+ * <li><code>DELTA status colour remove blueInHand redInHand point:state ...</code> to spectators after every move, with only
+ * the points that changed.</li>
+ * <li><code>MOVES move ...</code> on request, and <code>ERR message</code> when a command fails.</li>
+ * </ul>
+ *
+ * Every finished game can be added to a GameArchive with -archive.
+ *
+ * Usage: java sixmensmorris.GameServer [-port P] [-N layers] [-variant 6|9|12] [-depth D] [-aiThreads T] [-archive file]
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public class GameServer implements Closeable {
+
+	public static final int DEFAULT_PORT = 7777;
+	public static final int OUTBOX_SIZE = 256;		//Lines a client may fall behind before it is disconnected
+
+	private static final String CLOSE = new String("CLOSE");	//Put in an outbox to stop its writer, compared by identity
+
+	private final BoardTopology topology;
+	private final ServerSocket serverSocket;
+	private final ExecutorService connections;
+	private final ExecutorService aiPool;
+	private final ThreadLocal<Search> searches;
+	private final Map<Integer, HostedGame> games = new ConcurrentHashMap<Integer, HostedGame>();
+	private final AtomicInteger nextGameId = new AtomicInteger(1);
+	private final Set<Connection> open = ConcurrentHashMap.newKeySet();
+	private volatile int spectatorQueueSize = SpectatorChannel.DEFAULT_QUEUE_SIZE;
+	private volatile GameArchive archive;
+	private volatile boolean closed;
+
+	/**
+	 * Starts a server listening on a port.
+	 * @param port		The port, or 0 for any free port
+	 * @param topology	The shape and rules of the boards
+	 * @param aiDepth	The depth the computer players search to
+	 * @param aiThreads	The number of threads the computer players share
+	 * @throws IOException if the port cannot be opened
+	 */
+	public GameServer(int port, final BoardTopology topology, final int aiDepth, int aiThreads) throws IOException{
+		this.topology = topology;
+		this.serverSocket = new ServerSocket(port, 4096);
+		this.connections = newThreadPerTaskExecutor("game-connection");
+		this.aiPool = Executors.newFixedThreadPool(Math.max(1, aiThreads), daemonThreads("game-ai"));
+		this.searches = new ThreadLocal<Search>(){
+			@Override
+			protected Search initialValue(){
+				Search search = new Search(topology, new TranspositionTable(4));
+				search.setDepth(aiDepth);
+				return search;
+			}
+		};
+		Thread acceptor = new Thread(new Runnable(){
+			public void run(){
+				acceptConnections();
+			}
+		}, "game-server-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Returns an executor that runs every task on a new thread: a virtual thread if the runtime has them, otherwise a pooled
+	 * daemon thread. Virtual threads are looked up by reflection so the game still builds and runs on Java 8.
+	 * @param name	The prefix of the names of the threads
+	 * @return		The executor
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String name){
+		try{
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtual.invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) perTask.invoke(null, factory);
+		} catch(ReflectiveOperationException e){
+			return Executors.newCachedThreadPool(daemonThreads(name));
+		}
+	}
+
+	/**
+	 * Returns a factory of named daemon threads.
+	 * @param name	The prefix of the names of the threads
+	 * @return		The thread factory
+	 */
+	private static ThreadFactory daemonThreads(final String name){
+		return new ThreadFactory(){
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 * @return	The port
+	 */
+	public int getPort(){
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Sets how many updates a spectator of a new game may fall behind before it is dropped.
+	 * @param size	The number of lines
+	 */
+	public void setSpectatorQueueSize(int size){
+		this.spectatorQueueSize = Math.max(1, size);
+	}
+
+	/**
+	 * Sets the archive every finished game is added to.
+	 * @param archive	The archive, or null to keep no games
+	 */
+	public void setArchive(GameArchive archive){
+		this.archive = archive;
+	}
+
+	/**
+	 * Returns the number of games being hosted.
+	 * @return	The number of games that still have a player connected
+	 */
+	public int getGameCount(){
+		return games.size();
+	}
+
+	/**
+	 * Returns the number of open connections.
+	 * @return	The number of connected clients
+	 */
+	public int getConnectionCount(){
+		return open.size();
+	}
+
+	/**
+	 * Returns a hosted game.
+	 * @param id	The id of the game
+	 * @return		The game, or null if there is no such game
+	 */
+	HostedGame getGame(int id){
+		return games.get(id);
+	}
+
+	/**
+	 * Accepts connections until the server is closed, and serves each on its own thread.
+	 */
+	private void acceptConnections(){
+		while(!closed){
+			try{
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				final Connection connection = new Connection(socket);
+				open.add(connection);
+				connections.execute(new Runnable(){
+					public void run(){
+						connection.serve();
+					}
+				});
+			} catch(IOException e){
+				if(!closed){
+					System.err.println("Accept failed: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting connections and closes the open ones.
+	 */
+	@Override
+	public void close() throws IOException{
+		closed = true;
+		serverSocket.close();
+		for(Connection connection : open){
+			connection.close();	//An interrupt does not wake a thread reading a socket, closing it does
+		}
+		connections.shutdownNow();
+		aiPool.shutdownNow();
+	}
+
+	/**
+	 * Writes the state of a game as a STATE line.
+	 * @param engine	The game
+	 * @return			The line
+	 */
+	static String stateLine(GameEngine engine){
+		int[] points = engine.getBoard().getBoardState();
+		StringBuilder line = new StringBuilder(32 + points.length);
+		line.append("STATE ").append(engine.status()).append(' ').append(engine.getColour()).append(' ')
+				.append(engine.mustRemove() ? 1 : 0).append(' ').append(engine.getInHand(1)).append(' ')
+				.append(engine.getInHand(2)).append(' ');
+		for(int point : points){
+			line.append((char) ('0' + point));
+		}
+		return line.toString();
+	}
+
+	/**
+	 * A game hosted by the server, with the connections seated at it. Every change to the game is made while holding its lock.
+	 */
+	class HostedGame {
+		final int id;
+		final GameEngine engine;
+		final SpectatorChannel spectators;
+		private final Connection[] seats = new Connection[3];	//seats[colour]: the player of that colour, or null
+		private final int aiColour;								//The colour the computer plays, or 0 for none
+		private final int[] moves = new int[MoveGenerator.maxMoves(topology)];
+		private boolean aiThinking;
+
+		HostedGame(int id, int aiColour){
+			this.id = id;
+			this.aiColour = aiColour;
+			this.engine = SelfPlay.newGame(topology);
+			this.spectators = new SpectatorChannel(engine, spectatorQueueSize);
+		}
+
+		/**
+		 * Seats a connection.
+		 * @param connection	The player
+		 * @param colour		The colour to play
+		 * @return				Whether the seat was free
+		 */
+		synchronized boolean seat(Connection connection, int colour){
+			if(seats[colour] != null || colour == aiColour){
+				return false;
+			}
+			seats[colour] = connection;
+			return true;
+		}
+
+		/**
+		 * Removes a connection from the game, and ends hosting the game when nobody is left.
+		 * @param connection	The player who left
+		 */
+		synchronized void leave(Connection connection){
+			for(int colour = 1; colour <= 2; colour++){
+				if(seats[colour] == connection){
+					seats[colour] = null;
+				}
+			}
+			if(seats[1] == null && seats[2] == null){
+				games.remove(id);
+				spectators.close();
+			}
+		}
+
+		/**
+		 * Plays a move for a player.
+		 * @param connection	The player
+		 * @param move			The packed move
+		 * @return				null if the move was played, otherwise the reason it was not
+		 */
+		synchronized String play(Connection connection, int move){
+			if(engine.isOver()){
+				return "game over";
+			} else if(seats[engine.getColour()] != connection){
+				return "not your turn";
+			}
+			return apply(move) ? null : "illegal move";
+		}
+
+		/**
+		 * Applies a move, tells the players, and lets the computer reply if it is its turn.
+		 * @param move	The packed move
+		 * @return		Whether the move was legal
+		 */
+		private boolean apply(int move){
+			int colour = engine.getColour();
+			if(!engine.apply(move)){
+				return false;
+			}
+			broadcast("MOVED " + colour + " " + Move.toString(move));
+			broadcast(GameServer.stateLine(engine));
+			spectators.publish(engine);
+			if(engine.isOver() && archive != null){
+				try{
+					archive.append(engine);
+				} catch(IOException e){
+					System.err.println("Could not archive game " + id + ": " + e.getMessage());
+				}
+			}
+			scheduleAI();
+			return true;
+		}
+
+		/**
+		 * Sends a line to every seated player.
+		 * @param line	The line
+		 */
+		void broadcast(String line){
+			for(int colour = 1; colour <= 2; colour++){
+				if(seats[colour] != null){
+					seats[colour].send(line);
+				}
+			}
+		}
+
+		/**
+		 * Asks the shared pool to find a move for the computer, if it is its turn. The position is copied, so the search runs
+		 * without holding the lock of the game.
+		 */
+		synchronized void scheduleAI(){
+			if(aiColour == 0 || aiThinking || engine.isOver() || engine.getColour() != aiColour){
+				return;
+			}
+			aiThinking = true;
+			final Board position = new Board(topology, engine.getBoard().getBoardState().clone());
+			final int blueInHand = engine.getInHand(1), redInHand = engine.getInHand(2);
+			final boolean mustRemove = engine.mustRemove();
+			aiPool.execute(new Runnable(){
+				public void run(){
+					int move = searches.get().search(position, blueInHand, redInHand, aiColour, mustRemove);
+					synchronized(HostedGame.this){
+						aiThinking = false;
+						if(move == Move.NONE || !apply(move)){
+							broadcast("ERR computer player failed");
+						}
+					}
+				}
+			});
+		}
+
+		/**
+		 * Writes the legal moves of the player to move as a MOVES line.
+		 * @return	The line
+		 */
+		synchronized String movesLine(){
+			int count = engine.legalMoves(moves, 0);
+			StringBuilder line = new StringBuilder("MOVES");
+			for(int i = 0; i < count; i++){
+				line.append(' ').append(Move.toString(moves[i]));
+			}
+			return line.toString();
+		}
+
+		/**
+		 * Returns the state of the game as a STATE line.
+		 * @return	The line
+		 */
+		synchronized String stateLine(){
+			return GameServer.stateLine(engine);
+		}
+	}
+
+	/**
+	 * One client connection: reads its commands, and queues the replies for its writer. Lines to the client may also be queued
+	 * by the thread of the computer player or of a spectator, or while a game is locked, so queueing never waits.
+	 */
+	class Connection implements SpectatorChannel.Sink {
+		private final Socket socket;
+		private final BlockingQueue<String> outbox = new ArrayBlockingQueue<String>(OUTBOX_SIZE + 1);	//One more for CLOSE
+		private HostedGame game;
+		private SpectatorChannel.Spectator watching;
+
+		Connection(Socket socket){
+			this.socket = socket;
+		}
+
+		/**
+		 * Serves the connection until the client quits or disconnects.
+		 */
+		void serve(){
+			try{
+				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+				final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+						StandardCharsets.US_ASCII));
+				connections.execute(new Runnable(){
+					public void run(){
+						writeLines(writer);
+					}
+				});
+				for(String line = reader.readLine(); line != null && !closed; line = reader.readLine()){
+					if(!handle(line.trim())){
+						break;
+					}
+				}
+			} catch(SocketException e){
+				//The client went away
+			} catch(IOException e){
+				System.err.println("Connection failed: " + e.getMessage());
+			} finally{
+				leaveGame();
+				open.remove(this);
+				outbox.clear();
+				outbox.offer(CLOSE);
+				close();
+			}
+		}
+
+		/**
+		 * Writes the queued lines to the client until the connection ends, flushing whenever the queue is empty.
+		 * @param writer	The writer of the socket
+		 */
+		private void writeLines(BufferedWriter writer){
+			try{
+				for(String line = outbox.take(); line != CLOSE; line = outbox.take()){
+					writer.write(line);
+					writer.write('\n');
+					if(outbox.isEmpty()){
+						writer.flush();
+					}
+				}
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			} catch(IOException e){
+				//The client went away
+			} finally{
+				close();
+			}
+		}
+
+		/**
+		 * Carries out one command.
+		 * @param line	The command
+		 * @return		Whether to keep reading commands
+		 */
+		private boolean handle(String line){
+			String[] words = line.split("\\s+");
+			switch(words[0].toUpperCase()){
+			case "NEW":
+				int aiColour = words.length >= 3 && words[1].equalsIgnoreCase("AI") ? parseColour(words[2]) : 0;
+				if(aiColour < 0){
+					send("ERR colour must be 1 or 2");
+					break;
+				}
+				leaveGame();
+				HostedGame hosted = new HostedGame(nextGameId.getAndIncrement(), aiColour);
+				int colour = aiColour == 1 ? 2 : 1;
+				hosted.seat(this, colour);
+				games.put(hosted.id, hosted);
+				game = hosted;
+				send("GAME " + hosted.id + " " + colour);
+				send(hosted.stateLine());
+				hosted.scheduleAI();
+				break;
+			case "JOIN":
+				HostedGame joined = words.length >= 2 ? games.get(parseId(words[1])) : null;
+				if(joined == null || joined == game || !joined.seat(this, 2)){
+					send("ERR no free seat");
+					break;
+				}
+				leaveGame();
+				game = joined;
+				send("GAME " + joined.id + " 2");
+				send(joined.stateLine());
+				break;
+			case "WATCH":
+				HostedGame watched = words.length >= 2 ? games.get(parseId(words[1])) : null;
+				if(watched == null){
+					send("ERR no such game");
+					break;
+				}
+				leaveGame();
+				watching = watched.spectators.watch(this);
+				connections.execute(watching);
+				break;
+			case "MOVE":
+				if(game == null){
+					send("ERR no game");
+				} else if(words.length < 2){
+					send("ERR no move");
+				} else{
+					try{
+						String error = game.play(this, Move.parse(words[1]));
+						if(error != null){
+							send("ERR " + error);
+						}
+					} catch(IllegalArgumentException e){
+						send("ERR " + e.getMessage());
+					}
+				}
+				break;
+			case "MOVES":
+				send(game == null ? "ERR no game" : game.movesLine());
+				break;
+			case "STATE":
+				send(game == null ? "ERR no game" : game.stateLine());
+				break;
+			case "QUIT":
+				return false;
+			default:
+				if(!line.isEmpty()){
+					send("ERR unknown command");
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Leaves the current game, if any, or stops watching.
+		 */
+		private void leaveGame(){
+			if(game != null){
+				game.leave(this);
+				game = null;
+			}
+			if(watching != null){
+				watching.leave();
+				watching = null;
+			}
+		}
+
+		/**
+		 * Queues one line for the client. A client that has fallen OUTBOX_SIZE lines behind is disconnected.
+		 * @param line	The line, without the end of line
+		 */
+		public void send(String line){
+			if(outbox.remainingCapacity() <= 1 || !outbox.offer(line)){
+				close();
+			}
+		}
+
+		/**
+		 * Disconnects the client. Closing the socket wakes both of its threads, even one stuck writing to a slow client.
+		 */
+		public void close(){
+			try{
+				socket.close();
+			} catch(IOException e){
+				//Already closed
+			}
+		}
+	}
+
+	/**
+	 * Reads a colour.
+	 * @param text	The colour as text
+	 * @return		1 or 2, or -1 if the text is not a colour
+	 */
+	private static int parseColour(String text){
+		return text.equals("1") ? 1 : text.equals("2") ? 2 : -1;
+	}
+
+	/**
+	 * Reads a game id.
+	 * @param text	The id as text
+	 * @return		The id, or -1 if the text is not a number
+	 */
+	private static int parseId(String text){
+		try{
+			return Integer.parseInt(text);
+		} catch(NumberFormatException e){
+			return -1;
+		}
+	}
+
+	/**
+	 * Runs a server until the process is stopped, printing the number of games and connections every ten seconds.
+	 * @param args	The options described in the class comment
+	 * @throws IOException if the port cannot be opened
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException{
+		int port = DEFAULT_PORT, N = 2, variant = BoardTopology.SIX_MENS_MORRIS, depth = 4;
+		int aiThreads = Runtime.getRuntime().availableProcessors();
+		String archiveFile = null;
+		for(int i = 0; i < args.length; i++){
+			switch(args[i]){
+			case "-port":		port = Integer.parseInt(args[++i]); break;
+			case "-N":			N = Integer.parseInt(args[++i]); break;
+			case "-variant":	variant = Integer.parseInt(args[++i]); break;
+			case "-depth":		depth = Integer.parseInt(args[++i]); break;
+			case "-aiThreads":	aiThreads = Integer.parseInt(args[++i]); break;
+			case "-archive":	archiveFile = args[++i]; break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+		GameServer server = new GameServer(port, BoardTopology.get(N, variant), depth, aiThreads);
+		if(archiveFile != null){
+			server.setArchive(new GameArchive(Paths.get(archiveFile)));
+		}
+		System.out.println("Listening on port " + server.getPort());
+		while(true){
+			Thread.sleep(10000);
+			System.out.println(server.getGameCount() + " games, " + server.getConnectionCount() + " connections");
+		}
+	}
+
+}
@@ -0,0 +1,402 @@
+package sixmensmorris;
+
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays two engine configurations against each other until a sequential probability ratio test (SPRT) decides which is stronger.
+ *
+ * Games are played in pairs. Both games of a pair start from the same random opening, with each engine playing blue once, so
+ * an opening that favours one colour does not favour either engine. The score of engine A in a pair is 0, 1/2, 1, 3/2 or 2, and
+ * the test counts how many pairs ended with each score (the pentanomial counts).
+ *
+ * The test weighs the hypothesis that A is elo1 Elo stronger than B against the hypothesis that it is only elo0 Elo stronger,
+ * using the log-likelihood ratio (LLR) of the normal approximation of the pair scores. The match stops as soon as the LLR leaves
+ * the interval given by the error rates alpha and beta: above it, A is accepted as stronger (H1), below it, A is rejected (H0).
+ * The pairs are played on every core at once, and the test is updated as each pair ends.
+ *
+ * An engine configuration is a list of settings of the search, such as "depth=5" or "time=100,hash=16". The program exits
+ * with 0 if H1 is accepted, 1 if H0 is accepted and 2 if the match is undecided, so it can gate a change in a build script.
+ *
+ * Usage: java sixmensmorris.Match -a config -b config [-elo0 E] [-elo1 E] [-alpha A] [-beta B] [-maxPairs P] [-threads T]
+ * [-N layers] [-variant 6|9|12] [-random plies] [-seed S] [-maxPlies P]
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public class Match {
+
+	public static final int H0 = -1;			//Result of a match where A was not found stronger
+	public static final int UNDECIDED = 0;		//Result of a match that reached the pair limit first
+	public static final int H1 = 1;				//Result of a match where A was found stronger
+
+	private final BoardTopology topology;
+	private final EngineConfig a, b;
+	private double elo0 = 0, elo1 = 5, alpha = 0.05, beta = 0.05;
+	private int maxPairs = 20000;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int randomPlies = 6;
+	private long seed = 1;
+	private int maxPlies = 400;
+
+	private final long[] pentanomial = new long[5];	//pentanomial[s]: number of pairs in which A scored s half points
+
+	/**
+	 * The settings of the search of one side of a match.
+	 */
+	public static class EngineConfig {
+		private final String name;
+		private int depth = 4;
+		private long time = 0;
+		private int hash = 4;
+
+		/**
+		 * Reads a configuration written as comma separated settings: depth=plies, time=milliseconds per move, hash=megabytes.
+		 * @param text	The configuration
+		 * @return		The configuration
+		 * @throws IllegalArgumentException if a setting is not known
+		 */
+		public static EngineConfig parse(String text){
+			EngineConfig config = new EngineConfig(text);
+			for(String setting : text.split(",")){
+				String[] parts = setting.trim().split("=");
+				if(parts.length != 2){
+					throw new IllegalArgumentException("Not a setting: " + setting);
+				}
+				int value = Integer.parseInt(parts[1].trim());
+				switch(parts[0].trim()){
+				case "depth":	config.depth = value; break;
+				case "time":	config.time = value; break;
+				case "hash":	config.hash = value; break;
+				default:
+					throw new IllegalArgumentException("Unknown setting: " + parts[0]);
+				}
+			}
+			return config;
+		}
+
+		private EngineConfig(String name){
+			this.name = name;
+		}
+
+		/**
+		 * Returns a search with these settings.
+		 * @param topology	The shape and rules of the board
+		 * @return			The search
+		 */
+		public Search newSearch(BoardTopology topology){
+			Search search = new Search(topology, new TranspositionTable(hash));
+			search.setDepth(time > 0 ? Search.MAX_PLY - 1 : depth);
+			search.setTimeBudget(time);
+			return search;
+		}
+
+		@Override
+		public String toString(){
+			return name;
+		}
+	}
+
+	/**
+	 * Constructs a match between two configurations.
+	 * @param topology	The shape and rules of the board
+	 * @param a			The configuration under test
+	 * @param b			The configuration it is compared with
+	 */
+	public Match(BoardTopology topology, EngineConfig a, EngineConfig b){
+		this.topology = topology;
+		this.a = a;
+		this.b = b;
+	}
+
+	/**
+	 * Sets the hypotheses of the test, as Elo differences of A over B.
+	 * @param elo0	The difference of the null hypothesis
+	 * @param elo1	The difference of the alternative hypothesis, above elo0
+	 */
+	public void setBounds(double elo0, double elo1){
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+	}
+
+	/**
+	 * Sets the error rates of the test.
+	 * @param alpha	The chance of accepting H1 when H0 is true
+	 * @param beta	The chance of accepting H0 when H1 is true
+	 */
+	public void setErrorRates(double alpha, double beta){
+		this.alpha = alpha;
+		this.beta = beta;
+	}
+
+	/**
+	 * Sets the number of pairs after which the match stops undecided.
+	 * @param pairs	The pair limit
+	 */
+	public void setMaxPairs(int pairs){
+		this.maxPairs = pairs;
+	}
+
+	/**
+	 * Sets the number of pairs played at once.
+	 * @param threads	The number of threads
+	 */
+	public void setThreads(int threads){
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Sets the number of random moves each opening has.
+	 * @param plies	The number of turns played at random
+	 */
+	public void setRandomPlies(int plies){
+		this.randomPlies = plies;
+	}
+
+	/**
+	 * Sets the seed the openings are made from.
+	 * @param seed	The seed of the match
+	 */
+	public void setSeed(long seed){
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the number of turns after which a game is stopped as a draw.
+	 * @param plies	The move limit
+	 */
+	public void setMaxPlies(int plies){
+		this.maxPlies = plies;
+	}
+
+	/**
+	 * Returns the pentanomial counts of the pairs played so far.
+	 * @return	A copy of the counts, indexed by the score of A in half points
+	 */
+	public synchronized long[] getPentanomial(){
+		return pentanomial.clone();
+	}
+
+	/**
+	 * Returns the score of a game for A.
+	 * @param status	The status at the end of the game
+	 * @param aColour	The colour A played (1 = blue, 2 = red)
+	 * @return			The score in half points: 2 for a win, 1 for a draw, 0 for a loss
+	 */
+	private static int halfPoints(int status, int aColour){
+		if(status == SelfPlay.FAILED){
+			throw new IllegalStateException("Game failed");
+		}
+		if(status == GameEngine.BLUE_WINS){
+			return aColour == 1 ? 2 : 0;
+		} else if(status == GameEngine.RED_WINS){
+			return aColour == 2 ? 2 : 0;
+		}
+		return 1;
+	}
+
+	/**
+	 * Plays one pair of games from the same opening, with A playing blue in the first game and red in the second.
+	 * @param pair	The number of the pair
+	 * @param sa	The search of A
+	 * @param sb	The search of B
+	 * @return		The score of A over both games, in half points
+	 */
+	private int playPair(int pair, Search sa, Search sb){
+		long pairSeed = SelfPlay.gameSeed(seed, pair);
+		int score = 0;
+		for(int aColour = 1; aColour <= 2; aColour++){
+			sa.getTable().clear();
+			sb.getTable().clear();
+			GameEngine game = SelfPlay.newGame(topology);
+			SelfPlay.playRandom(game, new Random(pairSeed), randomPlies);
+			int status = aColour == 1 ? SelfPlay.play(game, sa, sb, maxPlies) : SelfPlay.play(game, sb, sa, maxPlies);
+			score += halfPoints(status, aColour);
+		}
+		return score;
+	}
+
+	/**
+	 * Plays pairs on every thread until the test decides or the pair limit is reached.
+	 * @param log	Whether to print the state of the test as the pairs end
+	 * @return		H1 if A was found stronger, H0 if not, or UNDECIDED
+	 * @throws InterruptedException if interrupted while waiting for the pairs
+	 */
+	public int run(boolean log) throws InterruptedException{
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicBoolean done = new AtomicBoolean();
+		final BlockingQueue<Integer> scores = new LinkedBlockingQueue<Integer>();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "match-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for(int t = 0; t < threads; t++){
+			pool.execute(new Runnable(){
+				public void run(){
+					Search sa = a.newSearch(topology), sb = b.newSearch(topology);
+					for(int pair = next.getAndIncrement(); pair < maxPairs && !done.get(); pair = next.getAndIncrement()){
+						try{
+							scores.add(playPair(pair, sa, sb));
+						} catch(RuntimeException e){
+							e.printStackTrace();
+							scores.add(-1);
+						}
+					}
+				}
+			});
+		}
+		pool.shutdown();
+
+		double lower = Math.log(beta / (1 - alpha)), upper = Math.log((1 - beta) / alpha);
+		int result = UNDECIDED;
+		long start = System.nanoTime();
+		for(int pairs = 1; pairs <= maxPairs; pairs++){
+			int score = scores.take();
+			if(score < 0){
+				done.set(true);
+				throw new IllegalStateException("A game of the match failed");
+			}
+			long[] counts;
+			synchronized(this){
+				pentanomial[score]++;
+				counts = pentanomial.clone();
+			}
+			double llr = llr(counts, elo0, elo1);
+			if(llr >= upper){
+				result = H1;
+			} else if(llr <= lower){
+				result = H0;
+			}
+			if(log && (result != UNDECIDED || pairs % 10 == 0 || pairs == maxPairs)){
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.printf("%d pairs, %.1f games/s, pentanomial [%d %d %d %d %d], Elo %.1f, LLR %.2f (%.2f, %.2f)%n",
+						pairs, 2 * pairs / seconds, counts[0], counts[1], counts[2], counts[3], counts[4], elo(counts), llr,
+						lower, upper);
+			}
+			if(result != UNDECIDED){
+				break;
+			}
+		}
+		done.set(true);
+		pool.shutdownNow();
+		return result;
+	}
+
+	/**
+	 * Returns the expected score of a side that is a given number of Elo stronger than its opponent.
+	 * @param elo	The Elo difference
+	 * @return		The expected score, from 0 to 1
+	 */
+	private static double score(double elo){
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	/**
+	 * Returns the Elo difference estimated from pair counts.
+	 * @param counts	The pentanomial counts
+	 * @return			The Elo difference of A over B, or infinity if one side scored everything
+	 */
+	public static double elo(long[] counts){
+		long n = 0, points = 0;
+		for(int s = 0; s < 5; s++){
+			n += counts[s];
+			points += s * counts[s];
+		}
+		double mean = n == 0 ? 0.5 : points / (4.0 * n);
+		return -400 * Math.log10(1 / mean - 1);
+	}
+
+	/**
+	 * Returns the log-likelihood ratio of H1 (A is elo1 stronger) against H0 (A is elo0 stronger), using the normal
+	 * approximation of the mean score of a pair.
+	 * @param counts	The pentanomial counts
+	 * @param elo0		The Elo difference of H0
+	 * @param elo1		The Elo difference of H1
+	 * @return			The log-likelihood ratio, 0 until the scores vary
+	 */
+	public static double llr(long[] counts, double elo0, double elo1){
+		long n = 0;
+		double sum = 0;
+		for(int s = 0; s < 5; s++){
+			n += counts[s];
+			sum += counts[s] * (s / 4.0);
+		}
+		if(n == 0){
+			return 0;
+		}
+		double mean = sum / n, variance = 0;
+		for(int s = 0; s < 5; s++){
+			double d = s / 4.0 - mean;
+			variance += counts[s] * d * d;
+		}
+		variance /= n;
+		if(variance <= 0){
+			return 0;
+		}
+		double s0 = score(elo0), s1 = score(elo1);
+		return n * (s1 - s0) * (2 * mean - s0 - s1) / (2 * variance);
+	}
+
+	/**
+	 * Runs a match given on the command line and prints its progress and result.
+	 * @param args	The options described in the class comment
+	 * @throws InterruptedException if interrupted while waiting for the games
+	 */
+	public static void main(String[] args) throws InterruptedException{
+		int N = 2, variant = BoardTopology.SIX_MENS_MORRIS;
+		String a = null, b = null;
+		double elo0 = 0, elo1 = 5, alpha = 0.05, beta = 0.05;
+		int maxPairs = 20000, threads = Runtime.getRuntime().availableProcessors(), randomPlies = 6, maxPlies = 400;
+		long seed = 1;
+		for(int i = 0; i < args.length; i++){
+			switch(args[i]){
+			case "-a":			a = args[++i]; break;
+			case "-b":			b = args[++i]; break;
+			case "-elo0":		elo0 = Double.parseDouble(args[++i]); break;
+			case "-elo1":		elo1 = Double.parseDouble(args[++i]); break;
+			case "-alpha":		alpha = Double.parseDouble(args[++i]); break;
+			case "-beta":		beta = Double.parseDouble(args[++i]); break;
+			case "-maxPairs":	maxPairs = Integer.parseInt(args[++i]); break;
+			case "-threads":	threads = Integer.parseInt(args[++i]); break;
+			case "-N":			N = Integer.parseInt(args[++i]); break;
+			case "-variant":	variant = Integer.parseInt(args[++i]); break;
+			case "-random":		randomPlies = Integer.parseInt(args[++i]); break;
+			case "-seed":		seed = Long.parseLong(args[++i]); break;
+			case "-maxPlies":	maxPlies = Integer.parseInt(args[++i]); break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+		if(a == null || b == null){
+			System.err.println("Both engines are needed, for example: -a depth=5 -b depth=4");
+			return;
+		}
+
+		Match match = new Match(BoardTopology.get(N, variant), EngineConfig.parse(a), EngineConfig.parse(b));
+		match.setBounds(elo0, elo1);
+		match.setErrorRates(alpha, beta);
+		match.setMaxPairs(maxPairs);
+		match.setThreads(threads);
+		match.setRandomPlies(randomPlies);
+		match.setSeed(seed);
+		match.setMaxPlies(maxPlies);
+		System.out.printf("SPRT %s vs %s, elo0 %.1f, elo1 %.1f, alpha %.2f, beta %.2f, %d threads%n", a, b, elo0, elo1, alpha, beta,
+				match.threads);
+		int result = match.run(true);
+		System.out.println(result == H1 ? "H1 accepted: " + a + " is stronger"
+				: result == H0 ? "H0 accepted: " + a + " is not stronger" : "Undecided after " + maxPairs + " pairs");
+		System.exit(result == H1 ? 0 : result == H0 ? 1 : 2);
+	}
+
+}
@@ -5,11 +5,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 
 import javax.swing.Box;
 import javax.swing.JButton;
@@ -36,14 +33,6 @@ public class MenuView extends Screen{
 	private int defaultFontSize = 36;
 	private int defaultScreenWidth = 500;
 	private int N; //Total number of pieces on the board
-		
-	//Used to store data about the game
-	private int[] boardState;
-	private int turn;
-	private int gameState;
-	private boolean removePiece;
-	private boolean ExistsAI;
-	private int AI_COLOR;
 	
 	/**
 	 * Method to construct the output that the controller will handle everything inside of it.
@@ -161,31 +150,9 @@ public class MenuView extends Screen{
 	
 	private void loadGameMouseClicked(MouseEvent e){
 		try {
-			FileReader fr = new FileReader("./savedGame.txt");
-			BufferedReader br = new BufferedReader(fr);
-			ArrayList<Integer> boardState = new ArrayList<Integer>();
-			String stringRead = br.readLine();
-			if(stringRead != null){
-				gameState = Integer.parseInt(stringRead);
-				turn = Integer.parseInt(br.readLine());
-				removePiece = Boolean.parseBoolean(br.readLine());
-				ExistsAI = Boolean.parseBoolean(br.readLine());
-				AI_COLOR = Integer.parseInt(br.readLine());
-				stringRead = br.readLine();
-				while(stringRead != null){
-					boardState.add(Integer.parseInt(stringRead));
-					stringRead = br.readLine();
-				}
-				br.close();
-				
-				this.boardState = new int[boardState.size()];
-				for(int i = 0; i < boardState.size(); i++){
-					this.boardState[i] = boardState.get(i);
-				}
-				BoardController boardController = new BoardController(N, this.boardState, this.turn, this.gameState, this.removePiece);
-				if (ExistsAI) {
-					boardController.initAI(AI_COLOR);
-				}
+			SavedGame saved = SavedGame.load();
+			if(saved != null){
+				BoardController boardController = new BoardController(saved);
 				boardController.setVisible(true);
 				SwingUtilities.getWindowAncestor(this).dispose();
 			} else{
@@ -193,7 +160,7 @@ public class MenuView extends Screen{
 				boardController.setVisible(true);
 				SwingUtilities.getWindowAncestor(this).dispose();
 			}
-		} catch (NumberFormatException | IOException e1) {
+		} catch (IOException e1) {
 			new ErrorDialog(new JFrame(), "Corrupt save file.", "An error occured. Please go save the game again.");
 			BoardController boardController = new BoardController(N);
 			boardController.setVisible(true);
@@ -0,0 +1,177 @@
+package sixmensmorris;
+
+/**
+ * Packs a move into a single int, so moves can be stored in primitive arrays without allocating.
+ *
+ * A move is a compound action: a piece is placed on a point, or slid (or flown) from one point to another, and if that forms a
+ * mill an opponent's piece is removed as part of the same move. A move that only removes a piece is used when the removal is
+ * chosen separately from the move that formed the mill.
+ *
+ * Each part takes 10 bits: bits 0-9 hold the point moved to, bits 10-19 the point moved from and bits 20-29 the point of the
+ * removed piece. Unused parts hold NO_POINT.
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public final class Move {
+
+	public static final int NO_POINT = 0x3FF;			//Value of an unused part of a move
+	public static final int NONE = -1;					//No move at all
+	public static final int MAX_POINTS = NO_POINT;		//Largest number of points a move can address
+
+	private static final int FROM_SHIFT = 10;
+	private static final int REMOVE_SHIFT = 20;
+	private static final int NO_FROM = NO_POINT << FROM_SHIFT;
+	private static final int NO_REMOVE = NO_POINT << REMOVE_SHIFT;
+
+	private Move(){
+	}
+
+	/**
+	 * Returns a move that places a piece.
+	 * @param to	The point to place the piece on
+	 * @return		The packed move
+	 */
+	public static int place(int to){
+		return NO_REMOVE | NO_FROM | to;
+	}
+
+	/**
+	 * Returns a move that slides or flies a piece.
+	 * @param from	The point the piece is on
+	 * @param to	The point to move it to
+	 * @return		The packed move
+	 */
+	public static int slide(int from, int to){
+		return NO_REMOVE | (from << FROM_SHIFT) | to;
+	}
+
+	/**
+	 * Returns a move that only removes an opponent's piece.
+	 * @param point	The point of the piece to remove
+	 * @return		The packed move
+	 */
+	public static int remove(int point){
+		return (point << REMOVE_SHIFT) | NO_FROM | NO_POINT;
+	}
+
+	/**
+	 * Returns a move that also removes an opponent's piece.
+	 * @param move	A move without a removal
+	 * @param point	The point of the piece to remove
+	 * @return		The packed move
+	 */
+	public static int withRemove(int move, int point){
+		return (move & ~NO_REMOVE) | (point << REMOVE_SHIFT);
+	}
+
+	/**
+	 * Returns the point a piece is moved to.
+	 * @param move	The packed move
+	 * @return		The point, or NO_POINT if the move only removes a piece
+	 */
+	public static int to(int move){
+		return move & NO_POINT;
+	}
+
+	/**
+	 * Returns the point a piece is moved from.
+	 * @param move	The packed move
+	 * @return		The point, or NO_POINT if the move places a piece or only removes one
+	 */
+	public static int from(int move){
+		return (move >>> FROM_SHIFT) & NO_POINT;
+	}
+
+	/**
+	 * Returns the point of the removed piece.
+	 * @param move	The packed move
+	 * @return		The point, or NO_POINT if nothing is removed
+	 */
+	public static int removed(int move){
+		return (move >>> REMOVE_SHIFT) & NO_POINT;
+	}
+
+	/**
+	 * Returns whether a move places a piece.
+	 * @param move	The packed move
+	 * @return		Whether a piece is placed
+	 */
+	public static boolean isPlace(int move){
+		return from(move) == NO_POINT && to(move) != NO_POINT;
+	}
+
+	/**
+	 * Returns whether a move removes a piece.
+	 * @param move	The packed move
+	 * @return		Whether a piece is removed
+	 */
+	public static boolean isRemove(int move){
+		return removed(move) != NO_POINT;
+	}
+
+	/**
+	 * Returns a readable form of a move: "p5" places on point 5, "3-4" moves from 3 to 4, and "x7" removes the piece on 7.
+	 * A removal follows the move that formed the mill, as in "3-4x7".
+	 * @param move	The packed move
+	 * @return		The move as text
+	 */
+	public static String toString(int move){
+		if(move == NONE){
+			return "none";
+		}
+		StringBuilder text = new StringBuilder();
+		if(from(move) != NO_POINT){
+			text.append(from(move)).append('-').append(to(move));
+		} else if(to(move) != NO_POINT){
+			text.append('p').append(to(move));
+		}
+		if(removed(move) != NO_POINT){
+			text.append('x').append(removed(move));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Reads a move written by toString.
+	 * @param text	The move as text
+	 * @return		The packed move
+	 * @throws IllegalArgumentException if the text is not a move
+	 */
+	public static int parse(String text){
+		try{
+			int move = NO_REMOVE | NO_FROM | NO_POINT;
+			String rest = text.trim();
+			int x = rest.indexOf('x');
+			if(x >= 0){
+				move = withRemove(move, point(rest.substring(x + 1)));
+				rest = rest.substring(0, x);
+			}
+			if(rest.startsWith("p")){
+				move = (move & ~NO_POINT) | point(rest.substring(1));
+			} else if(rest.indexOf('-') > 0){
+				int dash = rest.indexOf('-');
+				move = (move & ~(NO_FROM | NO_POINT)) | (point(rest.substring(0, dash)) << FROM_SHIFT) | point(rest.substring(dash + 1));
+			} else if(!rest.isEmpty() || x < 0){
+				throw new IllegalArgumentException("Not a move: " + text);
+			}
+			return move;
+		} catch(NumberFormatException e){
+			throw new IllegalArgumentException("Not a move: " + text);
+		}
+	}
+
+	/**
+	 * Reads one point of a move.
+	 * @param text	The point as text
+	 * @return		The point
+	 */
+	private static int point(String text){
+		int point = Integer.parseInt(text);
+		if(point < 0 || point >= MAX_POINTS){
+			throw new NumberFormatException(text);
+		}
+		return point;
+	}
+
+}
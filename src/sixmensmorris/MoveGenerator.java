@@ -0,0 +1,219 @@
+package sixmensmorris;
+
+/**
+ * Generates the legal moves of a position as packed ints (see Move), written into a buffer given by the caller.
+ *
+ * Every move is a whole turn: placing, sliding or flying a piece, and, if that forms a mill, the removal of an opponent's piece.
+ * A move that forms a mill is written once for every piece it may remove. Moves are read off the bitboards of the Board, so
+ * generating them takes no allocation and no boxing; a search keeps one buffer for all its plies and plays the moves with
+ * Board.makeMove and Board.unmakeMove.
+ *
+ * The rules are the same as in BoardController:
+ * <ul>
+ * <li>A player with pieces left to place must place one on an empty point.</li>
+ * <li>Otherwise the player slides a piece to an adjacent empty point, or flies it anywhere if the variant allows it and the
+ * player has three pieces left.</li>
+ * <li>A move that forms a mill removes an opponent's piece that is not in a mill, unless all of them are in mills.</li>
+ * </ul>
+ *
+ * @author Zichen Jiang
+ * @version 1
+ * @see Move
+ */
+public final class MoveGenerator {
+
+	private MoveGenerator(){
+	}
+
+	/**
+	 * Returns an upper bound on the number of moves in any position: every place, slide or fly, times every removal.
+	 * A buffer of this size can hold the moves of any position.
+	 * @param topology	The shape and rules of the board
+	 * @return			The most moves a position can have
+	 */
+	public static int maxMoves(BoardTopology topology){
+		int points = topology.getPoints();
+		int base = Math.max(points, topology.getNeighbours().length);
+		if(topology.canFly()){
+			base = Math.max(base, points * points / 4);
+		}
+		return base * points;
+	}
+
+	/**
+	 * Writes every legal move of a colour into a buffer. The number of pieces left to place is taken from the board.
+	 * @param board		The position
+	 * @param colour	The colour to move (1 = blue, 2 = red)
+	 * @param moves		The buffer, which must have room for maxMoves moves after the offset
+	 * @param offset	Where to write the first move
+	 * @return			The number of moves written, 0 if the colour cannot move
+	 */
+	public static int generate(Board board, int colour, int[] moves, int offset){
+		BoardTopology topology = board.getTopology();
+		int count = 0;
+		int words = board.getWords();
+		if(board.getInHand(colour) > 0){
+			for(int w = 0; w < words; w++){
+				for(long empty = board.getBits(0, w); empty != 0; empty &= empty - 1){
+					int to = (w << 6) + Long.numberOfTrailingZeros(empty);
+					count += addMove(board, Move.place(to), Move.NO_POINT, to, colour, moves, offset + count);
+				}
+			}
+			return count;
+		}
+
+		boolean flying = isFlying(board, colour);
+		for(int w = 0; w < words; w++){
+			for(long own = board.getBits(colour, w); own != 0; own &= own - 1){
+				int from = (w << 6) + Long.numberOfTrailingZeros(own);
+				for(int v = 0; v < words; v++){
+					long targets = board.getBits(0, v);
+					if(!flying){
+						targets &= topology.getNeighbourMask(from, v);
+					}
+					for(; targets != 0; targets &= targets - 1){
+						int to = (v << 6) + Long.numberOfTrailingZeros(targets);
+						count += addMove(board, Move.slide(from, to), from, to, colour, moves, offset + count);
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes a removal-only move for every opponent's piece that may be removed. This is used when a colour has formed a mill and
+	 * the removal is chosen on its own.
+	 * @param board		The position
+	 * @param colour	The colour that removes a piece (1 = blue, 2 = red)
+	 * @param moves		The buffer
+	 * @param offset	Where to write the first move
+	 * @return			The number of moves written
+	 */
+	public static int generateRemovals(Board board, int colour, int[] moves, int offset){
+		int opponent = 3 - colour;
+		boolean onlyMills = board.onlyMillsLeft(opponent);
+		int count = 0;
+		for(int w = 0; w < board.getWords(); w++){
+			long removable = board.getBits(opponent, w);
+			if(!onlyMills){
+				removable &= ~board.getMillBits(opponent, w);
+			}
+			for(; removable != 0; removable &= removable - 1){
+				moves[offset + count++] = Move.remove((w << 6) + Long.numberOfTrailingZeros(removable));
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes a move into the buffer, once for every piece it can remove if it forms a mill.
+	 * @param board		The position
+	 * @param move		The move without a removal
+	 * @param from		The point the piece leaves, or Move.NO_POINT for a placement
+	 * @param to		The point the piece arrives on
+	 * @param colour	The colour to move
+	 * @param moves		The buffer
+	 * @param offset	Where to write the moves
+	 * @return			The number of moves written
+	 */
+	private static int addMove(Board board, int move, int from, int to, int colour, int[] moves, int offset){
+		if(formsMill(board, from, to, colour)){
+			int count = generateRemovals(board, colour, moves, offset);
+			if(count > 0){
+				for(int i = offset; i < offset + count; i++){
+					moves[i] = Move.withRemove(move, Move.removed(moves[i]));
+				}
+				return count;
+			}
+		}
+		moves[offset] = move;
+		return 1;
+	}
+
+	/**
+	 * Returns whether moving a piece onto a point forms a mill, without changing the board.
+	 * @param board		The position
+	 * @param from		The point the piece leaves, or Move.NO_POINT for a placement
+	 * @param to		The point the piece arrives on
+	 * @param colour	The colour of the piece
+	 * @return			Whether a mill is formed
+	 */
+	public static boolean formsMill(Board board, int from, int to, int colour){
+		BoardTopology topology = board.getTopology();
+		int[] pointLines = topology.getPointLines();
+		for(int k = topology.getPointLineStart(to); k < topology.getPointLineStart(to + 1); k++){
+			int line = pointLines[k];
+			boolean complete = true;
+			for(int j = 0; j < 3 && complete; j++){
+				int point = topology.getLinePoint(line, j);
+				complete = point == to || (point != from && board.getPieceState(point) == colour);
+			}
+			if(complete){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether a colour may fly, that is move a piece to any empty point.
+	 * @param board		The position
+	 * @param colour	The colour to move
+	 * @return			Whether the variant allows flying and the colour has placed all its pieces and has three left
+	 */
+	public static boolean isFlying(Board board, int colour){
+		return board.getTopology().canFly() && board.getInHand(colour) == 0 && board.getPieceCount(colour) == 3;
+	}
+
+	/**
+	 * Returns whether an opponent's piece may be removed by a colour that formed a mill.
+	 * @param board		The position
+	 * @param colour	The colour that removes a piece
+	 * @param point		The point of the piece to remove
+	 * @return			Whether the point holds an opponent's piece that is not in a mill, or all of the opponent's pieces are in mills
+	 */
+	public static boolean isRemovable(Board board, int colour, int point){
+		int opponent = 3 - colour;
+		return point >= 0 && point < board.getBoardState().length && board.getPieceState(point) == opponent
+				&& (!board.isInMill(point) || board.onlyMillsLeft(opponent));
+	}
+
+	/**
+	 * Returns whether a move is legal, without generating every move. A removal-only move is legal if the piece may be removed;
+	 * whether a mill was just formed is up to the caller.
+	 * @param board		The position
+	 * @param colour	The colour to move (1 = blue, 2 = red)
+	 * @param move		The packed move
+	 * @return			Whether the move is one that generate or generateRemovals would write
+	 */
+	public static boolean isLegal(Board board, int colour, int move){
+		if(move == Move.NONE){
+			return false;
+		}
+		int from = Move.from(move), to = Move.to(move), removed = Move.removed(move);
+		int points = board.getBoardState().length;
+		if(to == Move.NO_POINT){
+			return from == Move.NO_POINT && removed != Move.NO_POINT && isRemovable(board, colour, removed);
+		}
+		if(to >= points || !board.isEmpty(to)){
+			return false;
+		}
+		if(from == Move.NO_POINT){
+			if(board.getInHand(colour) == 0){
+				return false;
+			}
+		} else if(board.getInHand(colour) > 0 || from >= points || board.getPieceState(from) != colour
+				|| !(isFlying(board, colour) || board.getTopology().isAdjacent(from, to))){
+			return false;
+		}
+		if(!formsMill(board, from, to, colour)){
+			return removed == Move.NO_POINT;
+		}
+		if(removed == Move.NO_POINT){
+			return board.getPieceCount(3 - colour) == 0; //Nothing to remove
+		}
+		return isRemovable(board, colour, removed);
+	}
+
+}
@@ -0,0 +1,77 @@
+package sixmensmorris;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The moves of a game in the order they were played, as packed ints (see Move). Moves can only be added at the end.
+ *
+ * GameEngine adds every move it applies, so the journal of a game together with the position it started from is enough to
+ * replay it, and a GameArchive stores it as it is.
+ *
+ * @author Kelvin Lin, Jeremy Klotz
+ * @version 1
+ * @see GameArchive
+ */
+public class MoveJournal {
+
+	private int[] moves = new int[64];
+	private int size;
+
+	/**
+	 * Adds a move at the end.
+	 * @param move	The packed move
+	 */
+	public void append(int move){
+		if(size == moves.length){
+			moves = Arrays.copyOf(moves, 2 * size);
+		}
+		moves[size++] = move;
+	}
+
+	/**
+	 * Returns the number of moves.
+	 * @return	The number of moves played
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns a move.
+	 * @param i	The number of the move, from 0
+	 * @return	The packed move
+	 */
+	public int get(int i){
+		if(i >= size){
+			throw new IndexOutOfBoundsException("Move " + i + " of " + size);
+		}
+		return moves[i];
+	}
+
+	/**
+	 * Writes the moves into a buffer.
+	 * @param buffer	The buffer, with room for size() moves
+	 */
+	public void writeTo(IntBuffer buffer){
+		buffer.put(moves, 0, size);
+	}
+
+	/**
+	 * Returns the moves.
+	 * @return	A new array with the packed moves
+	 */
+	public int[] toArray(){
+		return Arrays.copyOf(moves, size);
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < size; i++){
+			text.append(i == 0 ? "" : " ").append(Move.toString(moves[i]));
+		}
+		return text.toString();
+	}
+
+}
@@ -0,0 +1,373 @@
+package sixmensmorris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A book of moves for the placing phase, learned from finished games such as the ones SelfPlay keeps in a GameArchive, so the
+ * AI can play its first moves without searching.
+ *
+ * Every turn of the placing phase of every game is counted under its position, together with the move played and the result
+ * of the game for the player who moved. Symmetric positions (see Symmetry) are counted as one: a position is turned into its
+ * canonical form and the move is moved along with it. The key of a position is a Zobrist hash of the canonical points, the
+ * colour to move and the pieces each player has left to place.
+ *
+ * The book file (big-endian) has a header
+ * <pre>
+ * int		MAGIC
+ * int		VERSION
+ * int		layers
+ * int		variant
+ * long		number of entries
+ * long		unused
+ * </pre>
+ * followed by the entries, sorted by key, each
+ * <pre>
+ * long		key
+ * int		the packed move, on the canonical position
+ * short	number of games
+ * short	points for the player to move: 2 for a win and 1 for a draw, in every game
+ * </pre>
+ * The file is mapped, and a probe finds the entries of a position by binary search. A move is chosen at random, weighted by its
+ * points, so the book plays the moves that won most and still varies its games.
+ *
+ * Usage: java sixmensmorris.OpeningBook -archive file [-plies P] [-min G] [-out file]
+ *
+ * @author Zichen Jiang
+ * @version 1
+ * @see SelfPlay
+ */
+public class OpeningBook {
+
+	public static final int MAGIC = 0x4E4D4F42;		//"NMOB"
+	public static final int VERSION = 1;
+	public static final Path DEFAULT_FILE = Paths.get("book.dat");
+
+	private static final int HEADER_SIZE = 32;
+	private static final int ENTRY_SIZE = 16;
+
+	private static final DefaultFile<OpeningBook> DEFAULT = new DefaultFile<OpeningBook>(DEFAULT_FILE){
+		final OpeningBook load(Path file) throws IOException{
+			return OpeningBook.load(file);
+		}
+
+		final BoardTopology getTopology(OpeningBook book){
+			return book.topology;
+		}
+	};
+
+	private final BoardTopology topology;
+	private final Symmetry symmetry;
+	private final ByteBuffer entries;		//The mapped entries, read only
+	private final int size;
+
+	/**
+	 * Constructs a book on entries read from a file.
+	 * @param topology	The shape and rules of the board
+	 * @param entries	The entries, sorted by key
+	 * @param size		The number of entries
+	 */
+	private OpeningBook(BoardTopology topology, ByteBuffer entries, int size){
+		this.topology = topology;
+		this.symmetry = Symmetry.get(topology.getN());
+		this.entries = entries;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the number of entries, one for every move of every position.
+	 * @return	The number of entries
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns the key of a canonical position.
+	 * @param topology	The shape and rules of the board
+	 * @param canonical	The state of every point of the canonical position
+	 * @param colour	The colour to move
+	 * @param blue		The number of blue pieces left to place
+	 * @param red		The number of red pieces left to place
+	 * @return			The key
+	 */
+	static long key(BoardTopology topology, int[] canonical, int colour, int blue, int red){
+		long key = BoardTopology.zobrist(colour << 16 | blue << 8 | red);
+		for(int i = 0; i < canonical.length; i++){
+			key ^= topology.getZobristKey(i, canonical[i]);
+		}
+		return key;
+	}
+
+	/**
+	 * Chooses a move from the book.
+	 * @param board		The position, with the pieces left to place
+	 * @param colour	The colour to move
+	 * @param random	Chooses among the moves, weighted by their points
+	 * @return			The packed move, or Move.NONE if the position is not in the book or every move in it lost
+	 */
+	public int probe(Board board, int colour, Random random){
+		if(board.getTopology() != topology){
+			return Move.NONE;
+		}
+		int[] canonical = new int[topology.getPoints()];
+		int transform = symmetry.canonicalize(board, canonical);
+		long key = key(topology, canonical, colour, board.getInHand(1), board.getInHand(2));
+		int low = 0, high = size;
+		while(low < high){
+			int middle = (low + high) >>> 1;
+			if(entries.getLong(middle * ENTRY_SIZE) < key){
+				low = middle + 1;
+			} else{
+				high = middle;
+			}
+		}
+		int total = 0, end = low;
+		for(; end < size && entries.getLong(end * ENTRY_SIZE) == key; end++){
+			total += entries.getShort(end * ENTRY_SIZE + 14);
+		}
+		if(total == 0){
+			return Move.NONE;
+		}
+		int pick = random.nextInt(total);
+		for(int e = low; e < end; e++){
+			pick -= entries.getShort(e * ENTRY_SIZE + 14);
+			if(pick < 0){
+				int move = symmetry.mapMove(symmetry.inverse(transform), entries.getInt(e * ENTRY_SIZE + 8));
+				return MoveGenerator.isLegal(board, colour, move) ? move : Move.NONE;
+			}
+		}
+		return Move.NONE;
+	}
+
+	/**
+	 * Reads a book. The entries are mapped and read as they are probed.
+	 * @param file	The file
+	 * @return		The book
+	 * @throws IOException if the file cannot be read or is not a book
+	 */
+	public static OpeningBook load(Path file) throws IOException{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if(header.getInt() != MAGIC || header.getInt() != VERSION){
+				throw new IOException(file + " is not an opening book of version " + VERSION);
+			}
+			BoardTopology topology = BoardTopology.get(header.getInt(), header.getInt());
+			long size = header.getLong();
+			if(HEADER_SIZE + size * ENTRY_SIZE > channel.size() || size * ENTRY_SIZE > Integer.MAX_VALUE){
+				throw new IOException("Opening book file too short");
+			}
+			ByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, size * ENTRY_SIZE);
+			return new OpeningBook(topology, entries, (int) size);
+		}
+	}
+
+	/**
+	 * Returns the book in DEFAULT_FILE for a topology, loading it the first time it is asked for. The file is read
+	 * only once, even if it is for another topology.
+	 * @param topology	The shape and rules of the board
+	 * @return			The book, or null if there is none for the topology
+	 */
+	public static OpeningBook getDefault(BoardTopology topology){
+		return DEFAULT.get(topology);
+	}
+
+	/**
+	 * Counts the moves of finished games and writes them as a book.
+	 */
+	public static class Builder {
+		private final BoardTopology topology;
+		private final Symmetry symmetry;
+		private final int plies;
+		private final Map<Long, Map<Integer, int[]>> positions = new HashMap<Long, Map<Integer, int[]>>();	//key, move: games, points
+		private int games;
+
+		/**
+		 * Constructs an empty builder.
+		 * @param topology	The shape and rules of the board
+		 * @param plies		The number of turns at the start of every game to count, at most the whole placing phase
+		 */
+		public Builder(BoardTopology topology, int plies){
+			this.topology = topology;
+			this.symmetry = Symmetry.get(topology.getN());
+			this.plies = plies;
+		}
+
+		/**
+		 * Counts the placing turns of a game.
+		 * @param game		The game at its start, from the empty board
+		 * @param moves		The moves of the game
+		 * @param status	The status at the end: GameEngine.BLUE_WINS, RED_WINS or DRAW, or SelfPlay.MOVE_LIMIT for a draw
+		 * @throws IOException if a move of the game is not legal
+		 */
+		public void add(GameEngine game, IntBuffer moves, int status) throws IOException{
+			if(status != GameEngine.BLUE_WINS && status != GameEngine.RED_WINS && status != GameEngine.DRAW
+					&& status != SelfPlay.MOVE_LIMIT){
+				return;
+			}
+			int[] canonical = new int[topology.getPoints()];
+			for(int ply = 0; ply < plies && moves.hasRemaining() && game.status() == GameEngine.PLACING; ply++){
+				int move = moves.get(), colour = game.getColour();
+				if(!game.mustRemove()){
+					int transform = symmetry.canonicalize(game.getBoard(), canonical);
+					long key = key(topology, canonical, colour, game.getInHand(1), game.getInHand(2));
+					Map<Integer, int[]> counts = positions.get(key);
+					if(counts == null){
+						counts = new HashMap<Integer, int[]>();
+						positions.put(key, counts);
+					}
+					int canonicalMove = symmetry.mapMove(transform, move);
+					int[] count = counts.get(canonicalMove);
+					if(count == null){
+						count = new int[2];
+						counts.put(canonicalMove, count);
+					}
+					count[0]++;
+					count[1] += status == GameEngine.BLUE_WINS ? (colour == 1 ? 2 : 0) : status == GameEngine.RED_WINS ?
+							(colour == 2 ? 2 : 0) : 1;
+				}
+				if(!game.apply(move)){
+					throw new IOException("Illegal move " + Move.toString(move));
+				}
+			}
+			games++;
+		}
+
+		/**
+		 * Counts every game of an archive.
+		 * @param archive	The archive
+		 * @throws IOException if a game of the archive is not legal
+		 */
+		public void add(GameArchive archive) throws IOException{
+			for(long id = 0; id < archive.size(); id++){
+				GameEngine game = archive.replay(id, 0);
+				if(game.getBoard().getTopology() == topology){
+					add(game, archive.moves(id), archive.status(id));
+				}
+			}
+		}
+
+		/**
+		 * Returns the number of games counted.
+		 * @return	The number of games
+		 */
+		public int getGames(){
+			return games;
+		}
+
+		/**
+		 * Returns the number of positions counted.
+		 * @return	The number of different canonical positions
+		 */
+		public int getPositions(){
+			return positions.size();
+		}
+
+		/**
+		 * Writes the book, leaving out the moves played in fewer than a number of games.
+		 * @param file		The file
+		 * @param minGames	The fewest games a move must have been played in
+		 * @return			The number of entries written
+		 * @throws IOException if the file cannot be written
+		 */
+		public int write(Path file, int minGames) throws IOException{
+			long[] keys = new long[positions.size()];
+			int k = 0;
+			for(long key : positions.keySet()){
+				keys[k++] = key;
+			}
+			Arrays.sort(keys);
+			List<int[]> moves = new ArrayList<int[]>();	//move, games, points
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(topology.getN()).putInt(topology.getVariant()).putLong(0).putLong(0);
+			long written = 0;
+			try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING)){
+				for(long key : keys){
+					moves.clear();
+					for(Map.Entry<Integer, int[]> entry : positions.get(key).entrySet()){
+						if(entry.getValue()[0] >= minGames){
+							moves.add(new int[]{entry.getKey(), entry.getValue()[0], entry.getValue()[1]});
+						}
+					}
+					for(int[] move : moves){
+						if(buffer.remaining() < ENTRY_SIZE){
+							flush(channel, buffer);
+						}
+						buffer.putLong(key).putInt(move[0]);
+						buffer.putShort((short) Math.min(move[1], Short.MAX_VALUE)).putShort((short) Math.min(move[2], Short.MAX_VALUE));
+						written++;
+					}
+				}
+				flush(channel, buffer);
+				buffer.putLong(written).flip();
+				channel.write(buffer, 16);
+			}
+			return (int) written;
+		}
+
+		/**
+		 * Writes what a buffer holds to the end of a channel, and clears the buffer.
+		 * @param channel	The channel
+		 * @param buffer	The buffer
+		 * @throws IOException if the channel cannot be written
+		 */
+		private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException{
+			buffer.flip();
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Builds a book from the games of an archive.
+	 * @param args	The options described in the class comment
+	 * @throws IOException if the archive cannot be read or the book written
+	 */
+	public static void main(String[] args) throws IOException{
+		String archiveFile = null;
+		int plies = Integer.MAX_VALUE, minGames = 2;
+		Path out = DEFAULT_FILE;
+		for(int i = 0; i < args.length; i++){
+			switch(args[i]){
+			case "-archive":	archiveFile = args[++i]; break;
+			case "-plies":		plies = Integer.parseInt(args[++i]); break;
+			case "-min":		minGames = Integer.parseInt(args[++i]); break;
+			case "-out":		out = Paths.get(args[++i]); break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+		if(archiveFile == null){
+			System.err.println("Usage: java sixmensmorris.OpeningBook -archive file [-plies P] [-min G] [-out file]");
+			return;
+		}
+		try(GameArchive archive = new GameArchive(Paths.get(archiveFile))){
+			if(archive.size() == 0){
+				System.err.println("No games in " + archiveFile);
+				return;
+			}
+			BoardTopology topology = archive.replay(0, 0).getBoard().getTopology();
+			Builder builder = new Builder(topology, plies);
+			builder.add(archive);
+			int entries = builder.write(out, minGames);
+			System.out.printf("%d games, %d positions, %d moves played in at least %d games, written to %s%n", builder.getGames(),
+					builder.getPositions(), entries, minGames, out);
+		}
+	}
+
+}
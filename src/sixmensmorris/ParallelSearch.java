@@ -0,0 +1,262 @@
+package sixmensmorris;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs several searches of the same position at once, one per thread, that share a transposition table (Lazy SMP).
+ *
+ * The calling thread runs the main search, whose move is the one played. Each helper thread runs its own Search on its own copy
+ * of the board, starting from a different depth, so that the helpers fill the shared table with results the main search can
+ * use. When the main search finishes, the helpers are stopped.
+ *
+ * With one thread this is the same as a single Search. The total number of nodes of all threads is reported, so the speedup
+ * from more threads can be measured in nodes per second.
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public class ParallelSearch {
+
+	public static final int MAX_THREADS = 256;
+
+	private final BoardTopology topology;
+	private final TranspositionTable table;
+	private Search[] searches;			//searches[0] is the main search, the others are helpers
+	private ExecutorService helpers;
+	private final Future<?>[] running;
+	private long nodes, elapsed;
+
+	/**
+	 * Constructs a parallel search with a given number of threads.
+	 * @param topology	The shape and rules of the board
+	 * @param table		The transposition table shared by all threads
+	 * @param threads	The number of threads, at least 1
+	 */
+	public ParallelSearch(BoardTopology topology, TranspositionTable table, int threads){
+		this.topology = topology;
+		this.table = table;
+		this.running = new Future<?>[MAX_THREADS];
+		this.searches = new Search[] {new Search(topology, table)};
+		searches[0].setAgesTable(false);
+		setThreads(threads);
+	}
+
+	/**
+	 * Changes the number of threads. The depth and time budget of the main search are kept.
+	 * @param threads	The number of threads, at least 1
+	 */
+	public void setThreads(int threads){
+		threads = Math.max(1, Math.min(threads, MAX_THREADS));
+		shutdown();
+		Search main = searches[0];
+		searches = new Search[threads];
+		searches[0] = main;
+		for(int i = 1; i < threads; i++){
+			searches[i] = new Search(topology, table);
+			searches[i].setFirstDepth(1 + i % 2); //Half of the helpers start one ply deeper
+			searches[i].setAgesTable(false);
+		}
+		setDepth(main.getDepth());
+		setTimeBudget(main.getTimeBudget());
+
+		if(threads > 1){
+			helpers = Executors.newFixedThreadPool(threads - 1, new ThreadFactory(){
+				private int count = 0;
+				public Thread newThread(Runnable r){
+					Thread thread = new Thread(r, "search-helper-" + (++count));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the number of threads.
+	 * @return	The number of threads searching, including the calling thread
+	 */
+	public int getThreads(){
+		return this.searches.length;
+	}
+
+	/**
+	 * Sets the depth of every search.
+	 * @param depth	The number of plies to search
+	 * @see Search#setDepth
+	 */
+	public void setDepth(int depth){
+		for(Search search : searches){
+			search.setDepth(depth);
+		}
+	}
+
+	/**
+	 * Returns the depth of the search.
+	 * @return	The number of plies searched
+	 */
+	public int getDepth(){
+		return searches[0].getDepth();
+	}
+
+	/**
+	 * Sets the time budget of every search.
+	 * @param millis	The time budget in milliseconds, or 0 for none
+	 * @see Search#setTimeBudget
+	 */
+	public void setTimeBudget(long millis){
+		for(Search search : searches){
+			search.setTimeBudget(millis);
+		}
+	}
+
+	/**
+	 * Returns the time budget of the search.
+	 * @return	The time budget in milliseconds, or 0 if there is none
+	 */
+	public long getTimeBudget(){
+		return searches[0].getTimeBudget();
+	}
+
+	/**
+	 * Returns the transposition table shared by all threads.
+	 * @return	The transposition table
+	 */
+	public TranspositionTable getTable(){
+		return this.table;
+	}
+
+	/**
+	 * Finds the best move in a position using every thread.
+	 * @param position		The board to search, which is not changed
+	 * @param blueInHand	The number of pieces blue still has to place
+	 * @param redInHand		The number of pieces red still has to place
+	 * @param colour		The colour to move (1 = blue, 2 = red)
+	 * @param mustRemove	Whether the colour has just formed a mill and only has to choose a piece to remove
+	 * @return				The best move found by the main search, or Move.NONE if there is no legal move
+	 * @see Search#search
+	 */
+	public int search(final Board position, final int blueInHand, final int redInHand, final int colour, final boolean mustRemove){
+		long start = System.nanoTime();
+		table.newSearch();	//Once per move for every thread, before any of them stores an entry
+		for(int i = 1; i < searches.length; i++){
+			final Search helper = searches[i];
+			helper.clearStop();
+			running[i] = helpers.submit(new Runnable(){
+				public void run(){
+					helper.search(position, blueInHand, redInHand, colour, mustRemove);
+				}
+			});
+		}
+
+		int move = searches[0].search(position, blueInHand, redInHand, colour, mustRemove);
+
+		for(int i = 1; i < searches.length; i++){
+			searches[i].stop();
+		}
+		for(int i = 1; i < searches.length; i++){
+			try{
+				running[i].get();
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			} catch(ExecutionException e){
+				throw new IllegalStateException("Search helper failed", e.getCause());
+			}
+			running[i] = null;
+		}
+		this.elapsed = System.nanoTime() - start;
+		this.nodes = 0;
+		for(Search search : searches){
+			this.nodes += search.getNodes();
+		}
+		return move;
+	}
+
+	/**
+	 * Returns the score of the last search.
+	 * @return	The score of the main search
+	 * @see Search#getScore
+	 */
+	public int getScore(){
+		return searches[0].getScore();
+	}
+
+	/**
+	 * Returns the depth completed by the main search.
+	 * @return	The number of plies
+	 */
+	public int getCompletedDepth(){
+		return searches[0].getCompletedDepth();
+	}
+
+	/**
+	 * Returns the number of positions visited by all threads in the last search.
+	 * @return	The number of nodes
+	 */
+	public long getNodes(){
+		return this.nodes;
+	}
+
+	/**
+	 * Returns the time the last search took.
+	 * @return	The time in milliseconds
+	 */
+	public long getElapsed(){
+		return this.elapsed / 1000000L;
+	}
+
+	/**
+	 * Returns the speed of the last search over all threads.
+	 * @return	The number of nodes per second
+	 */
+	public long getNodesPerSecond(){
+		return this.elapsed == 0 ? 0 : this.nodes * 1000000000L / this.elapsed;
+	}
+
+	/**
+	 * Stops the helper threads. The search can still be used, with the calling thread only, until setThreads is called again.
+	 */
+	public void shutdown(){
+		if(helpers != null){
+			helpers.shutdownNow();
+			helpers = null;
+			Search main = searches[0];
+			searches = new Search[] {main};
+		}
+	}
+
+	/**
+	 * Measures the speed of the search from the start position with 1, 2, 4, ... threads up to the number of processors, and
+	 * prints the nodes per second and the speedup over one thread.
+	 * @param args	Optional: the time per search in milliseconds, and the number of layers
+	 */
+	public static void main(String[] args){
+		long millis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+		int N = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		BoardTopology topology = BoardTopology.get(N);
+		Board board = new Board(topology);
+		int processors = Runtime.getRuntime().availableProcessors();
+		long single = 0;
+		for(int threads = 1; ; threads = Math.min(threads * 2, processors)){
+			ParallelSearch search = new ParallelSearch(topology, new TranspositionTable(64), threads);
+			search.setDepth(Search.MAX_PLY - 1);
+			search.setTimeBudget(millis);
+			int move = search.search(board, topology.getVariant(), topology.getVariant(), 1, false);
+			long nps = search.getNodesPerSecond();
+			if(threads == 1){
+				single = nps;
+			}
+			System.out.printf("%2d threads: %s depth %d, %d nodes in %d ms, %d nodes/s, speedup %.2f%n", threads,
+					Move.toString(move), search.getCompletedDepth(), search.getNodes(), search.getElapsed(), nps,
+					single == 0 ? 0.0 : (double) nps / single);
+			search.shutdown();
+			if(threads == processors){
+				break;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,270 @@
+package sixmensmorris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Counts the positions reached by playing every legal move to a fixed depth (performance test, or perft).
+ *
+ * The counts check that MoveGenerator and Board.makeMove/unmakeMove follow the rules, and the time they take measures how fast
+ * moves are generated. A move is a whole turn as generated by MoveGenerator, so a move that forms a mill counts once for every
+ * piece it can remove. A position where the colour to move has placed all its pieces and has fewer than three left, or has no
+ * move, ends the game and has no children.
+ *
+ * The counts can be split by root move (divide), which shows which move a wrong count comes from, and the root moves can be
+ * shared among several threads, each with its own board.
+ *
+ * Usage: java sixmensmorris.Perft [-depth D] [-N layers] [-variant 6|9|12] [-position states] [-hand blue,red] [-colour 1|2]
+ * [-threads T] [-divide] [-verify]
+ *
+ * The states of a position are one digit per point (0 = empty, 1 = blue, 2 = red). With -verify, the counts of the start
+ * position of six men's morris are checked against REFERENCE_COUNTS.
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public class Perft {
+
+	/**
+	 * REFERENCE_COUNTS[d] is the number of positions at depth d from the start position of six men's morris (2 layers, six pieces
+	 * each, blue to move).
+	 */
+	public static final long[] REFERENCE_COUNTS = {
+		1L,
+		16L,
+		240L,
+		3360L,
+		43680L,
+		531648L,
+		6024960L,
+		65614176L,
+		664986240L
+	};
+
+	private final Board board;
+	private final int[] moves;
+	private final int maxMoves;
+
+	/**
+	 * Constructs a perft counter that works on its own copy of a position.
+	 * @param position		The position to count from, which is not changed
+	 * @param blueInHand	The number of pieces blue still has to place
+	 * @param redInHand		The number of pieces red still has to place
+	 */
+	public Perft(Board position, int blueInHand, int redInHand){
+		this.board = new Board(position.getTopology(), position.getBoardState().clone());
+		this.board.setInHand(blueInHand, redInHand);
+		this.maxMoves = MoveGenerator.maxMoves(position.getTopology());
+		this.moves = new int[Search.MAX_PLY * maxMoves];
+	}
+
+	/**
+	 * Counts the positions at a given depth.
+	 * @param colour	The colour to move (1 = blue, 2 = red)
+	 * @param depth		The number of moves to play, less than Search.MAX_PLY
+	 * @return			The number of positions reached
+	 */
+	public long count(int colour, int depth){
+		return perft(colour, depth, 0);
+	}
+
+	/**
+	 * Counts the positions at a given depth for every root move.
+	 * @param colour	The colour to move (1 = blue, 2 = red)
+	 * @param depth		The number of moves to play, at least 1
+	 * @param rootMoves	Receives the root moves, must have room for MoveGenerator.maxMoves moves
+	 * @param counts	Receives the count of each root move
+	 * @return			The number of root moves
+	 */
+	public int divide(int colour, int depth, int[] rootMoves, long[] counts){
+		int count = generate(colour, rootMoves, 0);
+		for(int i = 0; i < count; i++){
+			counts[i] = countAfter(rootMoves[i], colour, depth);
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the positions at a given depth after one root move.
+	 * @param move		The root move
+	 * @param colour	The colour that plays it
+	 * @param depth		The depth counted from before the move, at least 1
+	 * @return			The number of positions reached
+	 */
+	private long countAfter(int move, int colour, int depth){
+		board.makeMove(move, colour);
+		long nodes = perft(3 - colour, depth - 1, 1);
+		board.unmakeMove(move, colour);
+		return nodes;
+	}
+
+	/**
+	 * Counts the positions at a given depth below the current position.
+	 * @param colour	The colour to move
+	 * @param depth		The number of moves left to play
+	 * @param ply		The distance from the root, which selects the part of the move buffer to use
+	 * @return			The number of positions reached
+	 */
+	private long perft(int colour, int depth, int ply){
+		if(depth == 0){
+			return 1;
+		}
+		int offset = ply * maxMoves;
+		int count = generate(colour, moves, offset);
+		if(depth == 1){
+			return count;
+		}
+		long nodes = 0;
+		for(int i = offset; i < offset + count; i++){
+			int move = moves[i];
+			board.makeMove(move, colour);
+			nodes += perft(3 - colour, depth - 1, ply + 1);
+			board.unmakeMove(move, colour);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Writes the moves of the current position, or none if the game is over.
+	 * @param colour	The colour to move
+	 * @param buffer	The buffer
+	 * @param offset	Where to write the moves
+	 * @return			The number of moves written
+	 */
+	private int generate(int colour, int[] buffer, int offset){
+		if(board.getInHand(colour) == 0 && board.getPieceCount(colour) < 3){
+			return 0;
+		}
+		return MoveGenerator.generate(board, colour, buffer, offset);
+	}
+
+	/**
+	 * Counts the positions at a given depth, sharing the root moves among several threads.
+	 * @param position		The position to count from, which is not changed
+	 * @param blueInHand	The number of pieces blue still has to place
+	 * @param redInHand		The number of pieces red still has to place
+	 * @param colour		The colour to move (1 = blue, 2 = red)
+	 * @param depth			The number of moves to play, at least 1
+	 * @param threads		The number of threads
+	 * @param rootMoves		Receives the root moves, must have room for MoveGenerator.maxMoves moves
+	 * @param counts		Receives the count of each root move
+	 * @return				The number of root moves
+	 */
+	public static int divide(final Board position, final int blueInHand, final int redInHand, final int colour, final int depth,
+			int threads, int[] rootMoves, long[] counts){
+		int count = new Perft(position, blueInHand, redInHand).generate(colour, rootMoves, 0);
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		try{
+			List<Future<Long>> results = new ArrayList<Future<Long>>(count);
+			for(int i = 0; i < count; i++){
+				final int move = rootMoves[i];
+				results.add(pool.submit(new Callable<Long>(){
+					public Long call(){
+						return new Perft(position, blueInHand, redInHand).countAfter(move, colour, depth);
+					}
+				}));
+			}
+			for(int i = 0; i < count; i++){
+				counts[i] = results.get(i).get();
+			}
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Perft interrupted", e);
+		} catch(ExecutionException e){
+			throw new IllegalStateException("Perft failed", e.getCause());
+		} finally{
+			pool.shutdownNow();
+		}
+		return count;
+	}
+
+	/**
+	 * Runs perft from the command line and prints the count for every depth up to the given one, with the speed of each.
+	 * @param args	The options described in the class comment
+	 */
+	public static void main(String[] args){
+		int depth = 6, N = 2, variant = BoardTopology.SIX_MENS_MORRIS, threads = 1, colour = 1;
+		int blueInHand = -1, redInHand = -1;
+		String position = null;
+		boolean divide = false, verify = false;
+		for(int i = 0; i < args.length; i++){
+			switch(args[i]){
+			case "-depth":		depth = Integer.parseInt(args[++i]); break;
+			case "-N":			N = Integer.parseInt(args[++i]); break;
+			case "-variant":	variant = Integer.parseInt(args[++i]); break;
+			case "-position":	position = args[++i]; break;
+			case "-colour":		colour = Integer.parseInt(args[++i]); break;
+			case "-threads":	threads = Integer.parseInt(args[++i]); break;
+			case "-divide":		divide = true; break;
+			case "-verify":		verify = true; break;
+			case "-hand":
+				String[] hand = args[++i].split(",");
+				blueInHand = Integer.parseInt(hand[0]);
+				redInHand = Integer.parseInt(hand[1]);
+				break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+		if(verify){
+			N = 2;
+			variant = BoardTopology.SIX_MENS_MORRIS;
+			position = null;
+			blueInHand = redInHand = -1;
+			colour = 1;
+			depth = Math.min(depth, REFERENCE_COUNTS.length - 1);
+		}
+
+		BoardTopology topology = BoardTopology.get(N, variant);
+		int[] pieces = new int[topology.getPoints()];
+		if(position != null){
+			if(position.length() != pieces.length){
+				System.err.println("A position needs " + pieces.length + " points");
+				return;
+			}
+			for(int i = 0; i < pieces.length; i++){
+				pieces[i] = position.charAt(i) - '0';
+			}
+		}
+		Board board = new Board(topology, pieces);
+		if(blueInHand < 0){
+			blueInHand = redInHand = position == null ? variant : 0;
+		}
+
+		boolean failed = false;
+		int[] rootMoves = new int[MoveGenerator.maxMoves(topology)];
+		long[] counts = new long[rootMoves.length];
+		for(int d = 1; d <= depth; d++){
+			long start = System.nanoTime();
+			int roots = divide(board, blueInHand, redInHand, colour, d, threads, rootMoves, counts);
+			long nodes = 0;
+			for(int i = 0; i < roots; i++){
+				nodes += counts[i];
+			}
+			long elapsed = Math.max(1, System.nanoTime() - start);
+			String check = "";
+			if(verify){
+				boolean ok = nodes == REFERENCE_COUNTS[d];
+				failed |= !ok;
+				check = ok ? "  ok" : "  FAILED, expected " + REFERENCE_COUNTS[d];
+			}
+			System.out.printf("perft %2d: %,15d  %8d ms  %,13d nodes/s%s%n", d, nodes, elapsed / 1000000L,
+					nodes * 1000000000L / elapsed, check);
+			if(divide && d == depth){
+				for(int i = 0; i < roots; i++){
+					System.out.println("  " + Move.toString(rootMoves[i]) + ": " + counts[i]);
+				}
+			}
+		}
+		if(failed){
+			System.exit(1);
+		}
+	}
+
+}
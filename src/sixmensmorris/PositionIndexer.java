@@ -0,0 +1,198 @@
+package sixmensmorris;
+
+/**
+ * Numbers the positions of a board densely: for given numbers of blue and red pieces, every arrangement of them on the points
+ * gets a different index from 0 to size(blue, red) - 1, so the index can be used as an offset into an array that holds a few
+ * bits per position.
+ *
+ * The index is made with the combinatorial number system. The points holding blue pieces, c1 &lt; c2 &lt; ... &lt; cb, have the rank
+ * C(c1, 1) + C(c2, 2) + ... + C(cb, b) among the C(points, b) ways to place them. The red pieces are ranked the same way among
+ * the points left empty by blue, and
+ * <pre>
+ * index = blueRank * C(points - blue, red) + redRank
+ * </pre>
+ * Both rank and unrank look at every point once and allocate nothing. The side to move and the pieces in hand are not part of
+ * the index.
+ *
+ * Usage: java sixmensmorris.PositionIndexer [-N layers] [-variant 6|9|12] [-verify]
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public final class PositionIndexer {
+
+	private final int points;
+	private final int maxPieces;
+	private final long[][] binomial;	//binomial[n][k] = C(n, k) for k up to maxPieces
+
+	/**
+	 * Constructs an indexer for boards of a given topology, with up to as many pieces of each colour as the variant has.
+	 * @param topology	The shape and rules of the board
+	 * @throws IllegalArgumentException if the number of positions does not fit in a long
+	 */
+	public PositionIndexer(BoardTopology topology){
+		this.points = topology.getPoints();
+		this.maxPieces = Math.min(topology.getVariant(), points);
+		this.binomial = new long[points + 1][maxPieces + 1];
+		for(int n = 0; n <= points; n++){
+			binomial[n][0] = 1;
+			for(int k = 1; k <= Math.min(n, maxPieces); k++){
+				long sum = binomial[n - 1][k - 1] + (k < n ? binomial[n - 1][k] : 0);
+				binomial[n][k] = sum < 0 ? Long.MAX_VALUE : sum;
+			}
+		}
+		for(int blue = 0; blue <= maxPieces; blue++){
+			for(int red = 0; red <= Math.min(maxPieces, points - blue); red++){
+				long a = binomial[points][blue], b = binomial[points - blue][red];
+				if(a == Long.MAX_VALUE || b == Long.MAX_VALUE || a > Long.MAX_VALUE / b){
+					throw new IllegalArgumentException("Too many positions to index on " + points + " points");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of points.
+	 * @return	The number of points of the board
+	 */
+	public int getPoints(){
+		return points;
+	}
+
+	/**
+	 * Returns the largest number of pieces of one colour that can be indexed.
+	 * @return	The number of pieces of the variant
+	 */
+	public int getMaxPieces(){
+		return maxPieces;
+	}
+
+	/**
+	 * Returns the number of positions with given numbers of pieces.
+	 * @param blue	The number of blue pieces
+	 * @param red	The number of red pieces
+	 * @return		The number of positions, so the largest index plus one
+	 */
+	public long size(int blue, int red){
+		if(blue < 0 || red < 0 || blue > maxPieces || red > maxPieces || blue + red > points){
+			return 0;
+		}
+		return binomial[points][blue] * binomial[points - blue][red];
+	}
+
+	/**
+	 * Returns the index of a position among the positions with the same numbers of pieces.
+	 * @param board	The board
+	 * @return		The index
+	 */
+	public long rank(Board board){
+		return rank(board.getBoardState());
+	}
+
+	/**
+	 * Returns the index of a position among the positions with the same numbers of pieces.
+	 * @param pieces	The state of every point (0 = empty, 1 = blue, 2 = red)
+	 * @return			The index
+	 */
+	public long rank(int[] pieces){
+		return rank(pieces, 1);
+	}
+
+	/**
+	 * Returns the index of a position seen from one colour: its pieces are ranked as blue and the other colour's as red.
+	 * @param pieces	The state of every point (0 = empty, 1 = blue, 2 = red)
+	 * @param colour	The colour ranked as blue
+	 * @return			The index
+	 */
+	public long rank(int[] pieces, int colour){
+		long blueRank = 0, redRank = 0;
+		int blue = 0, red = 0, free = 0;	//free: the number of points before this one without a blue piece
+		for(int i = 0; i < points; i++){
+			int state = pieces[i];
+			if(state == colour){
+				blueRank += binomial[i][++blue];
+			} else{
+				if(state != 0){
+					redRank += binomial[free][++red];
+				}
+				free++;
+			}
+		}
+		return blueRank * binomial[points - blue][red] + redRank;
+	}
+
+	/**
+	 * Writes the position with an index.
+	 * @param index		The index, from 0 to size(blue, red) - 1
+	 * @param blue		The number of blue pieces
+	 * @param red		The number of red pieces
+	 * @param pieces	Receives the state of every point
+	 */
+	public void unrank(long index, int blue, int red, int[] pieces){
+		long redCount = binomial[points - blue][red];
+		long blueRank = index / redCount, redRank = index % redCount;
+		int free = points - blue;
+		for(int i = points - 1; i >= 0; i--){
+			if(blue > 0 && binomial[i][blue] <= blueRank){
+				blueRank -= binomial[i][blue];
+				blue--;
+				pieces[i] = 1;
+			} else{
+				pieces[i] = 0;
+			}
+		}
+		for(int i = points - 1; i >= 0; i--){
+			if(pieces[i] == 1){
+				continue;
+			}
+			free--;
+			if(red > 0 && binomial[free][red] <= redRank){
+				redRank -= binomial[free][red];
+				red--;
+				pieces[i] = 2;
+			}
+		}
+	}
+
+	/**
+	 * Prints the number of positions for every number of pieces, and with -verify unranks and ranks every index again.
+	 * @param args	The options described in the class comment
+	 */
+	public static void main(String[] args){
+		int N = 2, variant = BoardTopology.SIX_MENS_MORRIS;
+		boolean verify = false;
+		for(int i = 0; i < args.length; i++){
+			switch(args[i]){
+			case "-N":			N = Integer.parseInt(args[++i]); break;
+			case "-variant":	variant = Integer.parseInt(args[++i]); break;
+			case "-verify":		verify = true; break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+		PositionIndexer indexer = new PositionIndexer(BoardTopology.get(N, variant));
+		int[] pieces = new int[indexer.getPoints()];
+		long total = 0, failed = 0;
+		long start = System.nanoTime();
+		for(int blue = 0; blue <= indexer.getMaxPieces(); blue++){
+			for(int red = 0; red <= indexer.getMaxPieces(); red++){
+				long size = indexer.size(blue, red);
+				total += size;
+				for(long index = 0; verify && index < size; index++){
+					indexer.unrank(index, blue, red, pieces);
+					if(indexer.rank(pieces) != index){
+						failed++;
+					}
+				}
+				System.out.printf("%2d blue %2d red: %,d%n", blue, red, size);
+			}
+		}
+		System.out.printf("%,d positions%s%n", total, verify ? String.format(", %d failed in %d ms", failed,
+				(System.nanoTime() - start) / 1000000) : "");
+		if(failed > 0){
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,470 @@
+package sixmensmorris;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Finds the game-theoretic value of a position, including positions of the placing phase, with depth-first proof-number search
+ * (df-pn).
+ *
+ * A proof asks whether one player, the attacker, can force a win. At a position where the attacker moves one good move is
+ * enough (an OR node), where the defender moves every move must be answered (an AND node). Every position has a proof number,
+ * the fewest positions still to be proved to prove it, and a disproof number, the same to disprove it. The search always goes
+ * down to the most-proving position, and stays below a position until its numbers pass the thresholds given by its parent,
+ * keeping the numbers in a transposition table of fixed size. A position is a win for the player to move if the proof with that
+ * player as attacker succeeds, a loss if the proof with the other player succeeds, and a draw if both fail.
+ *
+ * The placing phase cannot repeat a position, since every turn places a piece. The game ends only in the moving phase, where
+ * a Tablebase, if the solver has one, gives the exact value of every position it holds. Positions of the moving phase that are
+ * not in the tablebase are searched too, a position repeated on the current line counting as a draw. The value of such a
+ * position may then depend on the line that led to it, so the values found are exact when the tablebase holds every position
+ * of the moving phase that can be reached.
+ *
+ * Usage: java sixmensmorris.ProofSolver [-N layers] [-variant 6|9|12] [-hash MB] [-tablebase file] [-time seconds] [-nodes n]
+ * [-moves "p0 p1 ..."]
+ *
+ * @author Zichen Jiang
+ * @version 1
+ * @see Tablebase
+ */
+public class ProofSolver {
+
+	public static final int DEFAULT_HASH_MB = 256;
+	public static final int MAX_DEPTH = 1024;			//A line longer than this is counted as a draw
+
+	private static final int INFINITY = Integer.MAX_VALUE / 2;
+	private static final long ATTACKER_KEY = BoardTopology.zobrist(-2);
+
+	private final BoardTopology topology;
+	private final Table table;
+	private Tablebase tablebase;
+	private long nodeLimit = Long.MAX_VALUE;
+	private long timeLimit = 0;
+	private long deadline;
+	private boolean stopped;
+
+	private Board board;
+	private int attacker;
+	private long nodes;
+	private final int[][] moves = new int[MAX_DEPTH][];
+	private final int[][] childValues = new int[MAX_DEPTH][];	//The value of every child at the end of the game, or UNKNOWN
+	private final long[] path = new long[MAX_DEPTH];			//The keys of the positions of the current line
+	private final int[] scratch;
+	private int foundPn, foundDn;								//The numbers of the last position looked up
+
+	/**
+	 * Constructs a solver.
+	 * @param topology	The shape and rules of the board
+	 * @param hashMB	The size of the transposition table in megabytes
+	 */
+	public ProofSolver(BoardTopology topology, int hashMB){
+		this.topology = topology;
+		this.table = new Table(hashMB);
+		this.scratch = new int[MoveGenerator.maxMoves(topology)];
+	}
+
+	/**
+	 * Gives the solver a tablebase for the moving phase.
+	 * @param tablebase	The tablebase, or null
+	 */
+	public void setTablebase(Tablebase tablebase){
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * Sets how many positions a proof may expand before it gives up.
+	 * @param nodes	The number of positions, or Long.MAX_VALUE for no limit
+	 */
+	public void setNodeLimit(long nodes){
+		this.nodeLimit = nodes;
+	}
+
+	/**
+	 * Sets how long a proof may take before it gives up.
+	 * @param millis	The time in milliseconds, or 0 for no limit
+	 */
+	public void setTimeLimit(long millis){
+		this.timeLimit = millis;
+	}
+
+	/**
+	 * Returns the number of positions expanded since the solver was made.
+	 * @return	The number of positions
+	 */
+	public long getNodes(){
+		return nodes;
+	}
+
+	/**
+	 * Returns the transposition table.
+	 * @return	The table, whose counters show how full it is
+	 */
+	public Table getTable(){
+		return table;
+	}
+
+	/**
+	 * Finds the value of a position.
+	 * @param position	The board, with the pieces left to place; it is not changed
+	 * @param colour	The colour to move
+	 * @return			Tablebase.WIN, DRAW or LOSS for the player to move, or Tablebase.UNKNOWN if a proof gave up
+	 */
+	public int solve(Board position, int colour){
+		int win = prove(position, colour, colour);
+		if(win != Tablebase.LOSS){
+			return win == Tablebase.WIN ? Tablebase.WIN : Tablebase.UNKNOWN;
+		}
+		int loss = prove(position, colour, 3 - colour);
+		return loss == Tablebase.WIN ? Tablebase.LOSS : loss == Tablebase.LOSS ? Tablebase.DRAW : Tablebase.UNKNOWN;
+	}
+
+	/**
+	 * Proves or disproves that a player can force a win.
+	 * @param position	The board, with the pieces left to place; it is not changed
+	 * @param colour	The colour to move
+	 * @param attacker	The colour that tries to win
+	 * @return			Tablebase.WIN if the attacker wins, Tablebase.LOSS if it cannot, Tablebase.UNKNOWN if the proof gave up
+	 */
+	public int prove(Board position, int colour, int attacker){
+		this.board = new Board(topology, position.getBoardState().clone());
+		board.setInHand(position.getInHand(1), position.getInHand(2));
+		this.attacker = attacker;
+		this.stopped = false;
+		this.deadline = timeLimit > 0 ? System.currentTimeMillis() + timeLimit : Long.MAX_VALUE;
+		int value = evaluate(colour);
+		if(value != Tablebase.UNKNOWN){
+			return (value == Tablebase.WIN) == (colour == attacker) && value != Tablebase.DRAW ? Tablebase.WIN : Tablebase.LOSS;
+		}
+		long limit = nodes + nodeLimit < 0 ? Long.MAX_VALUE : nodes + nodeLimit;
+		mid(0, colour, INFINITY, INFINITY, limit);
+		lookup(key(colour));
+		return foundPn == 0 ? Tablebase.WIN : foundDn == 0 ? Tablebase.LOSS : Tablebase.UNKNOWN;
+	}
+
+	/**
+	 * Returns a move that keeps the win of the last proof that succeeded, read from the transposition table.
+	 * @param position	The board the proof was made on
+	 * @param colour	The colour to move, the attacker of the proof
+	 * @return			The packed move, or Move.NONE if none is known
+	 */
+	public int winningMove(Board position, int colour){
+		this.board = new Board(topology, position.getBoardState().clone());
+		board.setInHand(position.getInHand(1), position.getInHand(2));
+		this.attacker = colour;
+		int count = MoveGenerator.generate(board, colour, scratch, 0);
+		int[] candidates = Arrays.copyOf(scratch, count);
+		for(int move : candidates){
+			board.makeMove(move, colour);
+			int value = evaluate(3 - colour);
+			lookup(key(3 - colour));
+			board.unmakeMove(move, colour);
+			if(value == Tablebase.LOSS || value == Tablebase.UNKNOWN && foundPn == 0){
+				return move;
+			}
+		}
+		return Move.NONE;
+	}
+
+	/**
+	 * Returns the key of the position on the board in the transposition table.
+	 * @param colour	The colour to move
+	 * @return			The key
+	 */
+	private long key(int colour){
+		long key = board.getHash() ^ BoardTopology.zobrist(Integer.MAX_VALUE - (board.getInHand(1) << 8 | board.getInHand(2)));
+		if(colour == 2){
+			key ^= topology.getSideKey();
+		}
+		return attacker == 2 ? key ^ ATTACKER_KEY : key;
+	}
+
+	/**
+	 * Returns the value of the position on the board if the game has ended or the tablebase holds it.
+	 * @param colour	The colour to move
+	 * @return			Tablebase.WIN, DRAW or LOSS for the player to move, or Tablebase.UNKNOWN
+	 */
+	private int evaluate(int colour){
+		if(board.getInHand(1) > 0 || board.getInHand(2) > 0){
+			return MoveGenerator.generate(board, colour, scratch, 0) == 0 ? Tablebase.LOSS : Tablebase.UNKNOWN;
+		}
+		if(board.getPieceCount(1) < Tablebase.MIN_PIECES){
+			return colour == 1 ? Tablebase.LOSS : Tablebase.WIN;
+		} else if(board.getPieceCount(2) < Tablebase.MIN_PIECES){
+			return colour == 2 ? Tablebase.LOSS : Tablebase.WIN;
+		}
+		int value = tablebase == null ? Tablebase.UNKNOWN : tablebase.probe(board, colour);
+		if(value == Tablebase.UNKNOWN && MoveGenerator.generate(board, colour, scratch, 0) == 0){
+			value = Tablebase.LOSS;
+		}
+		return value;
+	}
+
+	/**
+	 * Looks up a position, leaving its numbers in foundPn and foundDn: 1 and 1 if it is not in the table.
+	 * @param key	The key of the position
+	 */
+	private void lookup(long key){
+		int entry = table.find(key);
+		foundPn = entry < 0 ? 1 : table.pn[entry];
+		foundDn = entry < 0 ? 1 : table.dn[entry];
+	}
+
+	/**
+	 * Searches below the position on the board until its proof number reaches thresholdPn or its disproof number reaches
+	 * thresholdDn, and stores its numbers.
+	 * @param depth			The number of turns from the root
+	 * @param colour		The colour to move
+	 * @param thresholdPn	The proof number to stop at
+	 * @param thresholdDn	The disproof number to stop at
+	 * @param limit			The number of expanded positions to give up at
+	 * @return				The number of positions expanded
+	 */
+	private long mid(int depth, int colour, int thresholdPn, int thresholdDn, long limit){
+		long key = key(colour);
+		path[depth] = key;
+		if(moves[depth] == null){
+			moves[depth] = new int[scratch.length];
+			childValues[depth] = new int[scratch.length];
+		}
+		int[] buffer = moves[depth], values = childValues[depth];
+		int count = MoveGenerator.generate(board, colour, buffer, 0);
+		boolean moving = board.getInHand(1) == 0 && board.getInHand(2) == 0;
+		for(int i = 0; i < count; i++){
+			board.makeMove(buffer[i], colour);
+			values[i] = evaluate(3 - colour);
+			if(values[i] == Tablebase.UNKNOWN && (depth + 1 == MAX_DEPTH || moving && repeats(depth, key(3 - colour)))){
+				values[i] = Tablebase.DRAW;
+			}
+			board.unmakeMove(buffer[i], colour);
+		}
+		boolean or = colour == attacker;
+		long work = 1;
+		nodes++;
+		while(true){
+			//The numbers of the position from those of its children, and the child to search
+			long sum = 0;
+			int best = -1, bestPn = 0, bestDn = 0, bestMin = INFINITY, second = INFINITY;
+			boolean infinite = false;
+			for(int i = 0; i < count; i++){
+				int pn, dn;
+				if(values[i] == Tablebase.UNKNOWN){
+					board.makeMove(buffer[i], colour);
+					lookup(key(3 - colour));
+					board.unmakeMove(buffer[i], colour);
+					pn = foundPn;
+					dn = foundDn;
+				} else{
+					boolean attackerWins = values[i] != Tablebase.DRAW && (values[i] == Tablebase.WIN) == (3 - colour == attacker);
+					pn = attackerWins ? 0 : INFINITY;
+					dn = attackerWins ? INFINITY : 0;
+				}
+				int min = or ? pn : dn, add = or ? dn : pn;
+				if(min < bestMin){
+					second = bestMin;
+					bestMin = min;
+					best = i;
+					bestPn = pn;
+					bestDn = dn;
+				} else if(min < second){
+					second = min;
+				}
+				infinite |= add >= INFINITY;
+				sum += add;
+			}
+			int summed = infinite ? INFINITY : (int) Math.min(sum, INFINITY - 1);
+			int pn = or ? bestMin : summed, dn = or ? summed : bestMin;
+			if(count == 0){
+				pn = or ? INFINITY : 0;	//Cannot happen at a position that evaluate left open, but keeps the numbers sound
+				dn = or ? 0 : INFINITY;
+			}
+			if(pn >= thresholdPn || dn >= thresholdDn || stopped || nodes >= limit && (pn != 0 && dn != 0)){
+				table.store(key, pn, dn, work);
+				if(nodes >= limit || (nodes & 0xFFF) == 0 && System.currentTimeMillis() > deadline){
+					stopped = true;
+				}
+				return work;
+			}
+			int childPn, childDn;
+			if(or){
+				childPn = (int) Math.min(thresholdPn, (long) second + 1);
+				childDn = (int) Math.min(INFINITY, (long) thresholdDn - dn + bestDn);
+			} else{
+				childDn = (int) Math.min(thresholdDn, (long) second + 1);
+				childPn = (int) Math.min(INFINITY, (long) thresholdPn - pn + bestPn);
+			}
+			board.makeMove(buffer[best], colour);
+			work += mid(depth + 1, 3 - colour, childPn, childDn, limit);
+			board.unmakeMove(buffer[best], colour);
+			if((nodes & 0xFFF) == 0 && System.currentTimeMillis() > deadline){
+				stopped = true;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a position is on the current line, which only happens in the moving phase.
+	 * @param depth	The depth of the parent of the position
+	 * @param key	The key of the position
+	 * @return		Whether the position was already reached on the way to the parent
+	 */
+	private boolean repeats(int depth, long key){
+		for(int d = depth - 1; d >= 0; d -= 2){
+			if(path[d] == key){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The transposition table of the solver: two entries per bucket, replacing the one that took less work to find.
+	 */
+	public static final class Table {
+		private final long[] keys;
+		final int[] pn, dn;
+		private final long[] work;
+		private final int mask;
+		private long stores, replaced;
+
+		/**
+		 * Constructs an empty table.
+		 * @param megabytes	The size of the table
+		 */
+		Table(int megabytes){
+			long entries = Math.max(2, ((long) megabytes << 20) / 24);
+			int buckets = Integer.highestOneBit((int) Math.min(entries / 2, 1 << 29));
+			this.keys = new long[2 * buckets];
+			this.pn = new int[2 * buckets];
+			this.dn = new int[2 * buckets];
+			this.work = new long[2 * buckets];
+			this.mask = buckets - 1;
+		}
+
+		/**
+		 * Finds a position.
+		 * @param key	The key of the position
+		 * @return		The entry, or -1 if the position is not in the table
+		 */
+		int find(long key){
+			int entry = (int) (key & mask) << 1;
+			if(keys[entry] == key && work[entry] != 0){
+				return entry;
+			}
+			return keys[entry + 1] == key && work[entry + 1] != 0 ? entry + 1 : -1;
+		}
+
+		/**
+		 * Stores the numbers of a position.
+		 * @param key	The key of the position
+		 * @param pn	The proof number
+		 * @param dn	The disproof number
+		 * @param work	The number of positions expanded to find the numbers
+		 */
+		void store(long key, int pn, int dn, long work){
+			int entry = find(key);
+			if(entry < 0){
+				entry = (int) (key & mask) << 1;
+				if(this.work[entry + 1] < this.work[entry]){
+					entry++;
+				}
+				if(this.work[entry] != 0){
+					replaced++;
+				}
+			}
+			if(pn == 0 || dn == 0){
+				work = Long.MAX_VALUE;	//Solved positions are kept
+			}
+			keys[entry] = key;
+			this.pn[entry] = pn;
+			this.dn[entry] = dn;
+			this.work[entry] = work;
+			stores++;
+		}
+
+		/**
+		 * Returns the number of entries.
+		 * @return	The number of positions the table can hold
+		 */
+		public int capacity(){
+			return keys.length;
+		}
+
+		/**
+		 * Returns the number of positions stored, counting every update.
+		 * @return	The number of stores
+		 */
+		public long getStores(){
+			return stores;
+		}
+
+		/**
+		 * Returns the number of positions that were overwritten by others.
+		 * @return	The number of replacements
+		 */
+		public long getReplaced(){
+			return replaced;
+		}
+	}
+
+	/**
+	 * Solves the position after a sequence of moves from the empty board, and prints its value.
+	 * @param args	The options described in the class comment
+	 * @throws IOException if the tablebase cannot be read
+	 */
+	public static void main(String[] args) throws IOException{
+		int N = 2, variant = BoardTopology.SIX_MENS_MORRIS, hash = DEFAULT_HASH_MB;
+		long time = 0, nodes = Long.MAX_VALUE;
+		String tablebaseFile = null, moves = "";
+		for(int i = 0; i < args.length; i++){
+			switch(args[i]){
+			case "-N":			N = Integer.parseInt(args[++i]); break;
+			case "-variant":	variant = Integer.parseInt(args[++i]); break;
+			case "-hash":		hash = Integer.parseInt(args[++i]); break;
+			case "-tablebase":	tablebaseFile = args[++i]; break;
+			case "-time":		time = Long.parseLong(args[++i]) * 1000; break;
+			case "-nodes":		nodes = Long.parseLong(args[++i]); break;
+			case "-moves":		moves = args[++i]; break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+		BoardTopology topology = BoardTopology.get(N, variant);
+		GameEngine game = SelfPlay.newGame(topology);
+		for(String move : moves.trim().split("\\s+")){
+			if(!move.isEmpty() && !game.apply(Move.parse(move))){
+				System.err.println("Illegal move: " + move);
+				return;
+			}
+		}
+		if(game.isOver() || game.mustRemove()){
+			System.err.println("The moves must end a turn of a game that is not over");
+			return;
+		}
+		ProofSolver solver = new ProofSolver(topology, hash);
+		if(tablebaseFile != null){
+			Tablebase tablebase = Tablebase.load(Paths.get(tablebaseFile));
+			if(tablebase.getTopology() != topology){
+				System.err.println(tablebaseFile + " is a tablebase of another board");
+				return;
+			}
+			solver.setTablebase(tablebase);
+		}
+		solver.setNodeLimit(nodes);
+		solver.setTimeLimit(time);
+		long start = System.nanoTime();
+		int value = solver.solve(game.getBoard(), game.getColour());
+		double seconds = (System.nanoTime() - start) / 1e9;
+		String[] names = {"loss", "draw", "win", "unknown"};
+		System.out.printf("%s to move: %s", game.getColour() == 1 ? "Blue" : "Red", names[value + 1]);
+		if(value == Tablebase.WIN){
+			solver.prove(game.getBoard(), game.getColour(), game.getColour());
+			System.out.print(", winning move " + Move.toString(solver.winningMove(game.getBoard(), game.getColour())));
+		}
+		System.out.printf("%n%,d positions in %.1f s (%,.0f per second), %,d stores, %,d replaced in a table of %,d%n",
+				solver.getNodes(), seconds, solver.getNodes() / Math.max(seconds, 1e-9), solver.getTable().getStores(),
+				solver.getTable().getReplaced(), solver.getTable().capacity());
+	}
+
+}
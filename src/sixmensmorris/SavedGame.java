@@ -0,0 +1,290 @@
+package sixmensmorris;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A saved game, and the binary file format it is stored in.
+ *
+ * A file starts with the magic number MAGIC, followed by one record (big-endian):
+ * <pre>
+ * byte		version (VERSION)
+ * byte		number of layers N
+ * byte		header: bits 0-2 game state, bit 3 turn, bit 4 removePiece, bits 5-6 AI colour (0 = no AI)
+ * byte		pieces to place: bits 4-7 blue, bits 0-3 red
+ * 2N bytes	points, 2 bits each (0 = empty, 1 = blue, 2 = red), four to a byte from the high bits down
+ * int		CRC32 of the record up to here
+ * </pre>
+ * so six men's morris takes 16 bytes instead of the 40 or so of the old text file. Records can also be written one after the
+ * other into a buffer with write and read back with read, for keeping many positions together.
+ *
+ * The old text format of savedGame.txt, one number per line (state, turn, removePiece, whether there is an AI, the AI colour,
+ * then the points), can still be read. It does not keep the pieces to place, which are worked out from the pieces on the board.
+ *
+ * @author Kelvin Lin, Jeremy Klotz
+ * @version 1
+ */
+public class SavedGame {
+
+	public static final int MAGIC = 0x4E4D4D53;		//"NMMS"
+	public static final int VERSION = 1;
+	public static final Path DEFAULT_FILE = Paths.get("savedGame.dat");
+	public static final Path LEGACY_FILE = Paths.get("savedGame.txt");
+
+	public final int N;					//The number of layers
+	public final int[] points;			//The state of every point
+	public final int state;				//The game state, as in GameEngine
+	public final int turn;				//0 = blue, 1 = red
+	public final boolean removePiece;	//Whether the player to move must remove a piece
+	public final int aiColour;			//The colour the AI plays, or 0 if there is no AI
+	public final int blueInHand;		//The number of pieces blue still has to place
+	public final int redInHand;			//The number of pieces red still has to place
+
+	/**
+	 * Constructs a saved game.
+	 * @param N				The number of layers
+	 * @param points		The state of every point, 8N of them
+	 * @param state			The game state
+	 * @param turn			Which player moves next (0 = blue, 1 = red)
+	 * @param removePiece	Whether the player to move must remove a piece
+	 * @param aiColour		The colour the AI plays (1 = blue, 2 = red), or 0 if there is no AI
+	 * @param blueInHand	The number of pieces blue still has to place
+	 * @param redInHand		The number of pieces red still has to place
+	 */
+	public SavedGame(int N, int[] points, int state, int turn, boolean removePiece, int aiColour, int blueInHand, int redInHand){
+		if(points.length != 8 * N){
+			throw new IllegalArgumentException(N + " layers need " + 8 * N + " points, not " + points.length);
+		}
+		this.N = N;
+		this.points = points;
+		this.state = state;
+		this.turn = turn;
+		this.removePiece = removePiece;
+		this.aiColour = aiColour;
+		this.blueInHand = blueInHand;
+		this.redInHand = redInHand;
+	}
+
+	/**
+	 * Saves the state of a game.
+	 * @param game		The game
+	 * @param aiColour	The colour the AI plays, or 0 if there is no AI
+	 * @return			The saved game
+	 */
+	public static SavedGame of(GameEngine game, int aiColour){
+		Board board = game.getBoard();
+		return new SavedGame(board.getTopology().getN(), board.getBoardState().clone(), game.status(), game.getTurn(),
+				game.mustRemove(), aiColour, game.getInHand(1), game.getInHand(2));
+	}
+
+	/**
+	 * Returns the number of bytes a record takes.
+	 * @param N	The number of layers
+	 * @return	The size of a record, without the magic number
+	 */
+	public static int recordSize(int N){
+		return 4 + 2 * N + 4;
+	}
+
+	/**
+	 * Writes the game as one record.
+	 * @param buffer	The buffer, with at least recordSize(N) bytes remaining
+	 */
+	public void write(ByteBuffer buffer){
+		int start = buffer.position();
+		buffer.put((byte) VERSION);
+		buffer.put((byte) N);
+		buffer.put((byte) (state | turn << 3 | (removePiece ? 1 : 0) << 4 | aiColour << 5));
+		buffer.put((byte) (blueInHand << 4 | redInHand));
+		for(int i = 0; i < points.length; i += 4){
+			buffer.put((byte) (points[i] << 6 | points[i + 1] << 4 | points[i + 2] << 2 | points[i + 3]));
+		}
+		buffer.putInt(checksum(buffer, start, buffer.position()));
+	}
+
+	/**
+	 * Reads one record.
+	 * @param buffer	The buffer, positioned at the record
+	 * @return			The saved game
+	 * @throws IOException if the record is of an unknown version or is corrupt
+	 */
+	public static SavedGame read(ByteBuffer buffer) throws IOException{
+		int start = buffer.position();
+		if(buffer.remaining() < 4){
+			throw new IOException("Save file too short");
+		}
+		int version = buffer.get() & 0xFF;
+		if(version != VERSION){
+			throw new IOException("Unknown save file version " + version);
+		}
+		int N = buffer.get() & 0xFF;
+		if(N < 1 || buffer.remaining() < recordSize(N) - 2){
+			throw new IOException("Save file too short");
+		}
+		int header = buffer.get() & 0xFF, hands = buffer.get() & 0xFF;
+		int[] points = new int[8 * N];
+		for(int i = 0; i < points.length; i += 4){
+			int packed = buffer.get();
+			points[i] = packed >> 6 & 3;
+			points[i + 1] = packed >> 4 & 3;
+			points[i + 2] = packed >> 2 & 3;
+			points[i + 3] = packed & 3;
+		}
+		int expected = checksum(buffer, start, buffer.position());
+		if(buffer.getInt() != expected){
+			throw new IOException("Save file checksum does not match");
+		}
+		int state = header & 7;
+		if(state > GameEngine.DRAW || header >> 5 == 3){
+			throw new IOException("Corrupt save file header");
+		}
+		for(int point : points){
+			if(point == 3){
+				throw new IOException("Corrupt save file point");
+			}
+		}
+		return new SavedGame(N, points, state, header >> 3 & 1, (header >> 4 & 1) == 1, header >> 5, hands >> 4, hands & 15);
+	}
+
+	/**
+	 * Computes the CRC32 of part of a buffer, without moving its position.
+	 * @param buffer	The buffer
+	 * @param from		The first byte
+	 * @param to		The byte after the last
+	 * @return			The checksum
+	 */
+	private static int checksum(ByteBuffer buffer, int from, int to){
+		CRC32 crc = new CRC32();
+		for(int i = from; i < to; i++){
+			crc.update(buffer.get(i));
+		}
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Writes the game to a file, replacing it.
+	 * @param file	The file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(Path file) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate(4 + recordSize(N));
+		buffer.putInt(MAGIC);
+		write(buffer);
+		buffer.flip();
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)){
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Reads a game from a file in the binary format or the old text format.
+	 * @param file	The file
+	 * @return		The saved game
+	 * @throws IOException if the file cannot be read or is corrupt
+	 */
+	public static SavedGame load(Path file) throws IOException{
+		ByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			long size = channel.size();
+			if(size > 1 << 20){
+				throw new IOException("Save file too large");
+			}
+			buffer = ByteBuffer.allocate((int) size);
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0){
+				//Read the whole file
+			}
+			buffer.flip();
+		}
+		if(buffer.remaining() >= 4 && buffer.getInt(0) == MAGIC){
+			buffer.position(4);
+			return read(buffer);
+		}
+		return readLegacy(new String(buffer.array(), 0, buffer.limit(), StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Reads the saved game, from the binary file if there is one, otherwise from the old text file.
+	 * @return	The saved game, or null if neither file exists
+	 * @throws IOException if the file cannot be read or is corrupt
+	 */
+	public static SavedGame load() throws IOException{
+		if(Files.exists(DEFAULT_FILE)){
+			return load(DEFAULT_FILE);
+		} else if(Files.exists(LEGACY_FILE)){
+			return load(LEGACY_FILE);
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a game in the old text format, with six pieces for each player.
+	 * @param text	The contents of the file
+	 * @return		The saved game
+	 * @throws IOException if the text is not a saved game
+	 */
+	public static SavedGame readLegacy(String text) throws IOException{
+		try{
+			BufferedReader reader = new BufferedReader(new StringReader(text));
+			int state = Integer.parseInt(nextLine(reader));
+			int turn = Integer.parseInt(nextLine(reader));
+			boolean removePiece = Boolean.parseBoolean(nextLine(reader));
+			boolean existsAI = Boolean.parseBoolean(nextLine(reader));
+			int aiColour = Integer.parseInt(nextLine(reader));
+			int[] points = new int[24];
+			int count = 0, bluePlaced = 0, redPlaced = 0;
+			for(String line = reader.readLine(); line != null; line = reader.readLine()){
+				if(line.trim().isEmpty()){
+					continue;
+				}
+				if(count == points.length){
+					points = Arrays.copyOf(points, 2 * count);
+				}
+				int point = Integer.parseInt(line.trim());
+				if(point < 0 || point > 2){
+					throw new IOException("Corrupt save file");
+				}
+				points[count++] = point;
+				bluePlaced += point == 1 ? 1 : 0;
+				redPlaced += point == 2 ? 1 : 0;
+			}
+			//The same ranges the binary format can hold
+			if(count == 0 || count % 8 != 0 || state < 0 || state > GameEngine.DRAW || turn < 0 || turn > 1
+					|| existsAI && (aiColour < 1 || aiColour > 2)){
+				throw new IOException("Corrupt save file");
+			}
+			int pieces = BoardTopology.SIX_MENS_MORRIS;
+			return new SavedGame(count / 8, Arrays.copyOf(points, count), state, turn, removePiece,
+					existsAI ? aiColour : 0, Math.max(0, pieces - bluePlaced), Math.max(0, pieces - redPlaced));
+		} catch(NumberFormatException e){
+			throw new IOException("Corrupt save file", e);
+		}
+	}
+
+	/**
+	 * Reads the next line of an old save file.
+	 * @param reader	The file
+	 * @return			The line, trimmed
+	 * @throws IOException if the file ends
+	 */
+	private static String nextLine(BufferedReader reader) throws IOException{
+		String line = reader.readLine();
+		if(line == null){
+			throw new IOException("Save file too short");
+		}
+		return line.trim();
+	}
+
+}
@@ -0,0 +1,477 @@
+package sixmensmorris;
+
+import java.util.Arrays;
+
+/**
+ * A negamax search with alpha-beta pruning over the rules of the game.
+ *
+ * A move is searched as one compound action: placing, sliding or flying a piece, together with the removal of an opponent's piece
+ * when that forms a mill. The search works on its own copy of the board, which it changes with Board.makeMove and
+ * Board.unmakeMove, and MoveGenerator writes every move list into one preallocated array, so nothing is allocated while it runs.
+ * Results are kept in a TranspositionTable, which orders the moves of positions seen before and cuts off positions already
+ * searched deeply enough.
+ *
+ * The search deepens iteratively, one ply at a time, up to its depth. It can also be given a time budget, in which case it keeps
+ * deepening until the time runs out and returns the best move of the last depth it completed, unless the unfinished depth has
+ * already proven another move better. The first ply is always completed, so there is always a move to return.
+ *
+ * The rules are the same as in BoardController:
+ * <ul>
+ * <li>A player with pieces left to place must place one on an empty point.</li>
+ * <li>Otherwise the player slides a piece to an adjacent empty point, or flies it anywhere if the variant allows it and the
+ * player has three pieces left.</li>
+ * <li>A move that forms a mill removes an opponent's piece that is not in a mill, unless all of them are in mills.</li>
+ * <li>A player who has placed all pieces and has fewer than three left, or who cannot move, loses. A position that repeats
+ * during the search is a draw.</li>
+ * </ul>
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public class Search {
+
+	public static final int WIN_SCORE = 30000;		//Score of a won position, minus the number of plies to the win
+	public static final int MAX_PLY = 64;			//Deepest ply the search can reach
+	public static final int DEFAULT_HASH_MB = 16;	//Size of the transposition table of a search that is not given one
+	private static final int INFINITY = 32000;
+
+	// evaluation weights
+	private static final int PIECE_WEIGHT = 100;
+	private static final int MILL_PIECE_WEIGHT = 6;
+	private static final int OPEN_TWO_WEIGHT = 12;
+	private static final int MOBILITY_WEIGHT = 4;
+
+	private final BoardTopology topology;
+	private final TranspositionTable table;
+	private final Board board;
+	private final int[] pieces;			//The points array of the search board
+	private final int maxMoves;			//Most moves a position can have
+	private final int[] moves;			//The moves of ply p are at moves[p * maxMoves ...]
+	private final int[] killers;		//Two quiet moves per ply that caused a cutoff
+	private final long[] pathKeys;		//Key of the position at each ply, to find repetitions
+	private static final long REMOVE_KEY = BoardTopology.zobrist(Integer.MIN_VALUE);	//Added to the key of a root that only removes
+
+	private int depth = 4;
+	private long nodes;
+	private int bestScore;
+	private int completedDepth;
+	private long timeBudget;			//Nanoseconds a search may take, or 0 for no limit
+	private long startTime;
+	private long deadline;				//System.nanoTime() at which the search stops, or 0 for no limit
+	private boolean aborted;			//Whether the current iteration ran out of time
+	private volatile boolean stopped;	//Set by another thread to end the search early
+	private int firstDepth = 1;			//Depth of the first iteration; helper threads start deeper to search differently
+	private boolean agesTable = true;	//Whether a search starts a new age of the table; false when a ParallelSearch does it
+
+	/**
+	 * Constructs a search for boards with a given topology, with its own transposition table.
+	 * @param topology	The shape and rules of the board
+	 */
+	public Search(BoardTopology topology){
+		this(topology, new TranspositionTable(DEFAULT_HASH_MB));
+	}
+
+	/**
+	 * Constructs a search for boards with a given topology that keeps its results in a given table.
+	 * @param topology	The shape and rules of the board
+	 * @param table		The transposition table, which may be shared with other searches
+	 */
+	public Search(BoardTopology topology, TranspositionTable table){
+		this.topology = topology;
+		this.table = table;
+		this.pieces = new int[topology.getPoints()];
+		this.board = new Board(topology, pieces);
+		this.maxMoves = MoveGenerator.maxMoves(topology);
+		this.moves = new int[MAX_PLY * maxMoves];
+		this.killers = new int[MAX_PLY * 2];
+		this.pathKeys = new long[MAX_PLY + 1];
+	}
+
+	/**
+	 * Sets the depth of the search, counted in moves of either player.
+	 * @param depth	The number of plies to search, at least 1
+	 */
+	public void setDepth(int depth){
+		this.depth = Math.max(1, Math.min(depth, MAX_PLY - 1));
+	}
+
+	/**
+	 * Returns the depth of the search.
+	 * @return	The number of plies searched
+	 */
+	public int getDepth(){
+		return this.depth;
+	}
+
+	/**
+	 * Sets how long a search may take. With a budget the search keeps deepening, up to its depth, until the time is used up.
+	 * @param millis	The time budget in milliseconds, or 0 to search to the full depth however long it takes
+	 */
+	public void setTimeBudget(long millis){
+		this.timeBudget = Math.max(0, millis) * 1000000L;
+	}
+
+	/**
+	 * Returns how long a search may take.
+	 * @return	The time budget in milliseconds, or 0 if there is none
+	 */
+	public long getTimeBudget(){
+		return this.timeBudget / 1000000L;
+	}
+
+	/**
+	 * Asks a search running on another thread to stop as soon as possible. The search keeps its best move so far.
+	 * The request stays in effect until clearStop is called.
+	 */
+	public void stop(){
+		this.stopped = true;
+	}
+
+	/**
+	 * Allows the search to run again after stop was called.
+	 */
+	public void clearStop(){
+		this.stopped = false;
+	}
+
+	/**
+	 * Sets the depth of the first iteration. Searches sharing a table with another search start at different depths, so they
+	 * fill the table with different positions.
+	 * @param depth	The depth to start at
+	 */
+	void setFirstDepth(int depth){
+		this.firstDepth = Math.max(1, depth);
+	}
+
+	/**
+	 * Sets whether a search starts a new age of the transposition table. Searches sharing a table leave it to their owner,
+	 * which ages the table once per move, so entries stored by one thread do not look stale to the others.
+	 * @param agesTable	Whether search calls TranspositionTable.newSearch
+	 */
+	void setAgesTable(boolean agesTable){
+		this.agesTable = agesTable;
+	}
+
+	/**
+	 * Returns the deepest depth the last search completed.
+	 * @return	The number of plies of the last completed iteration
+	 */
+	public int getCompletedDepth(){
+		return this.completedDepth;
+	}
+
+	/**
+	 * Returns the time the last search took.
+	 * @return	The time in milliseconds
+	 */
+	public long getElapsed(){
+		return (System.nanoTime() - startTime) / 1000000L;
+	}
+
+	/**
+	 * Returns the transposition table used by the search.
+	 * @return	The transposition table
+	 */
+	public TranspositionTable getTable(){
+		return this.table;
+	}
+
+	/**
+	 * Returns the number of positions visited by the last search.
+	 * @return	The number of nodes
+	 */
+	public long getNodes(){
+		return this.nodes;
+	}
+
+	/**
+	 * Returns the score of the best move found by the last search, from the point of view of the side that moved.
+	 * @return	The score, above WIN_SCORE - MAX_PLY for a forced win
+	 */
+	public int getScore(){
+		return this.bestScore;
+	}
+
+	/**
+	 * Finds the best move in a position.
+	 * @param position		The board to search, which is not changed
+	 * @param blueInHand	The number of pieces blue still has to place
+	 * @param redInHand		The number of pieces red still has to place
+	 * @param colour		The colour to move (1 = blue, 2 = red)
+	 * @param mustRemove	Whether the colour has just formed a mill and only has to choose a piece to remove
+	 * @return				The best move, or Move.NONE if there is no legal move
+	 */
+	public int search(Board position, int blueInHand, int redInHand, int colour, boolean mustRemove){
+		System.arraycopy(position.getBoardState(), 0, pieces, 0, pieces.length);
+		board.setPieces(pieces);
+		board.setInHand(blueInHand, redInHand);
+		Arrays.fill(killers, Move.NONE);
+		nodes = 0;
+		if(agesTable){
+			table.newSearch();
+		}
+		startTime = System.nanoTime();
+		deadline = 0;
+		aborted = false;
+		completedDepth = 0;
+		bestScore = 0;
+
+		int count = mustRemove ? MoveGenerator.generateRemovals(board, colour, moves, 0) : MoveGenerator.generate(board, colour, moves, 0);
+		if(count == 0){
+			return Move.NONE;
+		}
+		pathKeys[0] = key(colour) ^ (mustRemove ? REMOVE_KEY : 0);
+		long data = table.probe(pathKeys[0]);
+		if(data != 0){
+			moveToFront(0, count, TranspositionTable.move(data));
+		}
+
+		int bestMove = moves[0];
+		for(int d = Math.min(firstDepth, depth); d <= depth; d++){
+			int iterationMove = searchRoot(d, count, colour);
+			if(aborted){
+				if(iterationMove != Move.NONE){
+					bestMove = iterationMove; //Beat the previous best move, which was searched first, before time ran out
+				}
+				break;
+			}
+			bestMove = iterationMove;
+			completedDepth = d;
+			table.store(pathKeys[0], bestMove, toTable(bestScore, 0), d, TranspositionTable.EXACT);
+			moveToFront(0, count, bestMove);
+
+			if(Math.abs(bestScore) > WIN_SCORE - MAX_PLY){
+				break; //The result is forced, searching deeper will not change it
+			}
+			if(timeBudget > 0){
+				deadline = startTime + timeBudget;
+			}
+			if(stopped){
+				break;
+			}
+		}
+		return bestMove;
+	}
+
+	/**
+	 * Searches every root move to a given depth.
+	 * @param depth		The depth of this iteration
+	 * @param count		The number of root moves, which are at the start of the move buffer
+	 * @param colour	The colour to move
+	 * @return			The best move of this iteration. If the iteration is aborted, this is a move that was proven better than the
+	 * 					first root move, or Move.NONE
+	 */
+	private int searchRoot(int depth, int count, int colour){
+		int bestMove = Move.NONE;
+		int alpha = -INFINITY;
+		for(int i = 0; i < count; i++){
+			int move = moves[i];
+			board.makeMove(move, colour);
+			int score = -negamax(depth - 1, 1, -INFINITY, -alpha, 3 - colour);
+			board.unmakeMove(move, colour);
+			if(aborted){
+				return i > 0 && bestMove != moves[0] ? bestMove : Move.NONE;
+			}
+			if(score > alpha){
+				alpha = score;
+				bestMove = move;
+			}
+		}
+		this.bestScore = alpha;
+		return bestMove;
+	}
+
+	/**
+	 * Searches a position with alpha-beta pruning.
+	 * @param depth		The number of plies left to search
+	 * @param ply		The distance from the root
+	 * @param alpha		The score the side to move is already sure of
+	 * @param beta		The score the opponent is already sure of
+	 * @param colour	The colour to move
+	 * @return			The score of the position for the colour to move
+	 */
+	private int negamax(int depth, int ply, int alpha, int beta, int colour){
+		nodes++;
+		if((nodes & 1023) == 0 && (stopped || (deadline != 0 && System.nanoTime() > deadline))){
+			aborted = true;
+		}
+		if(aborted){
+			return 0;
+		}
+		if(board.getInHand(colour) == 0 && board.getPieceCount(colour) < 3){
+			return -WIN_SCORE + ply;
+		}
+		long key = key(colour);
+		pathKeys[ply] = key;
+		for(int p = ply - 2; p >= 0; p -= 2){
+			if(pathKeys[p] == key){
+				return 0;
+			}
+		}
+		if(depth <= 0 || ply >= MAX_PLY - 1){
+			return evaluate(colour);
+		}
+
+		int tableMove = Move.NONE;
+		long data = table.probe(key);
+		if(data != 0){
+			tableMove = TranspositionTable.move(data);
+			if(TranspositionTable.depth(data) >= depth){
+				int score = fromTable(TranspositionTable.score(data), ply);
+				int bound = TranspositionTable.bound(data);
+				if(bound == TranspositionTable.EXACT
+						|| (bound == TranspositionTable.LOWER && score >= beta)
+						|| (bound == TranspositionTable.UPPER && score <= alpha)){
+					return score;
+				}
+			}
+		}
+
+		int offset = ply * maxMoves;
+		int count = MoveGenerator.generate(board, colour, moves, offset);
+		if(count == 0){
+			return -WIN_SCORE + ply;
+		}
+		order(offset, count, ply);
+		moveToFront(offset, count, tableMove);
+
+		int alphaStart = alpha;
+		int best = -INFINITY, bestMove = Move.NONE;
+		for(int i = offset; i < offset + count; i++){
+			int move = moves[i];
+			board.makeMove(move, colour);
+			int score = -negamax(depth - 1, ply + 1, -beta, -alpha, 3 - colour);
+			board.unmakeMove(move, colour);
+			if(aborted){
+				return 0;
+			}
+			if(score > best){
+				best = score;
+				bestMove = move;
+				if(score > alpha){
+					alpha = score;
+					if(alpha >= beta){
+						if(!Move.isRemove(move) && killers[ply * 2] != move){
+							killers[ply * 2 + 1] = killers[ply * 2];
+							killers[ply * 2] = move;
+						}
+						break;
+					}
+				}
+			}
+		}
+		int bound = best >= beta ? TranspositionTable.LOWER : best > alphaStart ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+		table.store(key, bestMove, toTable(best, ply), depth, bound);
+		return best;
+	}
+
+	/**
+	 * Converts a score to be stored in the table: a win is stored as its distance from this position rather than from the root.
+	 * @param score	The score
+	 * @param ply	The distance of the position from the root
+	 * @return		The score to store
+	 */
+	private static int toTable(int score, int ply){
+		return score > WIN_SCORE - MAX_PLY ? score + ply : score < MAX_PLY - WIN_SCORE ? score - ply : score;
+	}
+
+	/**
+	 * Converts a score read from the table back to a distance from the root.
+	 * @param score	The stored score
+	 * @param ply	The distance of the position from the root
+	 * @return		The score
+	 */
+	private static int fromTable(int score, int ply){
+		return score > WIN_SCORE - MAX_PLY ? score - ply : score < MAX_PLY - WIN_SCORE ? score + ply : score;
+	}
+
+	/**
+	 * Moves a given move to the front of a move list, if it is in the list.
+	 * @param offset	The start of the move list
+	 * @param count		The number of moves
+	 * @param move		The move to put first
+	 */
+	private void moveToFront(int offset, int count, int move){
+		for(int i = offset; i < offset + count && move != Move.NONE; i++){
+			if(moves[i] == move){
+				System.arraycopy(moves, offset, moves, offset + 1, i - offset);
+				moves[offset] = move;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of the search position: the board hash, the side to move and the pieces left to place.
+	 * @param colour	The colour to move
+	 * @return			The key
+	 */
+	private long key(int colour){
+		long key = board.getHash() ^ BoardTopology.zobrist(Integer.MAX_VALUE - (board.getInHand(1) << 8 | board.getInHand(2)));
+		return colour == 2 ? key ^ topology.getSideKey() : key;
+	}
+
+	/**
+	 * Moves the killer moves of a ply, then the moves that remove a piece, to the front of a move list.
+	 * @param offset	The start of the move list
+	 * @param count		The number of moves
+	 * @param ply		The distance from the root
+	 */
+	private void order(int offset, int count, int ply){
+		int front = offset;
+		for(int k = 0; k < 2; k++){
+			int killer = killers[ply * 2 + k];
+			for(int i = front; i < offset + count && killer != Move.NONE; i++){
+				if(moves[i] == killer){
+					swap(front++, i);
+					break;
+				}
+			}
+		}
+		for(int i = front; i < offset + count; i++){
+			if(Move.isRemove(moves[i])){
+				swap(front++, i);
+			}
+		}
+	}
+
+	/**
+	 * Swaps two moves in the move buffer.
+	 * @param i	The first index
+	 * @param j	The second index
+	 */
+	private void swap(int i, int j){
+		int move = moves[i];
+		moves[i] = moves[j];
+		moves[j] = move;
+	}
+
+	/**
+	 * Scores a position that is not searched any deeper: material, pieces in mills, lines with two pieces and an empty point,
+	 * and, once all pieces are placed, mobility.
+	 * @param colour	The colour to move
+	 * @return			The score for the colour to move
+	 */
+	private int evaluate(int colour){
+		int opponent = 3 - colour;
+		int score = PIECE_WEIGHT * (board.getPieceCount(colour) + board.getInHand(colour)
+				- board.getPieceCount(opponent) - board.getInHand(opponent));
+		score += MILL_PIECE_WEIGHT * (board.getMillCount(colour) - board.getMillCount(opponent));
+		if(board.getInHand(1) == 0 && board.getInHand(2) == 0){
+			score += MOBILITY_WEIGHT * (board.getMobility(colour) - board.getMobility(opponent));
+		}
+		for(int line = 0; line < topology.getLines(); line++){
+			int sum = 0, empty = 0;
+			for(int j = 0; j < 3; j++){
+				int state = pieces[topology.getLinePoint(line, j)];
+				sum += state == colour ? 1 : state == opponent ? -1 : 0;
+				empty += state == 0 ? 1 : 0;
+			}
+			if(empty == 1 && sum != 0){
+				score += OPEN_TWO_WEIGHT * sum / 2;
+			}
+		}
+		return score;
+	}
+
+}
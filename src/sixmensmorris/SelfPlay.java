@@ -0,0 +1,345 @@
+package sixmensmorris;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays games between two computer players without any window, on every core at once.
+ *
+ * Each game is played by a GameEngine, and each side chooses its moves with its own Search, the same search the AI uses. A game
+ * starts with a number of random moves, chosen by a random generator seeded from the game number, so that the games differ
+ * while every run with the same seed plays the same games (at a fixed depth). A game that reaches the move limit is stopped and
+ * counted as a draw by the move limit, apart from draws by repetition.
+ *
+ * The result of every game is printed as soon as it ends, followed by a summary with the number of games played per second.
+ * With -archive, the moves of every game are also added to a GameArchive.
+ *
+ * Usage: java sixmensmorris.SelfPlay [-games G] [-threads T] [-N layers] [-variant 6|9|12] [-depth D] [-time ms]
+ * [-random plies] [-seed S] [-maxPlies P] [-hash MB] [-archive file] [-quiet]
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public class SelfPlay {
+
+	public static final int MOVE_LIMIT = 5;		//Status of a game stopped at the move limit, after the GameEngine states
+	public static final int FAILED = 6;			//Status of a game that could not be finished because of an error
+
+	private final BoardTopology topology;
+	private int games = 100;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int depth = 4;
+	private long timeBudget = 0;
+	private int randomPlies = 4;
+	private long seed = 1;
+	private int maxPlies = 400;
+	private int hashSize = 4;
+	private GameArchive archive;
+
+	/**
+	 * The result of one game.
+	 */
+	public static class Result {
+		public final int game;			//The number of the game, from 0
+		public final long seed;			//The seed of the random opening of the game
+		public final int status;		//GameEngine.BLUE_WINS, RED_WINS or DRAW, or MOVE_LIMIT or FAILED
+		public final int plies;			//The number of turns played
+
+		Result(int game, long seed, int status, int plies){
+			this.game = game;
+			this.seed = seed;
+			this.status = status;
+			this.plies = plies;
+		}
+
+		@Override
+		public String toString(){
+			String[] outcomes = {"", "", "blue wins", "red wins", "repetition draw", "move limit draw", "failed"};
+			return String.format("game %d seed %d: %s after %d plies", game, seed, outcomes[status], plies);
+		}
+	}
+
+	/**
+	 * Constructs a runner for games on boards of a given topology.
+	 * @param topology	The shape and rules of the board
+	 */
+	public SelfPlay(BoardTopology topology){
+		this.topology = topology;
+	}
+
+	/**
+	 * Sets the number of games to play.
+	 * @param games	The number of games
+	 */
+	public void setGames(int games){
+		this.games = games;
+	}
+
+	/**
+	 * Sets the number of games played at once.
+	 * @param threads	The number of threads, one game each
+	 */
+	public void setThreads(int threads){
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Sets the depth both sides search to.
+	 * @param depth	The number of plies
+	 */
+	public void setDepth(int depth){
+		this.depth = depth;
+	}
+
+	/**
+	 * Sets the time both sides may take per move. With a time budget the games are no longer the same from run to run.
+	 * @param millis	The time per move in milliseconds, or 0 to search to the fixed depth
+	 */
+	public void setTimeBudget(long millis){
+		this.timeBudget = millis;
+	}
+
+	/**
+	 * Sets the number of random moves each game starts with.
+	 * @param plies	The number of turns played at random
+	 */
+	public void setRandomPlies(int plies){
+		this.randomPlies = plies;
+	}
+
+	/**
+	 * Sets the seed the seeds of the games are made from.
+	 * @param seed	The seed of the run
+	 */
+	public void setSeed(long seed){
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the number of turns after which a game is stopped.
+	 * @param plies	The move limit
+	 */
+	public void setMaxPlies(int plies){
+		this.maxPlies = plies;
+	}
+
+	/**
+	 * Sets the size of the transposition table of each side.
+	 * @param megabytes	The size in megabytes
+	 */
+	public void setHashSize(int megabytes){
+		this.hashSize = megabytes;
+	}
+
+	/**
+	 * Sets the archive every game is added to.
+	 * @param archive	The archive, or null to keep no games
+	 */
+	public void setArchive(GameArchive archive){
+		this.archive = archive;
+	}
+
+	/**
+	 * Returns the seed of the random opening of a game.
+	 * @param seed	The seed of the run
+	 * @param game	The number of the game
+	 * @return		The seed of the game
+	 */
+	public static long gameSeed(long seed, int game){
+		return BoardTopology.zobrist(seed * 31 + game);
+	}
+
+	/**
+	 * Starts a new game, with blue to move.
+	 * @param topology	The shape and rules of the board
+	 * @return			The game
+	 */
+	public static GameEngine newGame(BoardTopology topology){
+		return new GameEngine(new Board(topology), 0, GameEngine.PLACING, false, topology.getVariant(), topology.getVariant());
+	}
+
+	/**
+	 * Plays random legal moves.
+	 * @param game		The game
+	 * @param random	The random generator
+	 * @param plies		The number of turns to play
+	 */
+	public static void playRandom(GameEngine game, Random random, int plies){
+		int[] moves = new int[MoveGenerator.maxMoves(game.getBoard().getTopology())];
+		for(int ply = 0; ply < plies && !game.isOver(); ply++){
+			int count = game.legalMoves(moves, 0);
+			game.apply(moves[random.nextInt(count)]);
+		}
+	}
+
+	/**
+	 * Plays a game to the end between two searches.
+	 * @param game		The game, which may already be under way
+	 * @param blue		The search that plays blue
+	 * @param red		The search that plays red
+	 * @param maxPlies	The number of turns after which the game is stopped
+	 * @return			The status of the game at the end: GameEngine.BLUE_WINS, RED_WINS or DRAW, or MOVE_LIMIT
+	 */
+	public static int play(GameEngine game, Search blue, Search red, int maxPlies){
+		Board board = game.getBoard();
+		while(!game.isOver()){
+			if(game.getPlies() >= maxPlies){
+				return MOVE_LIMIT;
+			}
+			Search search = game.getColour() == 1 ? blue : red;
+			int move = search.search(board, game.getInHand(1), game.getInHand(2), game.getColour(), game.mustRemove());
+			if(move == Move.NONE || !game.apply(move)){
+				throw new IllegalStateException("Search returned an illegal move: " + Move.toString(move));
+			}
+		}
+		return game.status();
+	}
+
+	/**
+	 * Plays every game, sharing them among the threads, and passes each result to a queue as soon as the game ends.
+	 * @param results	Receives the results, in the order the games end
+	 */
+	public void run(final BlockingQueue<Result> results){
+		final AtomicInteger next = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "self-play-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for(int t = 0; t < threads; t++){
+			pool.execute(new Runnable(){
+				public void run(){
+					Search blue = newSearch(), red = newSearch();
+					for(int game = next.getAndIncrement(); game < games; game = next.getAndIncrement()){
+						try{
+							results.add(playGame(game, blue, red));
+						} catch(RuntimeException e){
+							e.printStackTrace();
+							results.add(new Result(game, gameSeed(seed, game), FAILED, 0));
+						}
+					}
+				}
+			});
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Returns a search with the settings of the runner.
+	 * @return	The search
+	 */
+	private Search newSearch(){
+		Search search = new Search(topology, new TranspositionTable(hashSize));
+		search.setDepth(depth);
+		search.setTimeBudget(timeBudget);
+		return search;
+	}
+
+	/**
+	 * Plays one game from its random opening to the end.
+	 * @param game	The number of the game
+	 * @param blue	The search that plays blue
+	 * @param red	The search that plays red
+	 * @return		The result
+	 */
+	private Result playGame(int game, Search blue, Search red){
+		long gameSeed = gameSeed(seed, game);
+		blue.getTable().clear(); //Start every game alike, so it is the same whichever thread plays it
+		red.getTable().clear();
+		GameEngine engine = newGame(topology);
+		playRandom(engine, new Random(gameSeed), randomPlies);
+		int status = play(engine, blue, red, maxPlies);
+		if(archive != null){
+			try{
+				archive.append(topology, engine.getFirstTurn(), status, engine.getJournal());
+			} catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+		return new Result(game, gameSeed, status, engine.getPlies());
+	}
+
+	/**
+	 * Plays the games given on the command line, prints every result, and prints a summary with the number of games per second.
+	 * @param args	The options described in the class comment
+	 * @throws InterruptedException if interrupted while waiting for the games
+	 * @throws IOException if the archive cannot be opened
+	 */
+	public static void main(String[] args) throws InterruptedException, IOException{
+		int N = 2, variant = BoardTopology.SIX_MENS_MORRIS;
+		boolean quiet = false;
+		int games = 100, threads = Runtime.getRuntime().availableProcessors(), depth = 4, randomPlies = 4, maxPlies = 400;
+		int hashSize = 4;
+		long time = 0, seed = 1;
+		String archiveFile = null;
+		for(int i = 0; i < args.length; i++){
+			switch(args[i]){
+			case "-games":		games = Integer.parseInt(args[++i]); break;
+			case "-threads":	threads = Integer.parseInt(args[++i]); break;
+			case "-N":			N = Integer.parseInt(args[++i]); break;
+			case "-variant":	variant = Integer.parseInt(args[++i]); break;
+			case "-depth":		depth = Integer.parseInt(args[++i]); break;
+			case "-time":		time = Long.parseLong(args[++i]); break;
+			case "-random":		randomPlies = Integer.parseInt(args[++i]); break;
+			case "-seed":		seed = Long.parseLong(args[++i]); break;
+			case "-maxPlies":	maxPlies = Integer.parseInt(args[++i]); break;
+			case "-hash":		hashSize = Integer.parseInt(args[++i]); break;
+			case "-archive":	archiveFile = args[++i]; break;
+			case "-quiet":		quiet = true; break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+
+		SelfPlay selfPlay = new SelfPlay(BoardTopology.get(N, variant));
+		selfPlay.setGames(games);
+		selfPlay.setThreads(threads);
+		selfPlay.setDepth(time > 0 ? Search.MAX_PLY - 1 : depth);
+		selfPlay.setTimeBudget(time);
+		selfPlay.setRandomPlies(randomPlies);
+		selfPlay.setSeed(seed);
+		selfPlay.setMaxPlies(maxPlies);
+		selfPlay.setHashSize(hashSize);
+		GameArchive archive = archiveFile == null ? null : new GameArchive(Paths.get(archiveFile));
+		selfPlay.setArchive(archive);
+
+		BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+		long start = System.nanoTime();
+		selfPlay.run(results);
+		int[] outcomes = new int[FAILED + 1];
+		long plies = 0;
+		for(int played = 1; played <= games; played++){
+			Result result = results.take();
+			outcomes[result.status]++;
+			plies += result.plies;
+			if(!quiet){
+				System.out.println(result);
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d games in %.1f s (%.1f games/s, %d threads): blue %d, red %d, repetition draws %d, "
+				+ "move limit draws %d, %.1f plies per game%n", games, seconds, games / seconds, selfPlay.threads,
+				outcomes[GameEngine.BLUE_WINS], outcomes[GameEngine.RED_WINS], outcomes[GameEngine.DRAW], outcomes[MOVE_LIMIT],
+				games == 0 ? 0.0 : (double) plies / games);
+		if(outcomes[FAILED] > 0){
+			System.out.println(outcomes[FAILED] + " games failed");
+		}
+		if(archive != null){
+			System.out.println(archive.size() + " games in " + archiveFile);
+			archive.close();
+		}
+	}
+
+}
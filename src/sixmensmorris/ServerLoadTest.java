@@ -0,0 +1,306 @@
+package sixmensmorris;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a GameServer with many clients at once, each playing random moves against the computer player over its own
+ * connection, and reports how many games and moves the server handled per second and how long clients waited for it.
+ *
+ * The latency of a move is the time from sending it to being told it is the client's turn again, so it includes the reply of
+ * the computer player. Without -host a server is started in the same process on a free port of localhost.
+ *
+ * With -watchers, that many more clients watch the first game of the first client as spectators, applying every DELTA to
+ * their own copy of the board. The game waits for them all before its first move. A spectator that is disconnected before the
+ * game ends counts as dropped.
+ *
+ * Usage: java sixmensmorris.ServerLoadTest [-host H] [-port P] [-clients C] [-games G] [-watchers W] [-depth D]
+ * [-maxPlies P] [-seed S]
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public class ServerLoadTest {
+
+	private final String host;
+	private final int port;
+	private final AtomicInteger finishedGames = new AtomicInteger();
+	private final AtomicInteger abandonedGames = new AtomicInteger();
+	private final AtomicInteger failedClients = new AtomicInteger();
+	private final AtomicInteger moves = new AtomicInteger();
+	private final AtomicInteger connected = new AtomicInteger();
+	private final AtomicInteger watched = new AtomicInteger();
+	private final AtomicInteger droppedWatchers = new AtomicInteger();
+	private final AtomicInteger missedWatchers = new AtomicInteger();
+	private final AtomicInteger updates = new AtomicInteger();
+	private final CountDownLatch watchedGameStarted = new CountDownLatch(1);
+	private volatile CountDownLatch watchersReady = new CountDownLatch(0);
+	private volatile int watchedGame;
+
+	/**
+	 * Constructs a load test against a server.
+	 * @param host	The host of the server
+	 * @param port	The port of the server
+	 */
+	public ServerLoadTest(String host, int port){
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Plays games over one connection.
+	 * @param games		The number of games to play
+	 * @param maxPlies	The number of moves of the client after which a game is abandoned
+	 * @param random	Chooses the moves and the colour of the client
+	 * @param watched	Whether the spectators watch the first game of this client
+	 * @return			The latency of every move in microseconds
+	 * @throws IOException if the connection fails
+	 * @throws InterruptedException if interrupted while waiting for the spectators
+	 */
+	private long[] playClient(int games, int maxPlies, Random random, boolean watched) throws IOException, InterruptedException{
+		long[] latencies = new long[64];
+		int count = 0;
+		Socket socket = new Socket(host, port);
+		connected.incrementAndGet();
+		try{
+			socket.setTcpNoDelay(true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+			for(int game = 0; game < games; game++){
+				send(out, "NEW AI " + (1 + random.nextInt(2)));
+				String[] reply = expect(in, "GAME");
+				int colour = Integer.parseInt(reply[2]);
+				if(watched && game == 0){
+					watchedGame = Integer.parseInt(reply[1]);
+					watchedGameStarted.countDown();
+					watchersReady.await();
+				}
+				long sent = 0;
+				int plies = 0;
+				while(true){
+					String[] state = expect(in, "STATE");
+					if(Integer.parseInt(state[1]) > GameEngine.PLAYING){
+						finishedGames.incrementAndGet();
+						break;
+					} else if(Integer.parseInt(state[2]) != colour){
+						continue; //The computer is to move
+					}
+					if(sent != 0){
+						if(count == latencies.length){
+							latencies = Arrays.copyOf(latencies, 2 * count);
+						}
+						latencies[count++] = (System.nanoTime() - sent) / 1000;
+					}
+					if(plies++ == maxPlies){
+						abandonedGames.incrementAndGet();
+						break;
+					}
+					send(out, "MOVES");
+					String[] legal = expect(in, "MOVES");
+					sent = System.nanoTime();
+					send(out, "MOVE " + legal[1 + random.nextInt(legal.length - 1)]);
+					moves.incrementAndGet();
+				}
+			}
+			send(out, "QUIT");
+		} finally{
+			socket.close();
+		}
+		return Arrays.copyOf(latencies, count);
+	}
+
+	/**
+	 * Watches the first game of the first client until it ends, keeping a copy of the board up to date from the DELTA lines.
+	 * @throws IOException if the connection fails
+	 * @throws InterruptedException if interrupted while waiting for the game to start
+	 */
+	private void watchGame() throws IOException, InterruptedException{
+		watchedGameStarted.await();
+		Socket socket = new Socket(host, port);
+		try{
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+			send(out, "WATCH " + watchedGame);
+			String line = in.readLine();
+			watchersReady.countDown();
+			if(line == null || !line.startsWith("STATE")){
+				missedWatchers.incrementAndGet();
+				return;
+			}
+			watched.incrementAndGet();
+			String[] words = line.split(" ");
+			char[] points = words[6].toCharArray();
+			for(line = in.readLine(); line != null; line = in.readLine()){
+				words = line.split(" ");
+				for(int i = 6; i < words.length; i++){
+					int colon = words[i].indexOf(':');
+					points[Integer.parseInt(words[i].substring(0, colon))] = words[i].charAt(colon + 1);
+				}
+				updates.incrementAndGet();
+				if(Integer.parseInt(words[1]) > GameEngine.PLAYING){
+					send(out, "QUIT");
+					return;
+				}
+			}
+			droppedWatchers.incrementAndGet();
+		} finally{
+			socket.close();
+		}
+	}
+
+	/**
+	 * Writes one line to the server.
+	 * @param out	The connection
+	 * @param line	The line
+	 * @throws IOException if the connection fails
+	 */
+	private static void send(BufferedWriter out, String line) throws IOException{
+		out.write(line);
+		out.write('\n');
+		out.flush();
+	}
+
+	/**
+	 * Reads lines until one of a given kind, skipping the others.
+	 * @param in	The connection
+	 * @param kind	The first word of the line
+	 * @return		The words of the line
+	 * @throws IOException if the connection fails or the server replies with an error
+	 */
+	private static String[] expect(BufferedReader in, String kind) throws IOException{
+		for(String line = in.readLine(); line != null; line = in.readLine()){
+			if(line.startsWith("ERR")){
+				throw new IOException("Server error: " + line);
+			} else if(line.startsWith(kind)){
+				return line.split(" ");
+			}
+		}
+		throw new IOException("Connection closed");
+	}
+
+	/**
+	 * Runs the clients given on the command line and prints the throughput and latency of the server.
+	 * @param args	The options described in the class comment
+	 * @throws IOException if the embedded server cannot be started
+	 * @throws InterruptedException if interrupted while waiting for the clients
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException{
+		String host = null;
+		int port = GameServer.DEFAULT_PORT, clients = 1000, games = 5, watchers = 0, depth = 2, maxPlies = 200;
+		long seed = 1;
+		for(int i = 0; i < args.length; i++){
+			switch(args[i]){
+			case "-host":		host = args[++i]; break;
+			case "-port":		port = Integer.parseInt(args[++i]); break;
+			case "-clients":	clients = Integer.parseInt(args[++i]); break;
+			case "-games":		games = Integer.parseInt(args[++i]); break;
+			case "-watchers":	watchers = Integer.parseInt(args[++i]); break;
+			case "-depth":		depth = Integer.parseInt(args[++i]); break;
+			case "-maxPlies":	maxPlies = Integer.parseInt(args[++i]); break;
+			case "-seed":		seed = Long.parseLong(args[++i]); break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+
+		GameServer server = null;
+		if(host == null){
+			server = new GameServer(0, BoardTopology.get(2, BoardTopology.SIX_MENS_MORRIS), depth,
+					Runtime.getRuntime().availableProcessors());
+			host = "localhost";
+			port = server.getPort();
+		}
+		final ServerLoadTest test = new ServerLoadTest(host, port);
+		final long[][] latencies = new long[clients][];
+		final CountDownLatch done = new CountDownLatch(clients + watchers);
+		final int clientGames = games, clientPlies = maxPlies;
+		ExecutorService pool = GameServer.newThreadPerTaskExecutor("load-client");
+		test.watchersReady = new CountDownLatch(watchers);
+		long start = System.nanoTime();
+		for(int w = 0; w < watchers; w++){
+			pool.execute(new Runnable(){
+				public void run(){
+					try{
+						test.watchGame();
+					} catch(IOException e){
+						test.watchersReady.countDown();
+						test.droppedWatchers.incrementAndGet();
+					} catch(InterruptedException e){
+						Thread.currentThread().interrupt();
+					} finally{
+						done.countDown();
+					}
+				}
+			});
+		}
+		for(int c = 0; c < clients; c++){
+			final int client = c;
+			final Random random = new Random(SelfPlay.gameSeed(seed, c));
+			pool.execute(new Runnable(){
+				public void run(){
+					try{
+						latencies[client] = test.playClient(clientGames, clientPlies, random, client == 0);
+					} catch(InterruptedException e){
+						Thread.currentThread().interrupt();
+						latencies[client] = new long[0];
+					} catch(IOException e){
+						test.failedClients.incrementAndGet();
+						latencies[client] = new long[0];
+						System.err.println("Client " + client + " failed: " + e.getMessage());
+					} finally{
+						done.countDown();
+					}
+				}
+			});
+		}
+		while(!done.await(5, TimeUnit.SECONDS)){
+			System.out.printf("%d clients connected, %d games finished, %d moves%n", test.connected.get(),
+					test.finishedGames.get(), test.moves.get());
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+		if(server != null){
+			server.close();
+		}
+
+		int total = 0;
+		for(long[] client : latencies){
+			total += client.length;
+		}
+		long[] all = new long[total];
+		int offset = 0;
+		for(long[] client : latencies){
+			System.arraycopy(client, 0, all, offset, client.length);
+			offset += client.length;
+		}
+		Arrays.sort(all);
+		System.out.printf("%d clients, %d games finished (%d abandoned) in %.1f s: %.1f games/s, %.0f moves/s%n", clients,
+				test.finishedGames.get(), test.abandonedGames.get(), seconds, test.finishedGames.get() / seconds,
+				test.moves.get() / seconds);
+		if(total > 0){
+			System.out.printf("move latency: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n", all[total / 2] / 1000.0,
+					all[(int) (total * 0.9)] / 1000.0, all[(int) (total * 0.99)] / 1000.0, all[total - 1] / 1000.0);
+		}
+		if(watchers > 0){
+			System.out.printf("%d spectators watched game %d (%d could not join): %d updates, %d dropped%n", test.watched.get(),
+					test.watchedGame, test.missedWatchers.get(), test.updates.get(), test.droppedWatchers.get());
+		}
+		if(test.failedClients.get() > 0){
+			System.out.println(test.failedClients.get() + " clients failed");
+			System.exit(1);
+		}
+	}
+
+}
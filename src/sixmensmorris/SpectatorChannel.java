@@ -0,0 +1,213 @@
+package sixmensmorris;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the moves of one game to any number of spectators.
+ *
+ * A spectator first receives the whole game as a STATE line (see GameServer), then one DELTA line per turn with only what
+ * changed:
+ * <pre>
+ * DELTA status colour remove blueInHand redInHand point:state ...
+ * </pre>
+ * where the five numbers are as in a STATE line and every changed point is listed with its new state. Each line is built once
+ * and the same String is handed to every spectator.
+ *
+ * Every spectator has a queue of a fixed size, emptied by its own thread, so a game with thousands of spectators uses bounded
+ * memory and the players never wait for a spectator. A spectator whose queue is full when a line is published is too slow to
+ * keep up: it is dropped and its connection closed, rather than sent a game with gaps.
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public class SpectatorChannel {
+
+	public static final int DEFAULT_QUEUE_SIZE = 64;
+
+	private static final String CLOSE = new String("CLOSE");	//Put in a queue to stop its spectator, compared by identity
+
+	/**
+	 * Where the lines for one spectator go, such as its connection.
+	 */
+	public interface Sink {
+		/**
+		 * Writes one line.
+		 * @param line	The line, without the end of line
+		 * @throws IOException if the spectator cannot be written to
+		 */
+		void send(String line) throws IOException;
+
+		/**
+		 * Closes the sink when the spectator is dropped for falling behind.
+		 */
+		void close();
+	}
+
+	private final int queueSize;
+	private final int[] points;				//The states of the points as last published
+	private int status, colour, remove, blueInHand, redInHand;
+	private final Set<Spectator> spectators = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger dropped = new AtomicInteger();
+	private boolean closed;
+
+	/**
+	 * Constructs a channel for a game.
+	 * @param game		The game, whose current state is the start of the channel
+	 * @param queueSize	The number of lines a spectator may fall behind before it is dropped
+	 */
+	public SpectatorChannel(GameEngine game, int queueSize){
+		this.queueSize = queueSize;
+		this.points = game.getBoard().getBoardState().clone();
+		this.status = game.status();
+		this.colour = game.getColour();
+		this.remove = game.mustRemove() ? 1 : 0;
+		this.blueInHand = game.getInHand(1);
+		this.redInHand = game.getInHand(2);
+	}
+
+	/**
+	 * Adds a spectator, who is sent the current state first. The spectator writes the lines to the sink when run, until it
+	 * leaves or is dropped, and must be run on a thread of its own.
+	 * @param sink	Where the lines go
+	 * @return		The spectator
+	 */
+	public synchronized Spectator watch(Sink sink){
+		Spectator spectator = new Spectator(sink);
+		if(closed){
+			spectator.queue.offer(CLOSE);
+			return spectator;
+		}
+		StringBuilder line = new StringBuilder(32 + points.length);
+		appendHeader(line.append("STATE"));
+		line.append(' ');
+		for(int point : points){
+			line.append((char) ('0' + point));
+		}
+		spectator.queue.offer(line.toString());
+		spectators.add(spectator);
+		return spectator;
+	}
+
+	/**
+	 * Sends the changes since the last published state to every spectator, and drops the spectators that have fallen behind.
+	 * @param game	The game after a move
+	 */
+	public synchronized void publish(GameEngine game){
+		if(closed){
+			return;
+		}
+		int[] state = game.getBoard().getBoardState();
+		StringBuilder line = new StringBuilder(48);
+		status = game.status();
+		colour = game.getColour();
+		remove = game.mustRemove() ? 1 : 0;
+		blueInHand = game.getInHand(1);
+		redInHand = game.getInHand(2);
+		appendHeader(line.append("DELTA"));
+		for(int i = 0; i < points.length; i++){
+			if(state[i] != points[i]){
+				points[i] = state[i];
+				line.append(' ').append(i).append(':').append(state[i]);
+			}
+		}
+		String delta = line.toString();
+		for(Spectator spectator : spectators){
+			if(spectator.queue.remainingCapacity() <= 1 || !spectator.queue.offer(delta)){
+				spectator.drop();
+			}
+		}
+	}
+
+	/**
+	 * Writes the numbers that start a STATE or DELTA line.
+	 * @param line	The line
+	 */
+	private void appendHeader(StringBuilder line){
+		line.append(' ').append(status).append(' ').append(colour).append(' ').append(remove).append(' ').append(blueInHand)
+				.append(' ').append(redInHand);
+	}
+
+	/**
+	 * Stops every spectator once it has been sent the lines already published, and refuses new ones.
+	 */
+	public synchronized void close(){
+		closed = true;
+		for(Spectator spectator : spectators){
+			spectator.leave();
+		}
+	}
+
+	/**
+	 * Returns the number of spectators.
+	 * @return	The number of spectators watching
+	 */
+	public int getSpectatorCount(){
+		return spectators.size();
+	}
+
+	/**
+	 * Returns the number of spectators dropped for falling behind.
+	 * @return	The number of dropped spectators
+	 */
+	public int getDropped(){
+		return dropped.get();
+	}
+
+	/**
+	 * One spectator: its queue of lines, and the loop that writes them.
+	 */
+	public class Spectator implements Runnable {
+		private final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(queueSize + 1); //One more for CLOSE
+		private final Sink sink;
+		private volatile boolean stopped;
+
+		private Spectator(Sink sink){
+			this.sink = sink;
+		}
+
+		/**
+		 * Writes lines to the sink until the spectator leaves, is dropped, or cannot be written to.
+		 */
+		public void run(){
+			try{
+				for(String line = queue.take(); line != CLOSE && !stopped; line = queue.take()){
+					sink.send(line);
+				}
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			} catch(IOException e){
+				//The spectator went away
+			} finally{
+				spectators.remove(this);
+			}
+		}
+
+		/**
+		 * Stops watching once the lines already queued have been written.
+		 */
+		public void leave(){
+			spectators.remove(this);
+			queue.offer(CLOSE);
+		}
+
+		/**
+		 * Stops watching at once, without writing the queued lines. Closing the sink wakes the loop if it is stuck writing to a
+		 * slow spectator.
+		 */
+		private void drop(){
+			if(spectators.remove(this)){
+				dropped.incrementAndGet();
+				stopped = true;
+				queue.clear();
+				queue.offer(CLOSE);
+				sink.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,240 @@
+package sixmensmorris;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The 16 symmetries of a board: the 8 rotations and reflections of the square, each with or without turning the layers inside
+ * out (the outermost layer swapped with the innermost, and so on). Every symmetry keeps the adjacent points adjacent and maps
+ * mills to mills, for every variant, so symmetric positions have the same value and their moves correspond.
+ *
+ * Symmetry t maps point 8 * layer + k to 8 * layer' + k', where, with r = t % 4:
+ * <ul>
+ * <li>k' = k + 2r, a clockwise rotation by r quarter turns, or k' = 2r - k if bit 2 of t is set, a reflection in the vertical
+ * line through the top middle point followed by the rotation (modulo 8);</li>
+ * <li>layer' = N - 1 - layer if bit 3 of t is set, otherwise layer' = layer.</li>
+ * </ul>
+ * Symmetry 0 is the identity. The permutations are built once per number of layers and shared.
+ *
+ * canonicalize picks, among the 16 symmetric positions, the one whose point states read from point 0 up are the smallest
+ * (comparing them like the digits of a number), so all symmetric positions have the same canonical position.
+ *
+ * Usage: java sixmensmorris.Symmetry [-N layers], which checks the symmetries of every variant
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public final class Symmetry {
+
+	public static final int COUNT = 16;
+	public static final int IDENTITY = 0;
+
+	private static final ConcurrentHashMap<Integer, Symmetry> CACHE = new ConcurrentHashMap<Integer, Symmetry>();
+
+	private final int N;
+	private final int points;
+	private final int[] image;		//image[t * points + i]: where symmetry t moves point i
+	private final int[] source;		//source[t * points + j]: the point symmetry t moves to j
+	private final int[] inverse;	//inverse[t]: the symmetry that undoes t
+
+	/**
+	 * Returns the symmetries of boards with a number of layers, building them the first time they are needed.
+	 * @param N	The number of layers
+	 * @return	The shared symmetries
+	 */
+	public static Symmetry get(int N){
+		Symmetry symmetry = CACHE.get(N);
+		if(symmetry == null){
+			symmetry = new Symmetry(N);
+			Symmetry existing = CACHE.putIfAbsent(N, symmetry);
+			if(existing != null){
+				symmetry = existing;
+			}
+		}
+		return symmetry;
+	}
+
+	/**
+	 * Builds the permutations of every symmetry.
+	 * @param N	The number of layers
+	 */
+	private Symmetry(int N){
+		int perLayer = BoardTopology.NUM_POINTS_PER_LAYER;
+		this.N = N;
+		this.points = N * perLayer;
+		this.image = new int[COUNT * points];
+		this.source = new int[COUNT * points];
+		this.inverse = new int[COUNT];
+		for(int t = 0; t < COUNT; t++){
+			int rotation = 2 * (t & 3);
+			boolean reflect = (t & 4) != 0, swap = (t & 8) != 0;
+			for(int i = 0; i < points; i++){
+				int layer = i / perLayer, k = i % perLayer;
+				int k2 = ((reflect ? rotation - k : rotation + k) + perLayer) % perLayer;
+				int layer2 = swap ? N - 1 - layer : layer;
+				image[t * points + i] = layer2 * perLayer + k2;
+				source[t * points + layer2 * perLayer + k2] = i;
+			}
+		}
+		for(int t = 0; t < COUNT; t++){
+			for(int u = 0; u < COUNT; u++){
+				boolean undoes = true;
+				for(int i = 0; i < points && undoes; i++){
+					undoes = image[u * points + image[t * points + i]] == i;
+				}
+				if(undoes){
+					inverse[t] = u;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of layers.
+	 * @return	The number of layers
+	 */
+	public int getN(){
+		return N;
+	}
+
+	/**
+	 * Returns where a symmetry moves a point.
+	 * @param transform	The symmetry, from 0 to COUNT - 1
+	 * @param point		The point
+	 * @return			The point it is moved to
+	 */
+	public int map(int transform, int point){
+		return image[transform * points + point];
+	}
+
+	/**
+	 * Returns the symmetry that undoes another.
+	 * @param transform	The symmetry
+	 * @return			The inverse symmetry
+	 */
+	public int inverse(int transform){
+		return inverse[transform];
+	}
+
+	/**
+	 * Moves a packed move by a symmetry, so that it is the same move in the symmetric position.
+	 * @param transform	The symmetry
+	 * @param move		The packed move
+	 * @return			The moved packed move
+	 */
+	public int mapMove(int transform, int move){
+		if(move == Move.NONE){
+			return move;
+		}
+		int to = Move.to(move), from = Move.from(move), removed = Move.removed(move);
+		int result;
+		if(to == Move.NO_POINT){
+			return Move.remove(map(transform, removed));
+		} else if(from == Move.NO_POINT){
+			result = Move.place(map(transform, to));
+		} else{
+			result = Move.slide(map(transform, from), map(transform, to));
+		}
+		return removed == Move.NO_POINT ? result : Move.withRemove(result, map(transform, removed));
+	}
+
+	/**
+	 * Writes the position a symmetry makes of another.
+	 * @param transform	The symmetry
+	 * @param pieces	The state of every point
+	 * @param out		Receives the state of every point after the symmetry, must not be pieces
+	 */
+	public void apply(int transform, int[] pieces, int[] out){
+		int offset = transform * points;
+		for(int j = 0; j < points; j++){
+			out[j] = pieces[source[offset + j]];
+		}
+	}
+
+	/**
+	 * Finds the canonical position among the symmetric ones: the one whose point states, read from point 0 up, are smallest.
+	 * @param pieces	The state of every point
+	 * @param out		Receives the canonical position, must not be pieces
+	 * @return			The symmetry that makes the canonical position of pieces
+	 */
+	public int canonicalize(int[] pieces, int[] out){
+		int best = IDENTITY;
+		for(int t = 1; t < COUNT; t++){
+			int offset = t * points, bestOffset = best * points;
+			for(int j = 0; j < points; j++){
+				int a = pieces[source[offset + j]], b = pieces[source[bestOffset + j]];
+				if(a != b){
+					if(a < b){
+						best = t;
+					}
+					break;
+				}
+			}
+		}
+		apply(best, pieces, out);
+		return best;
+	}
+
+	/**
+	 * Finds the canonical position of a board.
+	 * @param board	The board
+	 * @param out	Receives the canonical position
+	 * @return		The symmetry that makes the canonical position of the board
+	 * @see #canonicalize(int[], int[])
+	 */
+	public int canonicalize(Board board, int[] out){
+		return canonicalize(board.getBoardState(), out);
+	}
+
+	/**
+	 * Checks that every symmetry of every variant keeps adjacency and mills, and that the inverses undo them.
+	 * @param args	The options described in the class comment
+	 */
+	public static void main(String[] args){
+		int N = 2;
+		for(int i = 0; i < args.length; i++){
+			switch(args[i]){
+			case "-N":			N = Integer.parseInt(args[++i]); break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+		Symmetry symmetry = get(N);
+		int failed = 0;
+		int[] variants = {BoardTopology.SIX_MENS_MORRIS, BoardTopology.NINE_MENS_MORRIS, BoardTopology.TWELVE_MENS_MORRIS};
+		for(int variant : variants){
+			BoardTopology topology = BoardTopology.get(N, variant);
+			for(int t = 0; t < COUNT; t++){
+				for(int i = 0; i < symmetry.points; i++){
+					if(symmetry.map(symmetry.inverse(t), symmetry.map(t, i)) != i){
+						failed++;
+					}
+					for(int j = 0; j < symmetry.points; j++){
+						if(topology.isAdjacent(i, j) != topology.isAdjacent(symmetry.map(t, i), symmetry.map(t, j))){
+							failed++;
+						}
+					}
+				}
+				for(int l = 0; l < topology.getLines(); l++){
+					boolean found = false;
+					for(int m = 0; m < topology.getLines() && !found; m++){
+						int matched = 0;
+						for(int a = 0; a < 3; a++){
+							for(int b = 0; b < 3; b++){
+								matched += symmetry.map(t, topology.getLinePoint(l, a)) == topology.getLinePoint(m, b) ? 1 : 0;
+							}
+						}
+						found = matched == 3;
+					}
+					failed += found ? 0 : 1;
+				}
+			}
+		}
+		System.out.println(COUNT + " symmetries of " + N + " layers: " + (failed == 0 ? "ok" : failed + " checks FAILED"));
+		if(failed > 0){
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,352 @@
+package sixmensmorris;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * An endgame tablebase: the exact value of every position of the moving phase (no pieces left to place) with a given number of
+ * pieces, found by retrograde analysis, and the number of turns to the end of the game with best play.
+ *
+ * Positions are stored from the side of the player to move, called the mover: a slice (m, o) holds every position with m
+ * pieces of the mover and o of the opponent, indexed by PositionIndexer with the mover's pieces ranked as blue. Each value is
+ * a short:
+ * <ul>
+ * <li>d &gt; 0: the mover wins in d turns;</li>
+ * <li>d &lt; 0: the mover loses in -d - 1 turns (-1: the mover has no move and has lost);</li>
+ * <li>0: a draw, neither side can force a win.</li>
+ * </ul>
+ * Repetitions are not taken into account, so a draw here means the game can go on for ever. The value of every position is
+ * stored, including the ones symmetric to others, so a probe is a single lookup. The tablebase is made by TablebaseGenerator,
+ * and saved in the compressed format of TablebaseFile.
+ *
+ * @author Zichen Jiang
+ * @version 1
+ * @see TablebaseGenerator
+ * @see TablebaseFile
+ */
+public class Tablebase {
+
+	public static final int LOSS = -1;
+	public static final int DRAW = 0;
+	public static final int WIN = 1;
+	public static final int UNKNOWN = 2;			//The position is not in the tablebase
+	public static final int MIN_PIECES = 3;			//A player with fewer pieces has lost
+	public static final Path DEFAULT_FILE = Paths.get("tablebase.dat");
+
+	private static final int NOT_FOUND = Integer.MIN_VALUE;
+
+	private static final DefaultFile<Tablebase> DEFAULT = new DefaultFile<Tablebase>(DEFAULT_FILE){
+		final Tablebase load(Path file) throws IOException{
+			return Tablebase.load(file);
+		}
+
+		final BoardTopology getTopology(Tablebase tablebase){
+			return tablebase.topology;
+		}
+	};
+
+	private final BoardTopology topology;
+	private final PositionIndexer indexer;
+	private final int maxPieces;
+	private final Slice[] slices;					//slices[m * (maxPieces + 1) + o]: the values of slice (m, o), or null
+
+	/**
+	 * Constructs an empty tablebase for boards of a given topology.
+	 * @param topology	The shape and rules of the board
+	 */
+	public Tablebase(BoardTopology topology){
+		this.topology = topology;
+		this.indexer = new PositionIndexer(topology);
+		this.maxPieces = indexer.getMaxPieces();
+		this.slices = new Slice[(maxPieces + 1) * (maxPieces + 1)];
+	}
+
+	/**
+	 * Returns the topology of the boards in the tablebase.
+	 * @return	The shape and rules of the board
+	 */
+	public BoardTopology getTopology(){
+		return topology;
+	}
+
+	/**
+	 * Returns the largest number of pieces of one player in a slice.
+	 * @return	The number of pieces of the variant
+	 */
+	public int getMaxPieces(){
+		return maxPieces;
+	}
+
+	/**
+	 * Returns the indexer the slices are indexed with.
+	 * @return	The indexer
+	 */
+	PositionIndexer getIndexer(){
+		return indexer;
+	}
+
+	/**
+	 * Returns whether a slice has been solved.
+	 * @param mover		The number of pieces of the player to move
+	 * @param opponent	The number of pieces of the other player
+	 * @return			Whether the slice is in the tablebase
+	 */
+	public boolean hasSlice(int mover, int opponent){
+		return mover >= MIN_PIECES && opponent >= MIN_PIECES && mover <= maxPieces && opponent <= maxPieces
+				&& slices[mover * (maxPieces + 1) + opponent] != null;
+	}
+
+	/**
+	 * Returns the values of a slice.
+	 * @param mover		The number of pieces of the player to move
+	 * @param opponent	The number of pieces of the other player
+	 * @return			The values, indexed by PositionIndexer, or null if the slice is not in the tablebase
+	 */
+	Slice getSlice(int mover, int opponent){
+		return hasSlice(mover, opponent) ? slices[mover * (maxPieces + 1) + opponent] : null;
+	}
+
+	/**
+	 * Puts the values of a slice into the tablebase.
+	 * @param mover		The number of pieces of the player to move
+	 * @param opponent	The number of pieces of the other player
+	 * @param values	The values, indexed by PositionIndexer
+	 */
+	void setSlice(int mover, int opponent, Slice values){
+		slices[mover * (maxPieces + 1) + opponent] = values;
+	}
+
+	/**
+	 * The values of one slice.
+	 */
+	interface Slice {
+
+		/**
+		 * Returns whether a position is won, drawn or lost.
+		 * @param index	The index of the position
+		 * @return		WIN, DRAW or LOSS
+		 */
+		int wdl(long index);
+
+		/**
+		 * Returns the stored value of a position, which also gives the number of turns to the end.
+		 * @param index	The index of the position
+		 * @return		The value as described in the class comment
+		 */
+		int value(long index);
+	}
+
+	/**
+	 * The values of one slice, two bytes per position, kept in memory mapped from a file. A mapping holds at most 2 GB, so a
+	 * slice is mapped in chunks of 2^CHUNK_BITS values, and indexed with a long.
+	 */
+	static final class Values implements Slice {
+		static final int CHUNK_BITS = 28;
+		private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+		private final long size;
+		private final MappedByteBuffer[] mapped;
+		private final ShortBuffer[] chunks;
+
+		/**
+		 * Maps the values of a slice from a file. A file opened for writing is made longer if it is too short.
+		 * @param channel	The file
+		 * @param mode		READ_ONLY, or READ_WRITE to change the values
+		 * @param position	Where the values start in the file
+		 * @param size		The number of values
+		 * @throws IOException if the file cannot be mapped
+		 */
+		Values(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException{
+			int count = (int) ((size + CHUNK_MASK) >>> CHUNK_BITS);
+			this.size = size;
+			this.mapped = new MappedByteBuffer[count];
+			this.chunks = new ShortBuffer[count];
+			for(int c = 0; c < count; c++){
+				long length = Math.min(size - ((long) c << CHUNK_BITS), 1L << CHUNK_BITS);
+				mapped[c] = channel.map(mode, position + ((long) c << (CHUNK_BITS + 1)), 2 * length);
+				chunks[c] = mapped[c].asShortBuffer();
+			}
+		}
+
+		/**
+		 * Returns the number of values.
+		 * @return	The number of positions in the slice
+		 */
+		long size(){
+			return size;
+		}
+
+		/**
+		 * Returns a value.
+		 * @param index	The index of the position
+		 * @return		The stored value
+		 */
+		short get(long index){
+			return chunks[(int) (index >>> CHUNK_BITS)].get((int) (index & CHUNK_MASK));
+		}
+
+		@Override
+		public int wdl(long index){
+			return Integer.signum(get(index));
+		}
+
+		@Override
+		public int value(long index){
+			return get(index);
+		}
+
+		/**
+		 * Changes a value.
+		 * @param index	The index of the position
+		 * @param value	The value to store
+		 */
+		void put(long index, short value){
+			chunks[(int) (index >>> CHUNK_BITS)].put((int) (index & CHUNK_MASK), value);
+		}
+
+		/**
+		 * Writes the changed values to the file.
+		 */
+		void force(){
+			for(MappedByteBuffer chunk : mapped){
+				chunk.force();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of turns a value means.
+	 * @param value	The stored value
+	 * @return		The number of turns to the end of the game, 0 for a draw
+	 */
+	static int distance(int value){
+		return value > 0 ? value : value < 0 ? -value - 1 : 0;
+	}
+
+	/**
+	 * Returns the slice of a position.
+	 * @param board		The board, with no pieces left to place
+	 * @param colour	The colour to move
+	 * @return			The slice, or null if the position is not in the tablebase
+	 */
+	private Slice slice(Board board, int colour){
+		if(board.getTopology() != topology || board.getInHand(1) != 0 || board.getInHand(2) != 0){
+			return null;
+		}
+		return getSlice(board.getPieceCount(colour), board.getPieceCount(3 - colour));
+	}
+
+	/**
+	 * Looks up the stored value of a position.
+	 * @param board		The board, with no pieces left to place
+	 * @param colour	The colour to move
+	 * @return			The stored value, or NOT_FOUND if the position is not in the tablebase
+	 */
+	private int lookup(Board board, int colour){
+		Slice slice = slice(board, colour);
+		return slice == null ? NOT_FOUND : slice.value(indexer.rank(board.getBoardState(), colour));
+	}
+
+	/**
+	 * Returns whether a position is in the tablebase.
+	 * @param board		The board
+	 * @param colour	The colour to move
+	 * @return			Whether probe gives its value
+	 */
+	public boolean contains(Board board, int colour){
+		return slice(board, colour) != null;
+	}
+
+	/**
+	 * Returns the value of a position for the player to move.
+	 * @param board		The board
+	 * @param colour	The colour to move (1 = blue, 2 = red)
+	 * @return			WIN, DRAW or LOSS, or UNKNOWN if the position is not in the tablebase
+	 */
+	public int probe(Board board, int colour){
+		Slice slice = slice(board, colour);
+		return slice == null ? UNKNOWN : slice.wdl(indexer.rank(board.getBoardState(), colour));
+	}
+
+	/**
+	 * Returns how many turns the game lasts with best play, the winner winning as fast as possible and the loser losing as slowly
+	 * as possible.
+	 * @param board		The board
+	 * @param colour	The colour to move
+	 * @return			The number of turns, 0 for a draw, or -1 if the position is not in the tablebase
+	 */
+	public int distance(Board board, int colour){
+		int value = lookup(board, colour);
+		return value == NOT_FOUND ? -1 : distance(value);
+	}
+
+	/**
+	 * Returns a best move: the fastest win, or a drawing move, or the slowest loss.
+	 * @param position	The board, which is not changed
+	 * @param colour	The colour to move
+	 * @return			The packed move, or Move.NONE if the position is not in the tablebase or has no move
+	 */
+	public int bestMove(Board position, int colour){
+		if(slice(position, colour) == null){
+			return Move.NONE;
+		}
+		Board board = new Board(topology, position.getBoardState().clone());
+		board.setInHand(0, 0);
+		int[] moves = new int[MoveGenerator.maxMoves(topology)];
+		int count = MoveGenerator.generate(board, colour, moves, 0);
+		int best = Move.NONE, bestScore = Integer.MIN_VALUE;
+		for(int i = 0; i < count; i++){
+			int score;
+			if(Move.removed(moves[i]) != Move.NO_POINT && board.getPieceCount(3 - colour) - 1 < MIN_PIECES){
+				score = Integer.MAX_VALUE;
+			} else{
+				board.makeMove(moves[i], colour);
+				int value = lookup(board, 3 - colour);
+				board.unmakeMove(moves[i], colour);
+				//The opponent's loss in n turns is a win in n + 1, sooner is better; its win is a loss, later is better
+				score = value == NOT_FOUND ? Integer.MIN_VALUE + 1 : value < 0 ? 1000000 - distance(value) : value > 0 ?
+						-1000000 + value : 0;
+			}
+			if(score > bestScore){
+				bestScore = score;
+				best = moves[i];
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Writes the tablebase to a file in the compressed format.
+	 * @param file	The file
+	 * @throws IOException if the file cannot be written
+	 * @see TablebaseFile#write(Tablebase, Path)
+	 */
+	public void save(Path file) throws IOException{
+		TablebaseFile.write(this, file);
+	}
+
+	/**
+	 * Reads a tablebase written by save. The file is mapped, and decompressed a block at a time as it is probed.
+	 * @param file	The file
+	 * @return		The tablebase
+	 * @throws IOException if the file cannot be read or is not a tablebase
+	 */
+	public static Tablebase load(Path file) throws IOException{
+		return TablebaseFile.read(file, TablebaseFile.DEFAULT_CACHE_BLOCKS);
+	}
+
+	/**
+	 * Returns the tablebase in DEFAULT_FILE for a topology, loading it the first time it is asked for. The file is read
+	 * only once, even if it is for another topology.
+	 * @param topology	The shape and rules of the board
+	 * @return			The tablebase, or null if there is none for the topology
+	 */
+	public static Tablebase getDefault(BoardTopology topology){
+		return DEFAULT.get(topology);
+	}
+
+}
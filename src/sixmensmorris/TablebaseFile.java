@@ -0,0 +1,489 @@
+package sixmensmorris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The file format of a Tablebase: the values are packed, cut into blocks that are compressed on their own, and found through an
+ * index, so a probe reads and decompresses a single block of the memory-mapped file. The last blocks used are kept decompressed.
+ *
+ * Each slice has two parts:
+ * <ul>
+ * <li>WDL blocks of WDL_BLOCK positions, 2 bits per position (0 = draw, 1 = win, 2 = loss), four positions to a byte starting
+ * with the lowest bits;</li>
+ * <li>distance blocks of DISTANCE_BLOCK positions, the number of turns to the end of the game of each position, in 1 byte, or 2
+ * if a slice has longer games.</li>
+ * </ul>
+ * probe only needs the first, which is a quarter of the size. The file (big-endian) starts with a header
+ * <pre>
+ * int		MAGIC
+ * int		VERSION
+ * int		layers
+ * int		variant
+ * long[]	for every slice (m, o), m and o from MIN_PIECES up: where its index starts, or 0 if it is not in the tablebase
+ * </pre>
+ * and the index of a slice is
+ * <pre>
+ * int		number of WDL blocks
+ * int		number of distance blocks
+ * int		bytes per distance
+ * long[]	where every WDL block starts, then every distance block
+ * int[]	the compressed length of every WDL block, then every distance block
+ * </pre>
+ * Blocks are compressed with Deflater and never cross a multiple of SEGMENT_SIZE, so each lies in one mapping. Files of version
+ * 1, two bytes per position without compression, can still be read.
+ *
+ * Usage: java sixmensmorris.TablebaseFile file [-probes n], which prints the size of the file and times random probes
+ *
+ * @author Zichen Jiang
+ * @version 1
+ * @see Tablebase
+ */
+public final class TablebaseFile {
+
+	public static final int MAGIC = 0x4E4D5442;			//"NMTB"
+	public static final int VERSION = 2;
+	public static final int WDL_BLOCK = 1 << 13;		//Positions per WDL block, 2 KB
+	public static final int DISTANCE_BLOCK = 1 << 11;	//Positions per distance block, 2 or 4 KB
+	public static final int DEFAULT_CACHE_BLOCKS = 4096;
+
+	private static final int RAW_VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final long SEGMENT_SIZE = 1L << 30;
+	private static final int BLOCK_BYTES = 2 * DISTANCE_BLOCK;	//The most bytes a decompressed block has
+
+	private TablebaseFile(){
+	}
+
+	/**
+	 * Writes a tablebase in the packed format.
+	 * @param tablebase	The tablebase
+	 * @param file		The file
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Tablebase tablebase, Path file) throws IOException{
+		BoardTopology topology = tablebase.getTopology();
+		int first = Tablebase.MIN_PIECES, last = tablebase.getMaxPieces(), slices = last - first + 1;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)){
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 8 * slices * slices);
+			header.putInt(MAGIC).putInt(VERSION).putInt(topology.getN()).putInt(topology.getVariant());
+			long position = header.capacity();
+			Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			for(int m = first; m <= last; m++){
+				for(int o = first; o <= last; o++){
+					Tablebase.Slice slice = tablebase.getSlice(m, o);
+					header.putLong(slice == null ? 0 : position);
+					if(slice != null){
+						position = writeSlice(channel, position, slice, tablebase.getIndexer().size(m, o), deflater);
+					}
+				}
+			}
+			deflater.end();
+			header.flip();
+			writeFully(channel, header, 0);
+		}
+	}
+
+	/**
+	 * Writes the index and the blocks of a slice.
+	 * @param channel	The file
+	 * @param position	Where the index starts
+	 * @param slice		The values of the slice
+	 * @param size		The number of positions
+	 * @param deflater	The compressor
+	 * @return			Where the slice ends
+	 * @throws IOException if the file cannot be written
+	 */
+	private static long writeSlice(FileChannel channel, long position, Tablebase.Slice slice, long size, Deflater deflater)
+			throws IOException{
+		int maxDistance = 0;
+		for(long i = 0; i < size; i++){
+			maxDistance = Math.max(maxDistance, Tablebase.distance(slice.value(i)));
+		}
+		int width = maxDistance < 256 ? 1 : 2;
+		int wdlBlocks = (int) ((size + WDL_BLOCK - 1) / WDL_BLOCK);
+		int distanceBlocks = (int) ((size + DISTANCE_BLOCK - 1) / DISTANCE_BLOCK);
+		int blocks = wdlBlocks + distanceBlocks;
+		ByteBuffer index = ByteBuffer.allocate(12 + 12 * blocks);
+		index.putInt(wdlBlocks).putInt(distanceBlocks).putInt(width);
+		long[] starts = new long[blocks];
+		int[] lengths = new int[blocks];
+		long end = position + index.capacity();
+		byte[] raw = new byte[BLOCK_BYTES], compressed = new byte[2 * BLOCK_BYTES];
+		for(int b = 0; b < blocks; b++){
+			boolean wdl = b < wdlBlocks;
+			long from = wdl ? (long) b * WDL_BLOCK : (long) (b - wdlBlocks) * DISTANCE_BLOCK;
+			int count = (int) Math.min(size - from, wdl ? WDL_BLOCK : DISTANCE_BLOCK);
+			int length = wdl ? (count + 3) / 4 : count * width;
+			Arrays.fill(raw, 0, length, (byte) 0);
+			for(int i = 0; i < count; i++){
+				int value = slice.value(from + i);
+				if(wdl){
+					raw[i >> 2] |= (value > 0 ? 1 : value < 0 ? 2 : 0) << ((i & 3) << 1);
+				} else if(width == 1){
+					raw[i] = (byte) Tablebase.distance(value);
+				} else{
+					raw[2 * i] = (byte) (Tablebase.distance(value) >>> 8);
+					raw[2 * i + 1] = (byte) Tablebase.distance(value);
+				}
+			}
+			deflater.reset();
+			deflater.setInput(raw, 0, length);
+			deflater.finish();
+			int packed = 0;
+			while(!deflater.finished()){
+				packed += deflater.deflate(compressed, packed, compressed.length - packed);
+			}
+			if(end / SEGMENT_SIZE != (end + packed - 1) / SEGMENT_SIZE){
+				end = (end / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+			}
+			starts[b] = end;
+			lengths[b] = packed;
+			writeFully(channel, ByteBuffer.wrap(compressed, 0, packed), end);
+			end += packed;
+		}
+		for(long start : starts){
+			index.putLong(start);
+		}
+		for(int length : lengths){
+			index.putInt(length);
+		}
+		index.flip();
+		writeFully(channel, index, position);
+		return end;
+	}
+
+	/**
+	 * Writes the whole of a buffer to a channel at a position.
+	 * @param channel	The channel
+	 * @param buffer	The buffer
+	 * @param position	Where to write it
+	 * @throws IOException if the channel cannot be written
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException{
+		while(buffer.hasRemaining()){
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Reads all of a buffer from a channel at a position.
+	 * @param channel	The channel
+	 * @param buffer	The buffer
+	 * @param position	Where to read from
+	 * @throws IOException if the file is too short
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException{
+		while(buffer.hasRemaining()){
+			int read = channel.read(buffer, position);
+			if(read < 0){
+				throw new IOException("Tablebase file too short");
+			}
+			position += read;
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Reads a tablebase. The file is mapped, and its blocks are decompressed as they are probed.
+	 * @param file			The file
+	 * @param cacheBlocks	The number of decompressed blocks to keep
+	 * @return				The tablebase
+	 * @throws IOException if the file cannot be read or is not a tablebase
+	 */
+	public static Tablebase read(Path file, int cacheBlocks) throws IOException{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(channel, header, 0);
+			int magic = header.getInt(), version = header.getInt();
+			if(magic != MAGIC || (version != VERSION && version != RAW_VERSION)){
+				throw new IOException(file + " is not a tablebase of version " + VERSION);
+			}
+			Tablebase tablebase = new Tablebase(BoardTopology.get(header.getInt(), header.getInt()));
+			if(version == RAW_VERSION){
+				readRaw(channel, tablebase);
+				return tablebase;
+			}
+			int first = Tablebase.MIN_PIECES, last = tablebase.getMaxPieces(), slices = last - first + 1;
+			MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((channel.size() + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+			for(int s = 0; s < segments.length; s++){
+				long start = s * SEGMENT_SIZE;
+				segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, channel.size() - start));
+			}
+			BlockCache cache = new BlockCache(cacheBlocks);
+			ByteBuffer directory = ByteBuffer.allocate(8 * slices * slices);
+			readFully(channel, directory, HEADER_SIZE);
+			for(int m = first; m <= last; m++){
+				for(int o = first; o <= last; o++){
+					long position = directory.getLong();
+					if(position != 0){
+						tablebase.setSlice(m, o, new PackedSlice(channel, position, segments, cache, (m - first) * slices + o - first));
+					}
+				}
+			}
+			return tablebase;
+		}
+	}
+
+	/**
+	 * Maps the slices of a file of version 1, which are stored one after the other, two bytes per position.
+	 * @param channel	The file
+	 * @param tablebase	Receives the slices
+	 * @throws IOException if the file is too short
+	 */
+	private static void readRaw(FileChannel channel, Tablebase tablebase) throws IOException{
+		long position = HEADER_SIZE;
+		for(int m = Tablebase.MIN_PIECES; m <= tablebase.getMaxPieces(); m++){
+			for(int o = Tablebase.MIN_PIECES; o <= tablebase.getMaxPieces(); o++){
+				ByteBuffer present = ByteBuffer.allocate(1);
+				readFully(channel, present, position++);
+				if(present.get() != 0){
+					long size = tablebase.getIndexer().size(m, o);
+					if(position + 2 * size > channel.size()){
+						throw new IOException("Tablebase file too short");
+					}
+					tablebase.setSlice(m, o, new Tablebase.Values(channel, FileChannel.MapMode.READ_ONLY, position, size));
+					position += 2 * size;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A slice read from a packed file.
+	 */
+	static final class PackedSlice implements Tablebase.Slice {
+		private final MappedByteBuffer[] segments;
+		private final BlockCache cache;
+		private final int id;				//Tells the blocks of the slices apart in the cache
+		private final int wdlBlocks, width;
+		private final long[] starts;
+		private final int[] lengths;
+
+		/**
+		 * Reads the index of a slice.
+		 * @param channel	The file
+		 * @param position	Where the index starts
+		 * @param segments	The mapped file
+		 * @param cache		The cache of decompressed blocks
+		 * @param id		A number of the slice, different from the other slices of the file
+		 * @throws IOException if the index cannot be read
+		 */
+		PackedSlice(FileChannel channel, long position, MappedByteBuffer[] segments, BlockCache cache, int id) throws IOException{
+			this.segments = segments;
+			this.cache = cache;
+			this.id = id;
+			ByteBuffer counts = ByteBuffer.allocate(12);
+			readFully(channel, counts, position);
+			this.wdlBlocks = counts.getInt();
+			int blocks = wdlBlocks + counts.getInt();
+			this.width = counts.getInt();
+			ByteBuffer index = ByteBuffer.allocate(12 * blocks);
+			readFully(channel, index, position + 12);
+			this.starts = new long[blocks];
+			this.lengths = new int[blocks];
+			index.asLongBuffer().get(starts);
+			index.position(8 * blocks);
+			index.asIntBuffer().get(lengths);
+		}
+
+		@Override
+		public int wdl(long index){
+			int code = cache.get(this, (int) (index / WDL_BLOCK), (int) (index % WDL_BLOCK));
+			return code == 1 ? Tablebase.WIN : code == 2 ? Tablebase.LOSS : Tablebase.DRAW;
+		}
+
+		@Override
+		public int value(long index){
+			int wdl = wdl(index);
+			if(wdl == Tablebase.DRAW){
+				return 0;
+			}
+			int distance = cache.get(this, wdlBlocks + (int) (index / DISTANCE_BLOCK), (int) (index % DISTANCE_BLOCK));
+			return wdl == Tablebase.WIN ? distance : -distance - 1;
+		}
+
+		/**
+		 * Decompresses a block.
+		 * @param block		The number of the block, WDL blocks first
+		 * @param inflater	The decompressor
+		 * @param scratch	A buffer for the compressed bytes, at least as long as the block
+		 * @param out		Receives the decompressed block
+		 */
+		void inflate(int block, Inflater inflater, byte[] scratch, byte[] out){
+			ByteBuffer segment = segments[(int) (starts[block] / SEGMENT_SIZE)].duplicate();
+			segment.position((int) (starts[block] % SEGMENT_SIZE));
+			segment.get(scratch, 0, lengths[block]);
+			inflater.reset();
+			inflater.setInput(scratch, 0, lengths[block]);
+			try{
+				int length = 0;
+				while(!inflater.finished()){
+					int inflated = inflater.inflate(out, length, out.length - length);
+					if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+						throw new DataFormatException("block ends early");
+					}
+					length += inflated;
+				}
+			} catch(DataFormatException e){
+				throw new IllegalStateException("Corrupt tablebase block " + block + " of slice " + id + ": " + e.getMessage());
+			}
+		}
+
+		/**
+		 * Reads one entry of a decompressed block.
+		 * @param block	The number of the block
+		 * @param data	The decompressed block
+		 * @param i		The position in the block
+		 * @return		The 2-bit code of a WDL block, or the distance of a distance block
+		 */
+		int decode(int block, byte[] data, int i){
+			if(block < wdlBlocks){
+				return data[i >> 2] >> ((i & 3) << 1) & 3;
+			}
+			return width == 1 ? data[i] & 0xFF : (data[2 * i] & 0xFF) << 8 | data[2 * i + 1] & 0xFF;
+		}
+	}
+
+	/**
+	 * The last blocks decompressed, shared by the slices of a file. Each block can be kept in one of WAYS places chosen by its
+	 * key, and the one used longest ago is replaced. Finding a block that is kept allocates nothing.
+	 */
+	static final class BlockCache {
+		private static final int WAYS = 4;
+
+		private final long[] keys;
+		private final long[] used;
+		private final byte[][] blocks;
+		private final int sets;
+		private final Inflater inflater = new Inflater();
+		private final byte[] scratch = new byte[2 * BLOCK_BYTES];
+		private long clock;
+
+		/**
+		 * Constructs an empty cache.
+		 * @param capacity	The number of blocks to keep, rounded up to a power of two
+		 */
+		BlockCache(int capacity){
+			int sets = 1;
+			while(sets * WAYS < capacity){
+				sets <<= 1;
+			}
+			this.sets = sets;
+			this.keys = new long[sets * WAYS];
+			this.used = new long[sets * WAYS];
+			this.blocks = new byte[sets * WAYS][];
+			Arrays.fill(keys, -1);
+		}
+
+		/**
+		 * Reads one entry of a block, decompressing the block first if it is not kept.
+		 * @param slice	The slice
+		 * @param block	The number of the block in the slice
+		 * @param i		The position in the block
+		 * @return		The entry
+		 */
+		synchronized int get(PackedSlice slice, int block, int i){
+			long key = (long) slice.id << 32 | block;
+			int set = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & (sets - 1);
+			int oldest = set * WAYS;
+			for(int way = set * WAYS; way < (set + 1) * WAYS; way++){
+				if(keys[way] == key){
+					used[way] = ++clock;
+					return slice.decode(block, blocks[way], i);
+				} else if(used[way] < used[oldest]){
+					oldest = way;
+				}
+			}
+			if(blocks[oldest] == null){
+				blocks[oldest] = new byte[BLOCK_BYTES];
+			}
+			keys[oldest] = -1;
+			slice.inflate(block, inflater, scratch, blocks[oldest]);
+			keys[oldest] = key;
+			used[oldest] = ++clock;
+			return slice.decode(block, blocks[oldest], i);
+		}
+	}
+
+	/**
+	 * Prints how large a tablebase file is against two bytes per position, and times probes of random positions.
+	 * @param args	The file, then the options described in the class comment
+	 * @throws IOException if the file cannot be read
+	 */
+	public static void main(String[] args) throws IOException{
+		if(args.length == 0){
+			System.err.println("Usage: java sixmensmorris.TablebaseFile file [-probes n]");
+			return;
+		}
+		int probes = 1000000;
+		for(int i = 1; i < args.length; i++){
+			switch(args[i]){
+			case "-probes":		probes = Integer.parseInt(args[++i]); break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+		Path file = Paths.get(args[0]);
+		Tablebase tablebase = Tablebase.load(file);
+		PositionIndexer indexer = tablebase.getIndexer();
+		long positions = 0;
+		for(int m = Tablebase.MIN_PIECES; m <= tablebase.getMaxPieces(); m++){
+			for(int o = Tablebase.MIN_PIECES; o <= tablebase.getMaxPieces(); o++){
+				positions += tablebase.hasSlice(m, o) ? indexer.size(m, o) : 0;
+			}
+		}
+		long bytes = Files.size(file);
+		System.out.printf("%,d positions in %,d bytes, %.2f bits per position (%.1f%% of 2 bytes per position)%n", positions,
+				bytes, 8.0 * bytes / positions, 100.0 * bytes / (2 * positions));
+
+		Random random = new Random(1);
+		int maxPieces = tablebase.getMaxPieces();
+		int[] pieces = new int[indexer.getPoints()];
+		Board[] boards = new Board[1024];
+		for(int b = 0; b < boards.length; b++){
+			int m, o;
+			do{
+				m = Tablebase.MIN_PIECES + random.nextInt(maxPieces - Tablebase.MIN_PIECES + 1);
+				o = Tablebase.MIN_PIECES + random.nextInt(maxPieces - Tablebase.MIN_PIECES + 1);
+			} while(!tablebase.hasSlice(m, o));
+			indexer.unrank((long) (random.nextDouble() * indexer.size(m, o)), m, o, pieces);
+			boards[b] = new Board(tablebase.getTopology(), pieces.clone());
+		}
+		int[] counts = new int[3];
+		long start = System.nanoTime();
+		for(int p = 0; p < probes; p++){
+			counts[tablebase.probe(boards[p & (boards.length - 1)], 1) + 1]++;
+		}
+		long cached = System.nanoTime() - start;
+		start = System.nanoTime();
+		int misses = Math.min(probes, 100000);
+		for(int p = 0; p < misses; p++){
+			int m, o;
+			do{
+				m = Tablebase.MIN_PIECES + random.nextInt(maxPieces - Tablebase.MIN_PIECES + 1);
+				o = Tablebase.MIN_PIECES + random.nextInt(maxPieces - Tablebase.MIN_PIECES + 1);
+			} while(!tablebase.hasSlice(m, o));
+			indexer.unrank((long) (random.nextDouble() * indexer.size(m, o)), m, o, pieces);
+			boards[0].setPieces(pieces);
+			counts[tablebase.probe(boards[0], 1) + 1]++;
+		}
+		long scattered = System.nanoTime() - start;
+		System.out.printf("%.2f us per probe of 1024 positions, %.2f us per probe of scattered positions (W/D/L %d/%d/%d)%n",
+				cached / 1000.0 / probes, scattered / 1000.0 / misses, counts[2], counts[1], counts[0]);
+	}
+
+}
@@ -0,0 +1,495 @@
+package sixmensmorris;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Makes a Tablebase by retrograde analysis, on several threads and with the values kept in files rather than in the heap, so
+ * that boards with more layers than fit in memory can be solved, and a run that is stopped can go on where it left off.
+ *
+ * A slice (m, o) depends on the slice with the colours swapped, which is reached by every move that does not remove a piece, and
+ * on the slice with one opponent piece fewer, reached by the moves that do. The slices are therefore solved in pairs, (m, o)
+ * with (o, m), in order of the total number of pieces. The pairs with the same total do not depend on each other and are solved
+ * at the same time. Within a pair, turn d finds the positions won in d turns (a move to a position the opponent loses in d - 1
+ * turns) and lost in d turns (every move reaches a position the opponent wins in at most d - 1 turns). Each turn is split into
+ * ranges of positions that are looked at in parallel: a value found in turn d is never needed in the same turn, so the order does
+ * not matter. Only one position of every group of symmetric ones (see Symmetry) is worked out, and its value is written to all of
+ * them.
+ *
+ * The work directory holds, for every pair:
+ * <ul>
+ * <li>m-o.values: the values of slice (m, o), and o-m.values unless m = o, two bytes per position, mapped into memory;</li>
+ * <li>m-o.canonical: a bit for every position of the pair that is worked out, mapped into memory, removed when it is solved;</li>
+ * <li>m-o.checkpoint: the next turn to look at, written after each turn, or the number of turns once it is solved.</li>
+ * </ul>
+ * A value is written to the symmetric positions before the position itself, and turns can be repeated, so a run that stopped in
+ * the middle of a turn starts that turn again and gets the same values. The pairs that are already solved are not solved again,
+ * so a tablebase can also be extended to more pieces.
+ *
+ * Usage: java sixmensmorris.TablebaseGenerator [-N layers] [-variant 6|9|12] [-pieces total] [-threads n] [-work dir] [-out file]
+ *
+ * @author Zichen Jiang
+ * @version 1
+ * @see Tablebase
+ */
+public class TablebaseGenerator {
+
+	public static final Path DEFAULT_WORK = Paths.get("tablebase.work");
+
+	private static final int CHECKPOINT_MAGIC = 0x4E4D5443;	//"NMTC"
+	private static final int MARK = -1;						//The turn of a pair whose canonical positions are not found yet
+	private static final int SOLVED = Integer.MAX_VALUE;
+	private static final int GRAIN = 1 << 14;				//Positions looked at by one task, a multiple of 64
+
+	private final BoardTopology topology;
+	private final Tablebase tablebase;
+	private final PositionIndexer indexer;
+	private final Symmetry symmetry;
+	private final int maxPieces;
+	private final Path work;
+	private final ForkJoinPool pool;
+	private PrintStream log;
+
+	/**
+	 * Constructs a generator.
+	 * @param topology	The shape and rules of the board
+	 * @param work		The work directory, which is created if it does not exist
+	 * @param threads	The number of threads
+	 */
+	public TablebaseGenerator(BoardTopology topology, Path work, int threads){
+		this.topology = topology;
+		this.tablebase = new Tablebase(topology);
+		this.indexer = tablebase.getIndexer();
+		this.symmetry = Symmetry.get(topology.getN());
+		this.maxPieces = tablebase.getMaxPieces();
+		this.work = work;
+		this.pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Solves every slice with at most a given number of pieces in all, going on from the checkpoints in the work directory.
+	 * @param maxTotal	The largest number of pieces of both players together
+	 * @param log		Receives a line for every pair of slices solved, or null
+	 * @return			The tablebase, mapped from the work directory
+	 * @throws IOException if the work directory cannot be read or written
+	 */
+	public Tablebase generate(int maxTotal, PrintStream log) throws IOException{
+		this.log = log;
+		Files.createDirectories(work);
+		int lowerTurns = 0;
+		try{
+			for(int total = 2 * Tablebase.MIN_PIECES; total <= Math.min(maxTotal, 2 * maxPieces); total++){
+				List<Pair> pairs = new ArrayList<Pair>();
+				for(int m = Math.max(Tablebase.MIN_PIECES, total - maxPieces); 2 * m <= total; m++){
+					pairs.add(new Pair(m, total - m, lowerTurns));
+				}
+				pool.invoke(new RecursiveAction(){
+					@Override
+					protected void compute(){
+						ForkJoinTask.invokeAll(pairs);
+					}
+				});
+				for(Pair pair : pairs){
+					lowerTurns = Math.max(lowerTurns, pair.turns);
+					for(int s = 0; s < pair.movers.length; s++){
+						tablebase.setSlice(pair.movers[s], pair.opponents[s], pair.values[s]);
+					}
+				}
+			}
+		} catch(UncheckedIOException e){
+			throw e.getCause();
+		}
+		return tablebase;
+	}
+
+	/**
+	 * Stops the threads.
+	 */
+	public void shutdown(){
+		pool.shutdown();
+	}
+
+	/**
+	 * One pair of slices, (m, o) and (o, m), solved from the slices with fewer pieces. A pair with m = o is one slice.
+	 */
+	class Pair extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final int[] movers, opponents;		//The slices of the pair
+		final Tablebase.Values[] values;
+		final LongBuffer[] canonical;		//canonical[s]: a bit for every position of slice s that is worked out
+		final int lowerTurns;				//No value of the slices with fewer pieces is more than this many turns
+		int turns;							//The number of turns it took to solve the pair
+		private final MappedByteBuffer[] canonicalMaps;
+
+		/**
+		 * Constructs a pair.
+		 * @param m				The number of pieces of the mover in the first slice
+		 * @param o				The number of pieces of the opponent in the first slice
+		 * @param lowerTurns	The most turns any pair with fewer pieces took
+		 */
+		Pair(int m, int o, int lowerTurns){
+			this.movers = m == o ? new int[]{m} : new int[]{m, o};
+			this.opponents = m == o ? new int[]{o} : new int[]{o, m};
+			this.values = new Tablebase.Values[2];
+			this.canonical = new LongBuffer[movers.length];
+			this.canonicalMaps = new MappedByteBuffer[movers.length];
+			this.lowerTurns = lowerTurns;
+		}
+
+		@Override
+		protected void compute(){
+			try{
+				solve();
+			} catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Solves the pair, or maps its values if it was solved before.
+		 * @throws IOException if the work directory cannot be read or written
+		 */
+		private void solve() throws IOException{
+			long start = System.nanoTime();
+			int first = readCheckpoint();
+			if(first == MARK){
+				for(int s = 0; s < movers.length; s++){
+					Files.deleteIfExists(file(s, ".values"));
+				}
+				Files.deleteIfExists(file(0, ".canonical"));
+			}
+			for(int s = 0; s < movers.length; s++){
+				try(FileChannel channel = FileChannel.open(file(s, ".values"), StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE)){
+					values[s] = new Tablebase.Values(channel, FileChannel.MapMode.READ_WRITE, 0, size(s));
+				}
+			}
+			values[1] = values[movers.length - 1];
+			if(first == SOLVED){
+				return;
+			}
+			mapCanonical();
+			if(first == MARK){
+				for(int s = 0; s < movers.length; s++){
+					ForkJoinTask.invokeAll(new Range(this, s, MARK, 0, size(s)));
+				}
+				checkpoint(0);
+				first = 0;
+			}
+			for(int d = first; ; d++){
+				long solved = 0;
+				List<Range> ranges = new ArrayList<Range>();
+				for(int s = 0; s < movers.length; s++){
+					ranges.add(new Range(this, s, d, 0, size(s)));
+				}
+				for(Range range : ForkJoinTask.invokeAll(ranges)){
+					solved += range.join();
+				}
+				//A turn that was cut off may have solved positions before the run stopped, so it does not end the pair
+				if(solved == 0 && d > lowerTurns && d > first){
+					turns = d;
+					break;
+				}
+				checkpoint(d + 1);
+			}
+			checkpoint(SOLVED);
+			Files.deleteIfExists(file(0, ".canonical"));
+			if(log != null){
+				log.printf("%d-%d: %,d positions, %d turns, %d ms%s%n", movers[0], opponents[0], size(0) + (movers.length > 1 ?
+						size(1) : 0), turns, (System.nanoTime() - start) / 1000000, first > 0 ? ", resumed at turn " + first : "");
+			}
+		}
+
+		/**
+		 * Returns the number of positions of a slice of the pair.
+		 * @param s	The slice in the pair
+		 * @return	The number of positions
+		 */
+		long size(int s){
+			return indexer.size(movers[s], opponents[s]);
+		}
+
+		/**
+		 * Returns a file of the pair in the work directory.
+		 * @param s			The slice in the pair the file is named after
+		 * @param suffix	The kind of file
+		 * @return			The path of the file
+		 */
+		private Path file(int s, String suffix){
+			return work.resolve(movers[s] + "-" + opponents[s] + suffix);
+		}
+
+		/**
+		 * Maps the canonical bits of both slices from one file.
+		 * @throws IOException if the file cannot be mapped
+		 */
+		private void mapCanonical() throws IOException{
+			try(FileChannel channel = FileChannel.open(file(0, ".canonical"), StandardOpenOption.READ, StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE)){
+				long position = 0;
+				for(int s = 0; s < movers.length; s++){
+					long bytes = 8 * ((size(s) + 63) >>> 6);
+					canonicalMaps[s] = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+					canonical[s] = canonicalMaps[s].asLongBuffer();
+					position += bytes;
+				}
+			}
+		}
+
+		/**
+		 * Reads the checkpoint of the pair.
+		 * @return	The next turn to look at, MARK if the pair has not been started or SOLVED if it is solved
+		 * @throws IOException if the checkpoint is of another board
+		 */
+		private int readCheckpoint() throws IOException{
+			Path file = file(0, ".checkpoint");
+			if(!Files.exists(file)){
+				return MARK;
+			}
+			try(DataInputStream in = new DataInputStream(Files.newInputStream(file))){
+				if(in.readInt() != CHECKPOINT_MAGIC || in.readInt() != topology.getN() || in.readInt() != topology.getVariant()){
+					throw new IOException(file + " is not a checkpoint of this board");
+				}
+				int turn = in.readInt();
+				turns = in.readInt();
+				return turn;
+			}
+		}
+
+		/**
+		 * Writes the values to the disk, then replaces the checkpoint of the pair.
+		 * @param turn	The next turn to look at, or SOLVED
+		 * @throws IOException if the checkpoint cannot be written
+		 */
+		private void checkpoint(int turn) throws IOException{
+			for(int s = 0; s < movers.length; s++){
+				values[s].force();
+				canonicalMaps[s].force();
+			}
+			Path file = file(0, ".checkpoint"), next = file(0, ".checkpoint.tmp");
+			try(DataOutputStream out = new DataOutputStream(Files.newOutputStream(next))){
+				out.writeInt(CHECKPOINT_MAGIC);
+				out.writeInt(topology.getN());
+				out.writeInt(topology.getVariant());
+				out.writeInt(turn);
+				out.writeInt(turns);
+			}
+			Files.move(next, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	/**
+	 * Looks at a range of the positions of one slice: finds the canonical ones, or the ones solved in a turn. A large range is
+	 * split in two.
+	 */
+	class Range extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+		private final Pair pair;
+		private final int s, turn;
+		private final long from, to;
+
+		/**
+		 * Constructs a range.
+		 * @param pair	The pair
+		 * @param s		The slice in the pair
+		 * @param turn	The turn, or MARK to find the canonical positions
+		 * @param from	The first index, a multiple of 64
+		 * @param to	The index after the last
+		 */
+		Range(Pair pair, int s, int turn, long from, long to){
+			this.pair = pair;
+			this.s = s;
+			this.turn = turn;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Long compute(){
+			if(to - from <= GRAIN){
+				Worker worker = new Worker(pair, s);
+				if(turn == MARK){
+					worker.mark(from, to);
+					return 0L;
+				}
+				return worker.turn(turn, from, to);
+			}
+			long middle = (from + (to - from) / 2) & ~63L;
+			Range low = new Range(pair, s, turn, from, middle);
+			low.fork();
+			long solved = new Range(pair, s, turn, middle, to).compute();
+			return solved + low.join();
+		}
+	}
+
+	/**
+	 * Works out positions of a slice of a pair, with a board and buffers of its own.
+	 */
+	class Worker {
+		private final Pair pair;
+		private final int s;
+		private final Board board = new Board(topology);
+		private final int[] pieces = new int[topology.getPoints()];
+		private final int[] image = new int[pieces.length];
+		private final int[] moves = new int[MoveGenerator.maxMoves(topology)];
+
+		/**
+		 * Constructs a worker.
+		 * @param pair	The pair
+		 * @param s		The slice in the pair
+		 */
+		Worker(Pair pair, int s){
+			this.pair = pair;
+			this.s = s;
+			board.setInHand(0, 0);
+		}
+
+		/**
+		 * Sets the bits of the canonical positions in a range, which covers whole words of the bits.
+		 * @param from	The first index, a multiple of 64
+		 * @param to	The index after the last
+		 */
+		void mark(long from, long to){
+			for(long word = from; word < to; word += 64){
+				long bits = 0;
+				for(long index = word; index < Math.min(word + 64, to); index++){
+					indexer.unrank(index, pair.movers[s], pair.opponents[s], pieces);
+					symmetry.canonicalize(pieces, image);
+					if(indexer.rank(image) == index){
+						bits |= 1L << index;
+					}
+				}
+				pair.canonical[s].put((int) (word >>> 6), bits);
+			}
+		}
+
+		/**
+		 * Looks at the unsolved canonical positions of a range for wins and losses in a number of turns.
+		 * @param d		The number of turns
+		 * @param from	The first index
+		 * @param to	The index after the last
+		 * @return		The number of positions solved
+		 */
+		long turn(int d, long from, long to){
+			long solved = 0;
+			Tablebase.Values slice = pair.values[s];
+			for(long index = from; index < to; index++){
+				if((pair.canonical[s].get((int) (index >>> 6)) & 1L << index) == 0 || slice.get(index) != 0){
+					continue;
+				}
+				indexer.unrank(index, pair.movers[s], pair.opponents[s], pieces);
+				int value = evaluate(d);
+				if(value != 0){
+					store(value);
+					solved++;
+				}
+			}
+			return solved;
+		}
+
+		/**
+		 * Works out whether the position in pieces is won or lost in d turns.
+		 * @param d	The number of turns
+		 * @return	The value to store, or 0 if it is not decided in d turns
+		 */
+		private int evaluate(int d){
+			for(int i = 0; i < pieces.length; i++){
+				board.setPieceState(i, pieces[i]);
+			}
+			int count = MoveGenerator.generate(board, 1, moves, 0);
+			if(count == 0){
+				return d == 0 ? -1 : 0;
+			} else if(d == 0){
+				return 0;
+			}
+			boolean allWon = true;
+			for(int i = 0; i < count; i++){
+				int value = childValue(moves[i]);
+				if(value < 0 && -value - 1 <= d - 1){
+					return d;		//The opponent loses in d - 1 turns
+				} else if(value <= 0 || value > d - 1){
+					allWon = false;
+				}
+			}
+			return allWon ? -d - 1 : 0;
+		}
+
+		/**
+		 * Returns the value of the position after a move, from the side of the opponent who is then to move.
+		 * @param move	The move
+		 * @return		The value, -1 if the move leaves the opponent fewer than MIN_PIECES pieces
+		 */
+		private int childValue(int move){
+			int mover = pair.movers[s], opponent = pair.opponents[s];
+			if(Move.removed(move) != Move.NO_POINT && opponent - 1 < Tablebase.MIN_PIECES){
+				return -1;
+			}
+			board.makeMove(move, 1);
+			long index = indexer.rank(board.getBoardState(), 2);
+			board.unmakeMove(move, 1);
+			if(Move.removed(move) == Move.NO_POINT){
+				return pair.values[1 - s].get(index);	//The same pair, with the colours swapped
+			}
+			return tablebase.getSlice(opponent - 1, mover).value(index);
+		}
+
+		/**
+		 * Stores a value for the position in pieces and every position symmetric to it, the position itself last.
+		 * @param value	The value
+		 */
+		private void store(int value){
+			for(int t = Symmetry.COUNT - 1; t >= 0; t--){
+				symmetry.apply(t, pieces, image);
+				pair.values[s].put(indexer.rank(image), (short) value);
+			}
+		}
+	}
+
+	/**
+	 * Generates a tablebase and writes it to a file.
+	 * @param args	The options described in the class comment
+	 * @throws IOException if a file cannot be written
+	 */
+	public static void main(String[] args) throws IOException{
+		int N = 2, variant = BoardTopology.SIX_MENS_MORRIS, pieces = 8;
+		int threads = Runtime.getRuntime().availableProcessors();
+		Path work = DEFAULT_WORK, out = Tablebase.DEFAULT_FILE;
+		for(int i = 0; i < args.length; i++){
+			switch(args[i]){
+			case "-N":			N = Integer.parseInt(args[++i]); break;
+			case "-variant":	variant = Integer.parseInt(args[++i]); break;
+			case "-pieces":		pieces = Integer.parseInt(args[++i]); break;
+			case "-threads":	threads = Integer.parseInt(args[++i]); break;
+			case "-work":		work = Paths.get(args[++i]); break;
+			case "-out":		out = Paths.get(args[++i]); break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+		TablebaseGenerator generator = new TablebaseGenerator(BoardTopology.get(N, variant), work, threads);
+		long start = System.nanoTime();
+		Tablebase tablebase = generator.generate(pieces, System.out);
+		generator.shutdown();
+		tablebase.save(out);
+		System.out.printf("Solved in %.1f s on %d threads, written to %s%n", (System.nanoTime() - start) / 1e9, threads, out);
+	}
+
+}
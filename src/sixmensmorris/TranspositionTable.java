@@ -0,0 +1,248 @@
+package sixmensmorris;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size table of search results, keyed by the hash of a position.
+ *
+ * The whole table is one preallocated long array, so it costs no allocation after it is built and can be shared by several
+ * searching threads without locks. Every entry takes two longs: the key XORed with the data, and the data. A reader only accepts
+ * an entry if XORing the two gives back its key, so an entry torn by two threads writing at once is simply seen as a miss.
+ *
+ * Entries are grouped in buckets of two. The first slot keeps the deepest result (or any result from an older search), and
+ * the second slot takes whatever the first one refuses.
+ *
+ * The data of an entry packs, from the lowest bit: the best move (30 bits), the score (16 bits), the depth (8 bits), the kind
+ * of bound (2 bits) and the age of the search that stored it (8 bits).
+ *
+ * @author Zichen Jiang
+ * @version 1
+ */
+public class TranspositionTable {
+
+	public static final int EXACT = 1;		//The score is the exact value of the position
+	public static final int LOWER = 2;		//The position is worth at least the score
+	public static final int UPPER = 3;		//The position is worth at most the score
+
+	private static final int ENTRY_LONGS = 2;
+	private static final int BUCKET_ENTRIES = 2;
+	private static final long MOVE_MASK = 0x3FFFFFFFL;
+	private static final int SCORE_SHIFT = 30;
+	private static final int DEPTH_SHIFT = 46;
+	private static final int BOUND_SHIFT = 54;
+	private static final int AGE_SHIFT = 56;
+
+	private final long[] table;
+	private final int bucketMask;
+	private volatile int age;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder overwrites = new LongAdder();
+
+	/**
+	 * Constructs a table that uses at most a given amount of memory.
+	 * @param megabytes	The size of the table in megabytes, rounded down to a power of two number of buckets
+	 */
+	public TranspositionTable(int megabytes){
+		long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+		long buckets = Long.highestOneBit(bytes / (8 * ENTRY_LONGS * BUCKET_ENTRIES));
+		long longs = buckets * ENTRY_LONGS * BUCKET_ENTRIES;
+		if(longs > Integer.MAX_VALUE - 8){
+			throw new IllegalArgumentException("Transposition table too large: " + megabytes + " MB");
+		}
+		this.table = new long[(int) longs];
+		this.bucketMask = (int) buckets - 1;
+	}
+
+	/**
+	 * Looks up a position.
+	 * @param key	The hash of the position
+	 * @return		The data stored for the position, or 0 if it is not in the table
+	 */
+	public long probe(long key){
+		int index = bucket(key);
+		for(int e = 0; e < BUCKET_ENTRIES; e++, index += ENTRY_LONGS){
+			long data = table[index + 1];
+			if(data != 0 && (table[index] ^ data) == key){
+				hits.increment();
+				return data;
+			}
+		}
+		misses.increment();
+		return 0;
+	}
+
+	/**
+	 * Stores the result of searching a position.
+	 * @param key	The hash of the position
+	 * @param move	The best move found, or Move.NONE
+	 * @param score	The score, which must fit in 16 bits
+	 * @param depth	The depth searched, from 0 to 255
+	 * @param bound	EXACT, LOWER or UPPER
+	 */
+	public void store(long key, int move, int score, int depth, int bound){
+		long data = (move & MOVE_MASK)
+				| ((score & 0xFFFFL) << SCORE_SHIFT)
+				| ((long) depth << DEPTH_SHIFT)
+				| ((long) bound << BOUND_SHIFT)
+				| ((long) (age & 0xFF) << AGE_SHIFT);
+
+		int first = bucket(key), second = first + ENTRY_LONGS;
+		int index;
+		long firstData = table[first + 1], secondData = table[second + 1];
+		if((table[second] ^ secondData) == key && secondData != 0){
+			index = second;
+		} else if(firstData == 0 || (table[first] ^ firstData) == key
+				|| depth(firstData) <= depth || age(firstData) != (age & 0xFF)){
+			index = first;
+		} else{
+			index = second;
+		}
+
+		long old = table[index + 1];
+		if(old != 0 && (table[index] ^ old) != key){
+			overwrites.increment();
+		}
+		table[index] = key ^ data;
+		table[index + 1] = data;
+	}
+
+	/**
+	 * Returns the index in the table of the first entry of the bucket of a key.
+	 * @param key	The hash of a position
+	 * @return		The index of the bucket
+	 */
+	private int bucket(long key){
+		return ((int) (key ^ (key >>> 32)) & bucketMask) * ENTRY_LONGS * BUCKET_ENTRIES;
+	}
+
+	/**
+	 * Marks the start of a new search, so that entries from older searches are replaced first.
+	 */
+	public void newSearch(){
+		this.age = (this.age + 1) & 0xFF;
+	}
+
+	/**
+	 * Empties the table and resets the counters.
+	 */
+	public void clear(){
+		Arrays.fill(table, 0L);
+		hits.reset();
+		misses.reset();
+		overwrites.reset();
+	}
+
+	/**
+	 * Returns the best move of an entry.
+	 * @param data	The data returned by probe
+	 * @return		The packed move, or Move.NONE
+	 */
+	public static int move(long data){
+		int move = (int) (data & MOVE_MASK);
+		return move == MOVE_MASK ? Move.NONE : move;
+	}
+
+	/**
+	 * Returns the score of an entry.
+	 * @param data	The data returned by probe
+	 * @return		The score
+	 */
+	public static int score(long data){
+		return (short) (data >>> SCORE_SHIFT);
+	}
+
+	/**
+	 * Returns the depth of an entry.
+	 * @param data	The data returned by probe
+	 * @return		The depth searched
+	 */
+	public static int depth(long data){
+		return (int) (data >>> DEPTH_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * Returns the kind of bound of an entry.
+	 * @param data	The data returned by probe
+	 * @return		EXACT, LOWER or UPPER
+	 */
+	public static int bound(long data){
+		return (int) (data >>> BOUND_SHIFT) & 0x3;
+	}
+
+	/**
+	 * Returns the age of the search that stored an entry.
+	 * @param data	The data returned by probe
+	 * @return		The age, from 0 to 255
+	 */
+	private static int age(long data){
+		return (int) (data >>> AGE_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * Returns the number of entries the table can hold.
+	 * @return	The number of entries
+	 */
+	public int getCapacity(){
+		return table.length / ENTRY_LONGS;
+	}
+
+	/**
+	 * Returns the size of the table in bytes.
+	 * @return	The number of bytes used by the entries
+	 */
+	public long getSizeInBytes(){
+		return table.length * 8L;
+	}
+
+	/**
+	 * Returns the number of probes that found their position.
+	 * @return	The number of hits
+	 */
+	public long getHits(){
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of probes that did not find their position.
+	 * @return	The number of misses
+	 */
+	public long getMisses(){
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of stores that replaced an entry of another position.
+	 * @return	The number of overwrites
+	 */
+	public long getOverwrites(){
+		return overwrites.sum();
+	}
+
+	/**
+	 * Returns how full the table is, by sampling the first thousand entries.
+	 * @return	The number of used entries per thousand
+	 */
+	public int getPermillFull(){
+		int sample = Math.min(1000, getCapacity()), used = 0;
+		for(int e = 0; e < sample; e++){
+			used += table[e * ENTRY_LONGS + 1] != 0 ? 1 : 0;
+		}
+		return used * 1000 / sample;
+	}
+
+	/**
+	 * Returns a summary of the counters, for sizing the table.
+	 * @return	The size, hits, misses, overwrites and fill of the table
+	 */
+	@Override
+	public String toString(){
+		long probes = getHits() + getMisses();
+		return String.format("TT %d MB: %d hits, %d misses (%.1f%% hit rate), %d overwrites, %d%% full",
+				getSizeInBytes() >> 20, getHits(), getMisses(), probes == 0 ? 0.0 : 100.0 * getHits() / probes,
+				getOverwrites(), getPermillFull() / 10);
+	}
+
+}